@@ -51,7 +51,8 @@ import org.apache.ibatis.cache.impl.PerpetualCache;
 public @interface CacheNamespace {
 
   /**
-   * Returns the cache implementation type to use.
+   * Returns the cache implementation type to use. The default value means the <code>defaultCacheType</code> setting,
+   * which is {@link PerpetualCache} unless configured otherwise.
    *
    * @return the cache implementation type
    */
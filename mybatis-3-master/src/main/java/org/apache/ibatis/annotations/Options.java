@@ -138,6 +138,41 @@ public @interface Options {
    */
   String resultSets() default "";
 
+  /**
+   * Returns the tables that the statement reads, for a select, or writes, for an insert, update or delete.
+   * <p>
+   * If you specify multiple table, please separate using comma(','). When empty, the tables are found in the SQL.
+   * They are only used when the cache invalidation scope is {@code TABLE}.
+   * </p>
+   *
+   * @return table names that separate with comma(',')
+   * @since 3.5.7
+   */
+  String tables() default "";
+
+  /**
+   * Returns whether the statement selects the single row of its result map whose id is given by the parameter.
+   * <p>
+   * When the entity cache is enabled, such a statement is served from the objects cached by other queries.
+   * </p>
+   *
+   * @return {@code true} if the statement is an id lookup; {@code false} if otherwise
+   * @since 3.5.7
+   */
+  boolean idLookup() default false;
+
+  /**
+   * Returns whether the statement is preloaded into the second level cache when the session factory is built.
+   * <p>
+   * The statement is executed without parameter and, when {@code cacheWarmupRefreshInterval} is set, reloaded on
+   * that schedule.
+   * </p>
+   *
+   * @return {@code true} if the statement is warmed up; {@code false} if otherwise
+   * @since 3.5.7
+   */
+  boolean warm() default false;
+
   /**
    * @return A database id that correspond this options
    * @since 3.5.5
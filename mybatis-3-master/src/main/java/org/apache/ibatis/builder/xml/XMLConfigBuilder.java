@@ -23,6 +23,7 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -41,6 +42,7 @@ import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.CacheInvalidationScope;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -338,6 +340,11 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setAutoMappingBehavior(AutoMappingBehavior.valueOf(props.getProperty("autoMappingBehavior", "PARTIAL")));
     configuration.setAutoMappingUnknownColumnBehavior(AutoMappingUnknownColumnBehavior.valueOf(props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
     configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
+    configuration.setEntityCacheEnabled(booleanValueOf(props.getProperty("entityCacheEnabled"), false));
+    configuration.setCacheMBeansEnabled(booleanValueOf(props.getProperty("cacheMBeansEnabled"), false));
+    configuration.setCacheInvalidationCoalesceWindow(Long.parseLong(props.getProperty("cacheInvalidationCoalesceWindow", "0")));
+    configuration.setCacheWarmupRefreshInterval(Long.parseLong(props.getProperty("cacheWarmupRefreshInterval", "0")));
+    configuration.setCacheInvalidationBus((CacheInvalidationBus) createInstance(props.getProperty("cacheInvalidationBus")));
     configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
     configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
     configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), false));
@@ -345,12 +352,23 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setUseColumnLabel(booleanValueOf(props.getProperty("useColumnLabel"), true));
     configuration.setUseGeneratedKeys(booleanValueOf(props.getProperty("useGeneratedKeys"), false));
     configuration.setDefaultExecutorType(ExecutorType.valueOf(props.getProperty("defaultExecutorType", "SIMPLE")));
+    configuration.setBatchGroupBySql(booleanValueOf(props.getProperty("batchGroupBySql"), false));
+    configuration.setBatchMaxStatementRows(integerValueOf(props.getProperty("batchMaxStatementRows"), 0));
+    configuration.setBatchMaxRows(integerValueOf(props.getProperty("batchMaxRows"), 0));
+    configuration.setBatchMaxBytes(Long.parseLong(props.getProperty("batchMaxBytes", "0")));
+    configuration.setBatchDiscardParameterObjects(booleanValueOf(props.getProperty("batchDiscardParameterObjects"), false));
+    configuration.setBatchMultiRowInsertSize(integerValueOf(props.getProperty("batchMultiRowInsertSize"), 0));
+    configuration.setReuseStatementCacheSize(integerValueOf(props.getProperty("reuseStatementCacheSize"), 0));
     configuration.setDefaultStatementTimeout(integerValueOf(props.getProperty("defaultStatementTimeout"), null));
     configuration.setDefaultFetchSize(integerValueOf(props.getProperty("defaultFetchSize"), null));
     configuration.setDefaultResultSetType(resolveResultSetType(props.getProperty("defaultResultSetType")));
     configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
     configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
     configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+    configuration.setLocalCacheSize(integerValueOf(props.getProperty("localCacheSize"), 0));
+    configuration.setLocalCacheMaxWeight(Long.parseLong(props.getProperty("localCacheMaxWeight", "0")));
+    configuration.setCacheInvalidationScope(CacheInvalidationScope.valueOf(props.getProperty("cacheInvalidationScope", "NAMESPACE")));
+    configuration.setCacheMemoryBudget(Long.parseLong(props.getProperty("cacheMemoryBudget", "0")));
     configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
     configuration.setLazyLoadTriggerMethods(stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
     configuration.setSafeResultHandlerEnabled(booleanValueOf(props.getProperty("safeResultHandlerEnabled"), true));
@@ -363,6 +381,7 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setConfigurationFactory(resolveClass(props.getProperty("configurationFactory")));
     configuration.setShrinkWhitespacesInSql(booleanValueOf(props.getProperty("shrinkWhitespacesInSql"), false));
     configuration.setDefaultSqlProviderType(resolveClass(props.getProperty("defaultSqlProviderType")));
+    configuration.setDefaultCacheType(resolveClass(props.getProperty("defaultCacheType")));
   }
 
   private void environmentsElement(XNode context) throws Exception {
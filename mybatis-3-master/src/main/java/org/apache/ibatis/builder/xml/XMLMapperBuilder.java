@@ -248,9 +248,9 @@ public class XMLMapperBuilder extends BaseBuilder {
 
   private void cacheElement(XNode context) {
     if (context != null) {
-      // type 属性，默认为 PERPETUAL 即 PerpetualCache.class
-      String type = context.getStringAttribute("type", "PERPETUAL");
-      Class<? extends Cache> typeClass = typeAliasRegistry.resolveAlias(type);
+      // type 属性，默认为 defaultCacheType 设置的实现，未设置时为 PERPETUAL 即 PerpetualCache.class
+      String type = context.getStringAttribute("type");
+      Class<? extends Cache> typeClass = type == null ? null : typeAliasRegistry.resolveAlias(type);
       // 解析 eviction ，默认为 LRU 即  LruCache.class ，默认的缓存包装器
       String eviction = context.getStringAttribute("eviction", "LRU");
       Class<? extends Cache> evictionClass = typeAliasRegistry.resolveAlias(eviction);
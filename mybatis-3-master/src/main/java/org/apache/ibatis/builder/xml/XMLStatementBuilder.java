@@ -141,11 +141,17 @@ public class XMLStatementBuilder extends BaseBuilder {
     String keyProperty = context.getStringAttribute("keyProperty");
     String keyColumn = context.getStringAttribute("keyColumn");
     String resultSets = context.getStringAttribute("resultSets");
+    // 语句读写的表，用于按表失效二级缓存，没有声明时从 SQL 中获取
+    String tables = context.getStringAttribute("tables");
+    // 按 id 查询单个对象的语句，开启实体缓存时直接从缓存中返回
+    boolean idLookup = context.getBooleanAttribute("idLookup", false);
+    // 构建 SqlSessionFactory 时预先执行并放入二级缓存的语句
+    boolean warm = context.getBooleanAttribute("warm", false);
 
     builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
         fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
         resultSetTypeEnum, flushCache, useCache, resultOrdered,
-        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets, tables, idLookup, warm);
   }
 
   private void processSelectKeyNodes(String id, Class<?> parameterTypeClass, LanguageDriver langDriver) {
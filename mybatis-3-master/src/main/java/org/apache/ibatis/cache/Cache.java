@@ -103,4 +103,17 @@ public interface Cache {
     return null;
   }
 
+  /**
+   * 缓存的统计信息，由 LoggingCache 记录
+   * Optional. Gets the statistics of this cache. They are recorded by the {@link
+   * org.apache.ibatis.cache.decorators.LoggingCache} that wraps every cache, so the decorators that wrap it must
+   * delegate this method.
+   *
+   * @return the statistics, or null if not recorded
+   * @since 3.5.7
+   */
+  default CacheStats getStats() {
+    return null;
+  }
+
 }
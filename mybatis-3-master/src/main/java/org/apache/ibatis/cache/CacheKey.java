@@ -16,19 +16,26 @@
 package org.apache.ibatis.cache;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.StringJoiner;
 
 import org.apache.ibatis.reflection.ArrayUtil;
 
 /**
  * 缓存 key
+ * <p>
+ * 值保存在按需扩容的数组中，而不是 ArrayList；语句 id 和 SQL 等每次执行都相同的值可以放在共享的前缀 key 中，
+ * 这些值不会在每个缓存条目中重复保存。哈希值为 64 位，相同前缀的 key 比较时跳过前缀中的值
  * @author Clinton Begin
  */
 public class CacheKey implements Cloneable, Serializable {
 
-  private static final long serialVersionUID = 1146682552656046210L;
+  private static final long serialVersionUID = 2887493722469537641L;
+
+  /**
+   * 必须在 NULL_CACHE_KEY 之前初始化
+   */
+  private static final Object[] EMPTY = new Object[0];
 
   public static final CacheKey NULL_CACHE_KEY = new CacheKey() {
 
@@ -43,43 +50,75 @@ public class CacheKey implements Cloneable, Serializable {
     }
   };
 
-  private static final int DEFAULT_MULTIPLIER = 37;
-  private static final int DEFAULT_HASHCODE = 17;
-
-  private final int multiplier;
-  private int hashcode;
-  private long checksum;
+  private static final long DEFAULT_HASH = 17;
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /**
+   * 共享的前缀，它的值排在本 key 的值之前
+   */
+  private final CacheKey prefix;
+  /**
+   * 作为前缀共享后不能再修改
+   */
+  private boolean shared;
+  private long hash;
+  /**
+   * 包括前缀在内的值的个数
+   */
   private int count;
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient. While true if content is not serializable, this
   // is not always true and thus should not be marked transient.
-  private List<Object> updateList;
+  private Object[] values;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLIER;
+    this.prefix = null;
+    this.hash = DEFAULT_HASH;
     this.count = 0;
-    this.updateList = new ArrayList<>();
+    this.values = EMPTY;
   }
 
   public CacheKey(Object[] objects) {
     this();
+    this.values = new Object[objects.length];
     updateAll(objects);
   }
 
+  /**
+   * Creates a key whose first values are those of a prefix key, such as the statement id and the SQL that are the
+   * same for many executions. The values of the prefix are shared instead of copied, and the prefix can no longer
+   * be updated. Two keys are equal when they hold the same values, whether or not they share a prefix.
+   *
+   * @param prefix
+   *          the key holding the first values
+   * @param expectedUpdates
+   *          the number of values that will be added after the prefix
+   * @since 3.5.7
+   */
+  public CacheKey(CacheKey prefix, int expectedUpdates) {
+    prefix.shared = true;
+    this.prefix = prefix;
+    this.hash = prefix.hash;
+    this.count = prefix.count;
+    this.values = expectedUpdates > 0 ? new Object[expectedUpdates] : EMPTY;
+  }
+
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   public void update(Object object) {
+    if (shared) {
+      throw new CacheException("Not allowed to update a cache key used as a prefix.");
+    }
     int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
+    hash = (hash + baseHashCode) * MULTIPLIER;
 
+    int index = count - prefixCount();
+    if (index == values.length) {
+      values = Arrays.copyOf(values, Math.max(4, index + (index >> 1)));
+    }
+    values[index] = object;
     count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
-
-    hashcode = multiplier * hashcode + baseHashCode;
-
-    updateList.add(object);
   }
 
   public void updateAll(Object[] objects) {
@@ -99,19 +138,18 @@ public class CacheKey implements Cloneable, Serializable {
 
     final CacheKey cacheKey = (CacheKey) object;
 
-    if (hashcode != cacheKey.hashcode) {
-      return false;
-    }
-    if (checksum != cacheKey.checksum) {
+    if (hash != cacheKey.hash) {
       return false;
     }
     if (count != cacheKey.count) {
       return false;
     }
 
-    for (int i = 0; i < updateList.size(); i++) {
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
+    // 共享同一个前缀时只比较之后的值
+    int from = prefix != null && prefix == cacheKey.prefix ? prefix.count : 0;
+    for (int i = from; i < count; i++) {
+      Object thisObject = valueAt(i);
+      Object thatObject = cacheKey.valueAt(i);
       if (!ArrayUtil.equals(thisObject, thatObject)) {
         return false;
       }
@@ -121,23 +159,34 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public int hashCode() {
-    return hashcode;
+    return (int) (hash ^ (hash >>> 32));
   }
 
   @Override
   public String toString() {
     StringJoiner returnValue = new StringJoiner(":");
-    returnValue.add(String.valueOf(hashcode));
-    returnValue.add(String.valueOf(checksum));
-    updateList.stream().map(ArrayUtil::toString).forEach(returnValue::add);
+    returnValue.add(Long.toHexString(hash));
+    for (int i = 0; i < count; i++) {
+      returnValue.add(ArrayUtil.toString(valueAt(i)));
+    }
     return returnValue.toString();
   }
 
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    clonedCacheKey.updateList = new ArrayList<>(updateList);
+    clonedCacheKey.shared = false;
+    clonedCacheKey.values = values.length == 0 ? EMPTY : values.clone();
     return clonedCacheKey;
   }
 
+  private int prefixCount() {
+    return prefix == null ? 0 : prefix.count;
+  }
+
+  private Object valueAt(int index) {
+    int prefixCount = prefixCount();
+    return index < prefixCount ? prefix.valueAt(index) : values[index - prefixCount];
+  }
+
 }
@@ -0,0 +1,242 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * 二级缓存的统计信息，计数器不加锁，可以在查询时随时读取
+ * The statistics of a second-level cache: hits, misses, puts, evictions, clears and the time spent loading missed
+ * entries from the database. The counters are updated without locking and can be read at any time, from
+ * {@link Cache#getStats()} of the caches of {@link org.apache.ibatis.session.Configuration#getCaches()} or through
+ * JMX when the {@code cacheMBeansEnabled} setting is on.
+ *
+ * @since 3.5.7
+ */
+public class CacheStats implements CacheStatsMBean {
+
+  private final String id;
+  private final IntSupplier size;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder clears = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadNanos = new LongAdder();
+  /**
+   * 估算的内存大小，没有 WeightedCache 时为 -1
+   */
+  private volatile long weight = -1;
+
+  /**
+   * Creates the statistics of a cache.
+   *
+   * @param id
+   *          the id of the cache
+   * @param size
+   *          gives the number of entries of the cache
+   */
+  public CacheStats(String id, IntSupplier size) {
+    this.id = id;
+    this.size = size;
+  }
+
+  public void recordHit() {
+    hits.increment();
+  }
+
+  public void recordMiss() {
+    misses.increment();
+  }
+
+  public void recordPut() {
+    puts.increment();
+  }
+
+  public void recordEviction() {
+    evictions.increment();
+  }
+
+  public void recordClear() {
+    clears.increment();
+  }
+
+  /**
+   * Records the time spent loading a missed entry.
+   *
+   * @param nanos
+   *          the time in nanoseconds
+   */
+  public void recordLoad(long nanos) {
+    loads.increment();
+    loadNanos.add(nanos);
+  }
+
+  /**
+   * Records the estimated size of the entries of the cache.
+   *
+   * @param weight
+   *          the size in bytes
+   */
+  public void recordWeight(long weight) {
+    this.weight = weight;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long hitCount = hits.sum();
+    long requests = hitCount + misses.sum();
+    return requests == 0 ? 0 : (double) hitCount / requests;
+  }
+
+  @Override
+  public long getPuts() {
+    return puts.sum();
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public long getClears() {
+    return clears.sum();
+  }
+
+  @Override
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  /**
+   * Gets the total time spent loading missed entries.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getTotalLoadNanos() {
+    return loadNanos.sum();
+  }
+
+  @Override
+  public double getAverageLoadMillis() {
+    long count = loads.sum();
+    return count == 0 ? 0 : (double) loadNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public int getSize() {
+    return size.getAsInt();
+  }
+
+  /**
+   * Gets the estimated size of the entries of the cache, when it is bounded by memory.
+   *
+   * @return the size in bytes, or -1 if not estimated
+   */
+  @Override
+  public long getWeight() {
+    return weight;
+  }
+
+  @Override
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    evictions.reset();
+    clears.reset();
+    loads.reset();
+    loadNanos.reset();
+  }
+
+  /**
+   * Registers these statistics in the platform MBean server, replacing those of a cache with the same id and
+   * environment, as after a redeployment.
+   *
+   * @param environmentId
+   *          the id of the environment of the configuration, or null
+   * @return the name of the MBean
+   */
+  public ObjectName registerMBean(String environmentId) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = objectName(environmentId);
+      try {
+        server.registerMBean(this, name);
+      } catch (InstanceAlreadyExistsException e) {
+        server.unregisterMBean(name);
+        server.registerMBean(this, name);
+      }
+      return name;
+    } catch (Exception e) {
+      throw new CacheException("Error registering the statistics of cache " + id + ". Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Unregisters the MBean of a cache with the same id and environment from the platform MBean server, if any.
+   *
+   * @param environmentId
+   *          the id of the environment of the configuration, or null
+   */
+  public void unregisterMBean(String environmentId) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(environmentId));
+    } catch (InstanceNotFoundException e) {
+      // 没有注册过
+    } catch (Exception e) {
+      throw new CacheException("Error unregistering the statistics of cache " + id + ". Cause: " + e, e);
+    }
+  }
+
+  private ObjectName objectName(String environmentId) throws MalformedObjectNameException {
+    return new ObjectName("org.apache.ibatis:type=CacheStats,environment="
+        + ObjectName.quote(environmentId == null ? "default" : environmentId) + ",name=" + ObjectName.quote(id));
+  }
+
+  @Override
+  public String toString() {
+    return id + " [hits=" + getHits() + ", misses=" + getMisses() + ", puts=" + getPuts() + ", evictions="
+        + getEvictions() + ", clears=" + getClears() + ", loads=" + getLoadCount() + "]";
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+
+/**
+ * 一个 Configuration 中所有二级缓存共享的内存预算，超出时从占用最多的缓存中淘汰
+ * A memory budget shared by the second-level caches of a configuration. When their total weight exceeds it, entries
+ * are evicted from the cache that weighs the most, so that one large namespace cannot push the others out.
+ *
+ * @since 3.5.7
+ */
+public class MemoryBudget {
+
+  private final long maxWeight;
+  private final AtomicLong weight = new AtomicLong();
+  private final Set<WeightedCache> caches = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates a budget.
+   *
+   * @param maxWeight
+   *          the maximum total weight in bytes
+   */
+  public MemoryBudget(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Gets the total weight of the caches sharing this budget.
+   *
+   * @return the weight in bytes
+   */
+  public long getWeight() {
+    return weight.get();
+  }
+
+  /**
+   * Adds a cache whose entries count against this budget.
+   *
+   * @param cache
+   *          the cache
+   */
+  public void register(WeightedCache cache) {
+    caches.add(cache);
+  }
+
+  /**
+   * Records a change of the weight of a registered cache.
+   *
+   * @param delta
+   *          the change in bytes
+   */
+  public void add(long delta) {
+    weight.addAndGet(delta);
+  }
+
+  /**
+   * Evicts entries from the heaviest caches until the total weight fits in the budget. Must not be called while
+   * holding the lock of a cache.
+   */
+  public void enforce() {
+    while (weight.get() > maxWeight) {
+      WeightedCache heaviest = null;
+      for (WeightedCache cache : caches) {
+        if (heaviest == null || cache.getWeight() > heaviest.getWeight()) {
+          heaviest = cache;
+        }
+      }
+      if (heaviest == null || !heaviest.evictEldest()) {
+        return;
+      }
+    }
+  }
+
+}
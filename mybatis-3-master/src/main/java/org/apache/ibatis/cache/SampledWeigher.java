@@ -0,0 +1,181 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按采样估算对象大小：集合和数组只估算前几个元素，再按元素个数放大
+ * Estimates the size of a cache entry from a sample of its object graph. The size of a list, map or array is the
+ * average size of its first elements times its number of elements, so that a list of 50,000 rows weighs about
+ * 50,000 times a single row, without visiting every row. Serialized values, as stored by read-write caches, weigh
+ * their length.
+ *
+ * @since 3.5.7
+ */
+public class SampledWeigher implements Weigher {
+
+  private static final int OBJECT_HEADER = 16;
+  private static final int REFERENCE = 8;
+  private static final int MAP_ENTRY = 32;
+
+  private final int sampleSize;
+  private final int maxDepth;
+  /**
+   * 每个类的实例字段，JDK 的类不反射访问
+   */
+  private final ConcurrentMap<Class<?>, Field[]> fields = new ConcurrentHashMap<>();
+
+  public SampledWeigher() {
+    this(8, 8);
+  }
+
+  /**
+   * Creates a weigher.
+   *
+   * @param sampleSize
+   *          the number of elements of each collection, map or array that are visited
+   * @param maxDepth
+   *          the depth of the object graph that is visited, deeper objects weigh a reference
+   */
+  public SampledWeigher(int sampleSize, int maxDepth) {
+    this.sampleSize = sampleSize;
+    this.maxDepth = maxDepth;
+  }
+
+  @Override
+  public long weigh(Object key, Object value) {
+    IdentityHashMap<Object, Object> visited = new IdentityHashMap<>();
+    return estimate(key, 0, visited) + estimate(value, 0, visited);
+  }
+
+  private long estimate(Object object, int depth, Map<Object, Object> visited) {
+    if (object == null || depth > maxDepth || visited.put(object, object) != null) {
+      return 0;
+    }
+    Class<?> type = object.getClass();
+    if (object instanceof String) {
+      return OBJECT_HEADER + 24 + 2L * ((String) object).length();
+    }
+    if (type.isArray()) {
+      return estimateArray(object, type.getComponentType(), depth, visited);
+    }
+    if (object instanceof Collection) {
+      Collection<?> collection = (Collection<?>) object;
+      return OBJECT_HEADER + 32 + (long) collection.size() * REFERENCE
+          + sample(collection.iterator(), collection.size(), depth, visited);
+    }
+    if (object instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) object;
+      Iterator<?> entries = map.entrySet().iterator();
+      return OBJECT_HEADER + 48 + (long) map.size() * MAP_ENTRY + sample(entries, map.size(), depth, visited);
+    }
+    if (object instanceof Map.Entry) {
+      Map.Entry<?, ?> entry = (Map.Entry<?, ?>) object;
+      return estimate(entry.getKey(), depth, visited) + estimate(entry.getValue(), depth, visited);
+    }
+    if (isJdkType(type)) {
+      // 数字、日期等
+      return OBJECT_HEADER + 16;
+    }
+    long size = OBJECT_HEADER;
+    for (Field field : fieldsOf(type)) {
+      size += REFERENCE;
+      if (!field.getType().isPrimitive()) {
+        try {
+          size += estimate(field.get(object), depth + 1, visited);
+        } catch (IllegalAccessException | RuntimeException e) {
+          // 无法访问的字段只算引用
+        }
+      }
+    }
+    return size;
+  }
+
+  private long estimateArray(Object array, Class<?> componentType, int depth, Map<Object, Object> visited) {
+    int length = Array.getLength(array);
+    if (componentType.isPrimitive()) {
+      return OBJECT_HEADER + (long) length * primitiveSize(componentType);
+    }
+    List<Object> elements = new ArrayList<>(Math.min(length, sampleSize));
+    for (int i = 0; i < length && elements.size() < sampleSize; i++) {
+      elements.add(Array.get(array, i));
+    }
+    return OBJECT_HEADER + (long) length * REFERENCE + sample(elements.iterator(), length, depth, visited);
+  }
+
+  /**
+   * 估算前 sampleSize 个元素，按元素个数放大
+   */
+  private long sample(Iterator<?> elements, int count, int depth, Map<Object, Object> visited) {
+    long sampled = 0;
+    int visitedElements = 0;
+    while (visitedElements < sampleSize && elements.hasNext()) {
+      sampled += estimate(elements.next(), depth + 1, visited);
+      visitedElements++;
+    }
+    return visitedElements == 0 ? 0 : sampled * count / visitedElements;
+  }
+
+  private Field[] fieldsOf(Class<?> type) {
+    return fields.computeIfAbsent(type, k -> {
+      List<Field> result = new ArrayList<>();
+      for (Class<?> current = k; current != null && !isJdkType(current); current = current.getSuperclass()) {
+        for (Field field : current.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          try {
+            field.setAccessible(true);
+            result.add(field);
+          } catch (RuntimeException e) {
+            // 模块不允许访问时忽略
+          }
+        }
+      }
+      return result.toArray(new Field[0]);
+    });
+  }
+
+  private static boolean isJdkType(Class<?> type) {
+    String name = type.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == byte.class || type == boolean.class) {
+      return 1;
+    }
+    if (type == char.class || type == short.class) {
+      return 2;
+    }
+    if (type == int.class || type == float.class) {
+      return 4;
+    }
+    return 8;
+  }
+
+}
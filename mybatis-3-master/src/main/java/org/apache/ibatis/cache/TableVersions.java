@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个二级缓存中每张表的版本号，写入某张表时只让读过它的缓存条目失效
+ * The version of each table for one second-level cache, used when the cache invalidation scope is
+ * {@link org.apache.ibatis.session.CacheInvalidationScope#TABLE}.
+ * <p>
+ * A cached value is stored together with the versions of the tables its query read. A write to a table increments
+ * the version of that table, so that the values that read it become stale, and the others stay valid. Values whose
+ * tables are unknown become stale on any write. Stale values are not removed, they are replaced by the next load or
+ * evicted.
+ *
+ * @since 3.5.7
+ */
+public class TableVersions {
+
+  /**
+   * 任何写入都会增加版本号的伪表，表未知的条目使用它
+   */
+  private static final String ANY_TABLE = "*";
+
+  /**
+   * 区分不同实例的版本号，例如重启之前写入持久化缓存的条目
+   */
+  private final long epoch = ThreadLocalRandom.current().nextLong();
+
+  private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+  /**
+   * Wraps a value with the current versions of the tables it was read from.
+   *
+   * @param value
+   *          the value to cache
+   * @param tables
+   *          the tables the value was read from, null if unknown
+   * @return the stamped value
+   */
+  public StampedValue stamp(Object value, Set<String> tables) {
+    String[] names = tables == null ? null : tables.toArray(new String[0]);
+    long[] stamps;
+    if (names == null) {
+      stamps = new long[] { version(ANY_TABLE) };
+    } else {
+      stamps = new long[names.length];
+      for (int i = 0; i < names.length; i++) {
+        stamps[i] = version(names[i]);
+      }
+    }
+    return new StampedValue(epoch, names, stamps, value);
+  }
+
+  /**
+   * Checks that none of the tables of a stamped value was written since it was stamped.
+   *
+   * @param value
+   *          the stamped value
+   * @return true if the value is still valid
+   */
+  public boolean isCurrent(StampedValue value) {
+    if (value.epoch != epoch) {
+      return false;
+    }
+    if (value.tables == null) {
+      return value.versions[0] == version(ANY_TABLE);
+    }
+    for (int i = 0; i < value.tables.length; i++) {
+      if (value.versions[i] != version(value.tables[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Makes stale every value read from one of the tables, and every value whose tables are unknown.
+   *
+   * @param tables
+   *          the tables that were written
+   */
+  public void invalidate(Collection<String> tables) {
+    for (String table : tables) {
+      counter(table).incrementAndGet();
+    }
+    counter(ANY_TABLE).incrementAndGet();
+  }
+
+  private long version(String table) {
+    return counter(table).get();
+  }
+
+  private AtomicLong counter(String table) {
+    AtomicLong counter = versions.get(table);
+    return counter != null ? counter : versions.computeIfAbsent(table, k -> new AtomicLong());
+  }
+
+  /**
+   * A cached value with the versions of the tables it was read from. It has a default constructor and no final
+   * fields, so that the copying decorators can copy it like any result object.
+   */
+  public static final class StampedValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long epoch;
+    private String[] tables;
+    private long[] versions;
+    private Object value;
+
+    public StampedValue() {
+      // for copying
+    }
+
+    StampedValue(long epoch, String[] tables, long[] versions, Object value) {
+      this.epoch = epoch;
+      this.tables = tables;
+      this.versions = versions;
+      this.value = value;
+    }
+
+    /**
+     * Gets the tables the value was read from.
+     *
+     * @return the table names, null if unknown
+     */
+    public String[] getTables() {
+      return tables;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+  }
+
+}
@@ -17,8 +17,14 @@ package org.apache.ibatis.cache;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.Configuration;
 
 /**
  * 这里其实就是简单的维护了一个
@@ -28,12 +34,46 @@ import org.apache.ibatis.cache.decorators.TransactionalCache;
  */
 public class TransactionalCacheManager {
 
+  private static final Log log = LogFactory.getLog(TransactionalCacheManager.class);
+
   private final Map<Cache, TransactionalCache> transactionalCaches = new HashMap<>();
+  /**
+   * 用于获取每个缓存的表版本号，为 null 时写操作总是清空整个缓存
+   */
+  private final Configuration configuration;
+
+  public TransactionalCacheManager() {
+    this(null);
+  }
+
+  /**
+   * Creates a manager that invalidates entries as configured by {@link Configuration#getCacheInvalidationScope()}.
+   *
+   * @param configuration
+   *          the configuration
+   * @since 3.5.7
+   */
+  public TransactionalCacheManager(Configuration configuration) {
+    this.configuration = configuration;
+  }
 
   public void clear(Cache cache) {
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * Invalidates, on commit, the entries of the cache read from one of the given tables.
+   *
+   * @param cache
+   *          the cache
+   * @param tables
+   *          the tables that were written, null to clear the whole cache
+   * @since 3.5.7
+   */
+  public void invalidate(Cache cache, Set<String> tables) {
+    getTransactionalCache(cache).invalidate(tables);
+  }
+
   /**
    * 获取的是 cache 对象的 TransactionalCache ，而 TransactionalCache 又会持有 cache 对象
    * 其实在 getObject 方法中，最终还是由 cache 的 getObject 方法返回 缓存的对象
@@ -49,11 +89,67 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * Buffers a value read from the given tables until commit.
+   *
+   * @param cache
+   *          the cache
+   * @param key
+   *          the key
+   * @param value
+   *          the value
+   * @param tables
+   *          the tables the value was read from, null if unknown
+   * @since 3.5.7
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Set<String> tables) {
+    getTransactionalCache(cache).putObject(key, value, tables);
+  }
+
+  /**
+   * Puts a value buffered in this transaction in the cache now, unless the transaction invalidated the cache.
+   *
+   * @param cache
+   *          the cache
+   * @param key
+   *          the key
+   * @since 3.5.7
+   */
+  public void flushEntry(Cache cache, CacheKey key) {
+    getTransactionalCache(cache).flushEntry(key);
+  }
+
+  /**
+   * Releases a missed key whose value will not be put.
+   *
+   * @param cache
+   *          the cache
+   * @param key
+   *          the key
+   * @since 3.5.7
+   */
+  public void releaseEntry(Cache cache, CacheKey key) {
+    getTransactionalCache(cache).releaseEntry(key);
+  }
+
   public void commit() {
+    CacheInvalidationBus bus = configuration == null ? null : configuration.getCacheInvalidationBus();
+    CacheInvalidation invalidation = new CacheInvalidation();
     // 提交事务 TransactionalCache#commit 方法
     for (TransactionalCache txCache : transactionalCaches.values()) {
+      if (bus != null) {
+        txCache.addInvalidation(invalidation);
+      }
       txCache.commit();
     }
+    if (bus != null && !invalidation.isEmpty()) {
+      // 数据库已经提交，发送失败时其他节点的缓存只能等待过期
+      try {
+        bus.publish(invalidation);
+      } catch (RuntimeException e) {
+        log.warn("Could not publish " + invalidation + " to the other nodes. Cause: " + e);
+      }
+    }
   }
 
   public void rollback() {
@@ -69,7 +165,8 @@ public class TransactionalCacheManager {
    * @return
    */
   private TransactionalCache getTransactionalCache(Cache cache) {
-    return transactionalCaches.computeIfAbsent(cache, TransactionalCache::new);
+    return transactionalCaches.computeIfAbsent(cache,
+        c -> new TransactionalCache(c, configuration == null ? null : configuration.getTableVersions(c.getId())));
   }
 
 }
@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 估算缓存条目占用的内存
+ * Estimates the memory used by a cache entry, for caches bounded by weight instead of by number of entries.
+ *
+ * @since 3.5.7
+ * @see org.apache.ibatis.cache.decorators.WeightedCache
+ */
+@FunctionalInterface
+public interface Weigher {
+
+  /**
+   * Estimates the memory used by a cache entry.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the value
+   * @return the estimated size in bytes, not negative
+   */
+  long weigh(Object key, Object value);
+
+}
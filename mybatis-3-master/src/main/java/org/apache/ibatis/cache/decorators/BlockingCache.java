@@ -15,41 +15,63 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
 import org.apache.ibatis.cache.CacheException;
 
 /**
  * 简单的阻塞方法
  * 根据key 获取指定缓存数据的时候，是阻塞的
  *
- * 当在缓存中找不到元素时，它将对缓存键设置锁定
- * 这样，其他线程将等待直到该元素被填充，而不是访问数据库
+ * 当在缓存中找不到元素时，第一个线程负责加载，其他线程等待它加载完成，而不是访问数据库
  *
- * 每个Key 持有一个 CountDownLatch(1) 的对象，用来 使得当前获取 key 的锁定
- * <p>Simple blocking decorator
+ * 每个正在加载的 key 持有一个共享的 CompletableFuture，命中时不需要等待
+ * <p>Single-flight blocking decorator
  *
- * <p>Simple and inefficient version of EhCache's BlockingCache decorator.
- * It sets a lock over a cache key when the element is not found in cache.
- * This way, other threads will wait until this element is filled instead of hitting the database.
+ * <p>When an element is not found in cache, the first caller gets a miss and loads it, while the concurrent callers
+ * wait on a future shared for that key, and read the element again once it is put. Hits never wait.
  *
- * <p>By its nature, this implementation can cause deadlock when used incorrecly.
+ * <p>The future completes when the element is put, or when the loading is abandoned through {@link #removeObject},
+ * as the {@link TransactionalCache} does on rollback and when the query fails. The waiters of an abandoned loading
+ * retry, so that one of them loads the element. A caller waits at most the timeout, {@link #DEFAULT_TIMEOUT} unless
+ * set, and then loads the element itself instead of failing.
+ *
+ * <p>The {@link TransactionalCache} puts the element when the transaction of the loader commits, so the callers wait
+ * for the end of that transaction. With {@link #setPublishBeforeCommit(boolean)}, the loaded element is put as soon as
+ * its query completes instead, when the transaction has not written anything through MyBatis.
  *
  * @author Eduardo Macarron
  *
  */
 public class BlockingCache implements Cache {
 
-  private long timeout;
+  /**
+   * The default maximum time, in milliseconds, that a caller waits for another caller to load an element.
+   *
+   * @since 3.5.7
+   */
+  public static final long DEFAULT_TIMEOUT = 10000;
+
+  private long timeout = DEFAULT_TIMEOUT;
+  /**
+   * 是否在查询完成后、事务提交前写入加载的结果，默认提交时才写入
+   */
+  private boolean publishBeforeCommit;
   private final Cache delegate;
-  private final ConcurrentHashMap<Object, CountDownLatch> locks;
+  /**
+   * 正在加载的 key，加载者写入或者放弃时完成
+   */
+  private final ConcurrentHashMap<Object, CompletableFuture<Void>> flights;
 
   public BlockingCache(Cache delegate) {
     this.delegate = delegate;
-    this.locks = new ConcurrentHashMap<>();
+    this.flights = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -67,29 +89,35 @@ public class BlockingCache implements Cache {
     try {
       delegate.putObject(key, value);
     } finally {
-      // 另一个线程调用了该方法，已经将数据放入了，则将当前的key
-      // 对应的 CountDownLatch 移除，并且 countDownLatch -1，使得阻塞在getObject 的线程获在阻塞的地方得到唤醒
-      // 去调用 getObject 方法
-      releaseLock(key);
+      // 唤醒等待这个 key 的线程，它们重新从缓存中读取
+      release(key);
     }
   }
 
   @Override
   public Object getObject(Object key) {
-    // 当前线程尝试获得锁，如估获得不到，那么久阻塞或者超时阻塞
-    acquireLock(key);
-    Object value = delegate.getObject(key);
-    if (value != null) {
-      // 释放掉锁
-      releaseLock(key);
+    long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+    while (true) {
+      Object value = delegate.getObject(key);
+      if (value != null) {
+        return value;
+      }
+      CompletableFuture<Void> existing = flights.putIfAbsent(key, new CompletableFuture<>());
+      if (existing == null) {
+        // 由当前线程加载
+        return null;
+      }
+      if (!await(key, existing, deadline)) {
+        // 超时后自己加载
+        return null;
+      }
     }
-    return value;
   }
 
   @Override
   public Object removeObject(Object key) {
     // despite of its name, this method is called only to release locks
-    releaseLock(key);
+    release(key);
     return null;
   }
 
@@ -98,51 +126,70 @@ public class BlockingCache implements Cache {
     delegate.clear();
   }
 
-  private void acquireLock(Object key) {
-    // newLatch 一个新的 CountDownLatch
-    CountDownLatch newLatch = new CountDownLatch(1);
-    // 循环等待
-    while (true) {
-      // 如果key 不存在，则将当前 countDownLatch 放入，尝试获得锁
-      // 如果集合中已经有了 latch 对象，这使用latch 对象
-      CountDownLatch latch = locks.putIfAbsent(key, newLatch);
-      // 如果 latch 成功，的说明key 已经存在了，跳出循环，然后返回，不需要等待阻塞
-      if (latch == null) {
-        break;
-      }
-      try {
-        // 否则如果设置了 超时，则会进行超时锁等待
-        if (timeout > 0) {
-          // 超时等到，如果计数达到零，则该方法返回值true
-          boolean acquired = latch.await(timeout, TimeUnit.MILLISECONDS);
-          // 如果没有获得锁，抛出异常
-          if (!acquired) {
-            throw new CacheException(
-                "Couldn't get a lock in " + timeout + " for the key " + key + " at the cache " + delegate.getId());
-          }
-        } else {
-          // 否则一直阻塞等到当前的 newLatch -1 ，被唤醒
-          latch.await();
+  @Override
+  public CacheStats getStats() {
+    return delegate.getStats();
+  }
+
+  private boolean await(Object key, CompletableFuture<Void> flight, long deadline) {
+    try {
+      if (deadline == 0) {
+        flight.get();
+      } else {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
         }
-      } catch (InterruptedException e) {
-        throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+        flight.get(remaining, TimeUnit.NANOSECONDS);
       }
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException("Got interrupted while waiting for key " + key + " to be loaded", e);
+    } catch (ExecutionException e) {
+      // 只会正常完成
+      return true;
     }
   }
 
-  private void releaseLock(Object key) {
-    CountDownLatch latch = locks.remove(key);
-    if (latch == null) {
-      throw new IllegalStateException("Detected an attempt at releasing unacquired lock. This should never happen.");
+  private void release(Object key) {
+    CompletableFuture<Void> flight = flights.remove(key);
+    if (flight != null) {
+      flight.complete(null);
     }
-    latch.countDown();
   }
 
   public long getTimeout() {
     return timeout;
   }
 
+  /**
+   * Sets the maximum time that a caller waits for another caller to load an element.
+   *
+   * @param timeout
+   *          the timeout in milliseconds, 0 to wait indefinitely
+   */
   public void setTimeout(long timeout) {
     this.timeout = timeout;
   }
+
+  public boolean isPublishBeforeCommit() {
+    return publishBeforeCommit;
+  }
+
+  /**
+   * Sets whether a loaded element is put as soon as its query completes, so that the waiting callers do not wait for
+   * the end of the transaction of the loader. The element is only put early when that transaction has not written
+   * anything through MyBatis, otherwise the waiting callers are released and load it themselves. Writes made on the
+   * same connection outside of MyBatis are not detected, so enable this only when there are none.
+   *
+   * @param publishBeforeCommit
+   *          true to put loaded elements before commit
+   * @since 3.5.7
+   */
+  public void setPublishBeforeCommit(boolean publishBeforeCommit) {
+    this.publishBeforeCommit = publishBeforeCommit;
+  }
 }
@@ -0,0 +1,79 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * 读写缓存的另一种实现，放入和取出时通过反射深拷贝对象，不需要序列化
+ * An alternative to {@link SerializedCache} for read-write caches: values are deep-copied property by property when
+ * they are put and on every hit, which is much cheaper than Java serialization and does not require cached types to
+ * be {@link java.io.Serializable}.
+ * <p>
+ * Selected with the <code>copyStrategy</code> cache property set to <code>reflection</code>.
+ *
+ * @since 3.5.7
+ */
+public class CopyingCache implements Cache {
+
+  private final Cache delegate;
+  private final ObjectGraphCopier copier = new ObjectGraphCopier();
+
+  public CopyingCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, copier.copy(object));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return copier.copy(delegate.getObject(key));
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
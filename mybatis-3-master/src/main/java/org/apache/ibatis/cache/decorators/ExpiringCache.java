@@ -0,0 +1,183 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * 每个条目单独过期，避免 ScheduledCache 一次清空所有条目
+ * Expires each entry on its own, after a time to live plus a random jitter, instead of clearing the whole cache like
+ * {@link ScheduledCache}, so that the entries loaded together do not all miss at the same moment.
+ * <p>
+ * With a stale-while-revalidate time, an expired entry is still returned during that time, except to the first
+ * reader, which gets a miss and reloads the entry. The other readers keep getting the previous value until the new
+ * one is put, or until the stale-while-revalidate time ends. If the reload fails or is rolled back, which releases
+ * the key through {@link #removeObject(Object)} in the reloading thread, the previous value is kept and the next
+ * reader reloads it. A removal from any other thread removes the entry.
+ *
+ * @since 3.5.7
+ */
+public class ExpiringCache implements Cache {
+
+  private final Cache delegate;
+  protected volatile long timeToLive;
+  protected volatile long timeToLiveJitter;
+  protected volatile long staleWhileRevalidate;
+  /**
+   * 正在重新加载的 key 以及重新加载它的线程
+   */
+  private final ConcurrentMap<Object, Thread> refreshing = new ConcurrentHashMap<>();
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+    this.timeToLive = TimeUnit.HOURS.toMillis(1);
+  }
+
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * Sets the maximum random time added to the time to live of each entry.
+   *
+   * @param timeToLiveJitter
+   *          the jitter in milliseconds
+   */
+  public void setTimeToLiveJitter(long timeToLiveJitter) {
+    this.timeToLiveJitter = timeToLiveJitter;
+  }
+
+  /**
+   * Sets how long an expired entry is still returned while one reader reloads it.
+   *
+   * @param staleWhileRevalidate
+   *          the time in milliseconds, 0 to never return expired entries
+   */
+  public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+    this.staleWhileRevalidate = staleWhileRevalidate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    if (object == null && isReloading(key)) {
+      // 重新加载的读者没有写入新值（例如回滚），保留旧值让下一个读者重新加载
+      refreshing.remove(key);
+      return;
+    }
+    long jitter = timeToLiveJitter;
+    long ttl = timeToLive + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+    delegate.putObject(key, new Entry(object, System.currentTimeMillis() + ttl));
+    refreshing.remove(key);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object stored = delegate.getObject(key);
+    if (!(stored instanceof Entry)) {
+      return stored;
+    }
+    Entry entry = (Entry) stored;
+    long now = System.currentTimeMillis();
+    if (now < entry.expiresAt) {
+      return entry.value;
+    }
+    if (now >= entry.expiresAt + staleWhileRevalidate) {
+      // 过期的条目留给下一次加载覆盖或者被淘汰
+      refreshing.remove(key);
+      return null;
+    }
+    // 第一个读者未命中并重新加载，其他读者继续使用旧值
+    return refreshing.putIfAbsent(key, Thread.currentThread()) == null ? null : entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    if (isReloading(key)) {
+      // 重新加载失败或者被回滚时释放 key，只放弃重新加载，旧值继续返回给其他读者
+      refreshing.remove(key);
+      return null;
+    }
+    // 其他线程显式删除条目
+    refreshing.remove(key);
+    Object removed = delegate.removeObject(key);
+    return removed instanceof Entry ? ((Entry) removed).value : removed;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    refreshing.clear();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * 当前线程是否正在重新加载这个 key 的过期条目
+   */
+  private boolean isReloading(Object key) {
+    return refreshing.get(key) == Thread.currentThread() && isStale(delegate.getObject(key));
+  }
+
+  private boolean isStale(Object stored) {
+    if (!(stored instanceof Entry)) {
+      return false;
+    }
+    long expiresAt = ((Entry) stored).expiresAt;
+    long now = System.currentTimeMillis();
+    return now >= expiresAt && now < expiresAt + staleWhileRevalidate;
+  }
+
+  /**
+   * 缓存的值及其过期时间，可以序列化以便存放在堆外缓存中
+   */
+  private static final class Entry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+    private final long expiresAt;
+
+    Entry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ import java.util.Deque;
 import java.util.LinkedList;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
 
 /**
  * FIFO (first in, first out) cache decorator.
@@ -33,6 +34,7 @@ public class FifoCache implements Cache {
    * 记住这个 1024 ，队列的最多长度
    */
   private int size;
+  private CacheStats stats;
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -50,6 +52,17 @@ public class FifoCache implements Cache {
     return delegate.getSize();
   }
 
+  /**
+   * Sets the statistics that count the evicted entries.
+   *
+   * @param stats
+   *          the statistics of the cache
+   * @since 3.5.7
+   */
+  public void setStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
   public void setSize(int size) {
     this.size = size;
   }
@@ -81,6 +94,9 @@ public class FifoCache implements Cache {
     if (keyList.size() > size) {
       Object oldestKey = keyList.removeFirst();
       delegate.removeObject(oldestKey);
+      if (stats != null) {
+        stats.recordEviction();
+      }
     }
   }
 
@@ -16,6 +16,7 @@
 package org.apache.ibatis.cache.decorators;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -26,12 +27,25 @@ public class LoggingCache implements Cache {
 
   private final Log log;
   private final Cache delegate;
+  /**
+   * @deprecated since 3.5.7, use {@link #getStats()}
+   */
+  @Deprecated
   protected int requests = 0;
+  /**
+   * @deprecated since 3.5.7, use {@link #getStats()}
+   */
+  @Deprecated
   protected int hits = 0;
+  /**
+   * 命中、未命中等计数，不加锁
+   */
+  private final CacheStats stats;
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
     this.log = LogFactory.getLog(getId());
+    this.stats = new CacheStats(getId(), delegate::getSize);
   }
 
   @Override
@@ -47,14 +61,21 @@ public class LoggingCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
+    if (object != null) {
+      // 值为 null 时只是释放未命中的 key
+      stats.recordPut();
+    }
   }
 
   @Override
   public Object getObject(Object key) {
-    requests++;
     final Object value = delegate.getObject(key);
+    requests++;
     if (value != null) {
       hits++;
+      stats.recordHit();
+    } else {
+      stats.recordMiss();
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -70,6 +91,12 @@ public class LoggingCache implements Cache {
   @Override
   public void clear() {
     delegate.clear();
+    stats.recordClear();
+  }
+
+  @Override
+  public CacheStats getStats() {
+    return stats;
   }
 
   @Override
@@ -83,7 +110,7 @@ public class LoggingCache implements Cache {
   }
 
   private double getHitRatio() {
-    return (double) hits / (double) requests;
+    return stats.getHitRatio();
   }
 
 }
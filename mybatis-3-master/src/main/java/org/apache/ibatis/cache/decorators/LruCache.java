@@ -19,6 +19,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
 
 /**
  * Lru (least recently used) cache decorator.
@@ -36,6 +37,7 @@ public class LruCache implements Cache {
    * 记录最少使用的 key
    */
   private Object eldestKey;
+  private CacheStats stats;
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
@@ -52,6 +54,17 @@ public class LruCache implements Cache {
     return delegate.getSize();
   }
 
+  /**
+   * Sets the statistics that count the evicted entries.
+   *
+   * @param stats
+   *          the statistics of the cache
+   * @since 3.5.7
+   */
+  public void setStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
   /**
    * 默认缓存大小是 1024
    * 通过 setSize 方法重新设计缓存大小
@@ -106,6 +119,9 @@ public class LruCache implements Cache {
     keyMap.put(key, key);
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
+      if (stats != null) {
+        stats.recordEviction();
+      }
       eldestKey = null;
     }
   }
@@ -0,0 +1,286 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * 利用 Reflector 的元数据逐个属性地深拷贝结果对象，支持循环引用
+ * Deep-copies result graphs property by property, using the same {@link Reflector} metadata that maps results.
+ * <p>
+ * Immutable JDK values are shared. Dates, arrays and the usual collections and maps are copied. Other objects need
+ * a default constructor and are copied through their setters or fields. Lazy-loading proxies and other JDK types go
+ * through Java serialization, as in {@link SerializedCache}.
+ */
+class ObjectGraphCopier {
+
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>();
+
+  static {
+    IMMUTABLE_TYPES.add(String.class);
+    IMMUTABLE_TYPES.add(Boolean.class);
+    IMMUTABLE_TYPES.add(Character.class);
+    IMMUTABLE_TYPES.add(Byte.class);
+    IMMUTABLE_TYPES.add(Short.class);
+    IMMUTABLE_TYPES.add(Integer.class);
+    IMMUTABLE_TYPES.add(Long.class);
+    IMMUTABLE_TYPES.add(Float.class);
+    IMMUTABLE_TYPES.add(Double.class);
+    IMMUTABLE_TYPES.add(BigInteger.class);
+    IMMUTABLE_TYPES.add(BigDecimal.class);
+    IMMUTABLE_TYPES.add(UUID.class);
+    IMMUTABLE_TYPES.add(Class.class);
+  }
+
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  /**
+   * 按类型缓存的判断结果和属性访问器，避免每次拷贝都查找
+   */
+  private final Map<Class<?>, Boolean> immutableTypes = new ConcurrentHashMap<>();
+  private final Map<Class<?>, BeanProperties> beanProperties = new ConcurrentHashMap<>();
+
+  Object copy(Object value) {
+    return copy(value, new IdentityHashMap<>());
+  }
+
+  private Object copy(Object value, Map<Object, Object> copies) {
+    if (value == null || immutableTypes.computeIfAbsent(value.getClass(), ObjectGraphCopier::isImmutable)) {
+      return value;
+    }
+    Object copy = copies.get(value);
+    if (copy != null) {
+      // 循环引用或者共享的对象，保持同一个副本
+      return copy;
+    }
+    Class<?> type = value.getClass();
+    if (value instanceof Date) {
+      copy = ((Date) value).clone();
+    } else if (type.isArray()) {
+      copy = copyArray(value, copies);
+    } else if (value instanceof Collection) {
+      Collection<Object> target = newCollection((Collection<?>) value);
+      copy = target == null ? copySerializable(value) : copyCollection((Collection<?>) value, target, copies);
+    } else if (value instanceof Map) {
+      Map<Object, Object> target = newMap((Map<?, ?>) value);
+      copy = target == null ? copySerializable(value) : copyMap((Map<?, ?>) value, target, copies);
+    } else if (value instanceof WriteReplaceInterface || isJdkType(type)) {
+      copy = copySerializable(value);
+    } else {
+      copy = copyBean(value, copies);
+    }
+    copies.put(value, copy);
+    return copy;
+  }
+
+  private Object copyArray(Object array, Map<Object, Object> copies) {
+    int length = Array.getLength(array);
+    Class<?> componentType = array.getClass().getComponentType();
+    if (componentType.isPrimitive()) {
+      Object copy = Array.newInstance(componentType, length);
+      System.arraycopy(array, 0, copy, 0, length);
+      return copy;
+    }
+    Object[] copy = (Object[]) Array.newInstance(componentType, length);
+    copies.put(array, copy);
+    for (int i = 0; i < length; i++) {
+      copy[i] = copy(Array.get(array, i), copies);
+    }
+    return copy;
+  }
+
+  private Object copyCollection(Collection<?> collection, Collection<Object> copy, Map<Object, Object> copies) {
+    copies.put(collection, copy);
+    for (Object element : collection) {
+      copy.add(copy(element, copies));
+    }
+    return copy;
+  }
+
+  private Object copyMap(Map<?, ?> map, Map<Object, Object> copy, Map<Object, Object> copies) {
+    copies.put(map, copy);
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      copy.put(copy(entry.getKey(), copies), copy(entry.getValue(), copies));
+    }
+    return copy;
+  }
+
+  private Object copyBean(Object bean, Map<Object, Object> copies) {
+    BeanProperties properties = beanProperties.computeIfAbsent(bean.getClass(), this::newBeanProperties);
+    if (properties.constructor == null) {
+      return copySerializable(bean);
+    }
+    Object copy;
+    try {
+      copy = properties.constructor.newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Error copying object of " + bean.getClass() + ". Cause: " + e, e);
+    }
+    // 先登记副本，属性中引用回自身时直接使用它
+    copies.put(bean, copy);
+    for (int i = 0; i < properties.names.length; i++) {
+      try {
+        Object value = properties.getters[i].invoke(bean, null);
+        properties.setters[i].invoke(copy, new Object[] { copy(value, copies) });
+      } catch (CacheException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CacheException("Error copying property '" + properties.names[i] + "' of " + bean.getClass()
+            + ". Cause: " + e, e);
+      }
+    }
+    return copy;
+  }
+
+  private BeanProperties newBeanProperties(Class<?> type) {
+    Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return new BeanProperties(null, new String[0], new Invoker[0], new Invoker[0]);
+    }
+    List<String> names = new ArrayList<>();
+    for (String property : reflector.getSetablePropertyNames()) {
+      if (reflector.hasGetter(property)) {
+        names.add(property);
+      }
+    }
+    Invoker[] getters = new Invoker[names.size()];
+    Invoker[] setters = new Invoker[names.size()];
+    for (int i = 0; i < getters.length; i++) {
+      getters[i] = reflector.getGetInvoker(names.get(i));
+      setters[i] = reflector.getSetInvoker(names.get(i));
+    }
+    return new BeanProperties(reflector.getDefaultConstructor(), names.toArray(new String[0]), getters, setters);
+  }
+
+  private Object copySerializable(Object value) {
+    if (!(value instanceof Serializable)) {
+      throw new CacheException("Could not copy an object that has no default constructor or is a JDK type, and is not serializable: " + value);
+    }
+    return SerializedCache.deserialize(SerializedCache.serialize((Serializable) value));
+  }
+
+  /**
+   * 创建同类型的空集合，无法创建时返回 null
+   */
+  @SuppressWarnings("unchecked")
+  private Collection<Object> newCollection(Collection<?> collection) {
+    if (collection instanceof SortedSet) {
+      return collection instanceof TreeSet ? new TreeSet<>((Comparator<Object>) ((TreeSet<?>) collection).comparator()) : null;
+    }
+    Class<?> type = collection.getClass();
+    if (type == ArrayList.class) {
+      return new ArrayList<>(collection.size());
+    }
+    if (type == LinkedList.class) {
+      return new LinkedList<>();
+    }
+    if (type == HashSet.class) {
+      return new HashSet<>();
+    }
+    if (type == LinkedHashSet.class) {
+      return new LinkedHashSet<>();
+    }
+    return isJdkType(type) ? null : (Collection<Object>) newInstance(type, Collection.class);
+  }
+
+  /**
+   * 创建同类型的空 Map，无法创建时返回 null
+   */
+  @SuppressWarnings("unchecked")
+  private Map<Object, Object> newMap(Map<?, ?> map) {
+    if (map instanceof SortedMap) {
+      return map instanceof TreeMap ? new TreeMap<>((Comparator<Object>) ((TreeMap<?, ?>) map).comparator()) : null;
+    }
+    Class<?> type = map.getClass();
+    if (type == HashMap.class) {
+      return new HashMap<>();
+    }
+    if (type == LinkedHashMap.class) {
+      return new LinkedHashMap<>();
+    }
+    return isJdkType(type) ? null : (Map<Object, Object>) newInstance(type, Map.class);
+  }
+
+  private <T> T newInstance(Class<?> type, Class<T> expected) {
+    Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return null;
+    }
+    try {
+      return expected.cast(reflector.getDefaultConstructor().newInstance());
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static boolean isImmutable(Class<?> type) {
+    return IMMUTABLE_TYPES.contains(type) || type.isEnum() || type.getName().startsWith("java.time.")
+        || (type.getSuperclass() != null && type.getSuperclass().isEnum());
+  }
+
+  private static boolean isJdkType(Class<?> type) {
+    String name = type.getName();
+    return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("jdk.");
+  }
+
+  /**
+   * 一个类型的默认构造方法以及可以读写的属性，没有默认构造方法时 constructor 为 null
+   */
+  private static final class BeanProperties {
+
+    private final Constructor<?> constructor;
+    private final String[] names;
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    BeanProperties(Constructor<?> constructor, String[] names, Invoker[] getters, Invoker[] setters) {
+      this.constructor = constructor;
+      this.names = names;
+      this.getters = getters;
+      this.setters = setters;
+    }
+  }
+
+}
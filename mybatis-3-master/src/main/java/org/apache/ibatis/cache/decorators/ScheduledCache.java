@@ -25,8 +25,8 @@ import org.apache.ibatis.cache.Cache;
 public class ScheduledCache implements Cache {
 
   private final Cache delegate;
-  protected long clearInterval;
-  protected long lastClear;
+  protected volatile long clearInterval;
+  protected volatile long lastClear;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -85,7 +85,7 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
+  static byte[] serialize(Serializable value) {
     try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(bos)) {
       oos.writeObject(value);
@@ -96,7 +96,7 @@ public class SerializedCache implements Cache {
     }
   }
 
-  private Serializable deserialize(byte[] value) {
+  static Serializable deserialize(byte[] value) {
     SerialFilterChecker.check();
     Serializable result;
     try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
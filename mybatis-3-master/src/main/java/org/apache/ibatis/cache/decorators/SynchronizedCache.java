@@ -16,6 +16,7 @@
 package org.apache.ibatis.cache.decorators;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
 
 /**
  * @author Clinton Begin
@@ -58,6 +59,11 @@ public class SynchronizedCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public CacheStats getStats() {
+    return delegate.getStats();
+  }
+
   @Override
   public int hashCode() {
     return delegate.hashCode();
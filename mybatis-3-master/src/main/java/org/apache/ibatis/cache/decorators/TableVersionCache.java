@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.TableVersions;
+
+/**
+ * 把表版本号已经过期的条目当作未命中，使外层的 LoggingCache 和 BlockingCache 把它们当作未命中处理
+ * Reports values stamped with outdated {@link TableVersions} as misses, so that the hit ratio and the locks of the
+ * outer decorators treat them as such.
+ *
+ * @since 3.5.7
+ */
+public class TableVersionCache implements Cache {
+
+  private final Cache delegate;
+  private final TableVersions tableVersions;
+
+  public TableVersionCache(Cache delegate, TableVersions tableVersions) {
+    this.delegate = delegate;
+    this.tableVersions = tableVersions;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object object) {
+    delegate.putObject(key, object);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value instanceof TableVersions.StampedValue && !tableVersions.isCurrent((TableVersions.StampedValue) value)) {
+      // 过期的条目留给下一次加载覆盖或者被淘汰
+      return null;
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  public TableVersions getTableVersions() {
+    return tableVersions;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -15,12 +15,16 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.TableVersions;
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -55,12 +59,51 @@ public class TransactionalCache implements Cache {
    * 缓存未命中的 key
    */
   private final Set<Object> entriesMissedInCache;
+  /**
+   * 表版本号，为 null 时写操作清空整个缓存
+   */
+  private final TableVersions tableVersions;
+  /**
+   * 本事务写过的表，提交时增加它们的版本号
+   */
+  private final Set<String> tablesToInvalidateOnCommit;
+  /**
+   * entriesToAddOnCommit 中条目读过的表，没有记录的条目表示未知
+   */
+  private final Map<Object, Set<String>> tablesOfEntriesToAdd;
+  /**
+   * entriesToAddOnCommit 中条目在查询时盖的章，提交时用它们而不是提交时的版本号，
+   * 使查询之后被其他事务写过的表让条目过期
+   */
+  private final Map<Object, TableVersions.StampedValue> stampsOfEntriesToAdd;
+  /**
+   * 因为本事务写过它们读的表而没有返回的条目，提交时不写入
+   */
+  private final Set<Object> entriesInvalidatedInTransaction;
 
   public TransactionalCache(Cache delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * Creates a transactional buffer that invalidates entries by table.
+   *
+   * @param delegate
+   *          the 2nd level cache
+   * @param tableVersions
+   *          the table versions of the cache, null to clear the whole cache on writes
+   * @since 3.5.7
+   */
+  public TransactionalCache(Cache delegate, TableVersions tableVersions) {
     this.delegate = delegate;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<>();
     this.entriesMissedInCache = new HashSet<>();
+    this.tableVersions = tableVersions;
+    this.tablesToInvalidateOnCommit = new HashSet<>();
+    this.tablesOfEntriesToAdd = new HashMap<>();
+    this.stampsOfEntriesToAdd = new HashMap<>();
+    this.entriesInvalidatedInTransaction = new HashSet<>();
   }
 
   @Override
@@ -77,6 +120,19 @@ public class TransactionalCache implements Cache {
   public Object getObject(Object key) {
     // issue #116
     Object object = delegate.getObject(key);
+    if (object instanceof TableVersions.StampedValue) {
+      TableVersions.StampedValue stamped = (TableVersions.StampedValue) object;
+      if (tableVersions != null && !tableVersions.isCurrent(stamped)) {
+        // 没有 TableVersionCache 装饰的自定义缓存
+        object = null;
+      } else if (isInvalidated(stamped.getTables())) {
+        // 本事务写过它读的表，和 clearOnCommit 一样不返回
+        entriesInvalidatedInTransaction.add(key);
+        return null;
+      } else {
+        object = stamped.getValue();
+      }
+    }
     if (object == null) {
       entriesMissedInCache.add(key);
     }
@@ -90,7 +146,36 @@ public class TransactionalCache implements Cache {
 
   @Override
   public void putObject(Object key, Object object) {
+    putObject(key, object, null);
+  }
+
+  /**
+   * Buffers a value read from the given tables. The value is stamped with the versions the tables have now, when
+   * its query has just run, so that a write committed by another transaction before this one commits makes it
+   * stale.
+   *
+   * @param key
+   *          the key
+   * @param object
+   *          the value
+   * @param tables
+   *          the tables the value was read from, null if unknown
+   * @since 3.5.7
+   */
+  public void putObject(Object key, Object object, Set<String> tables) {
     entriesToAddOnCommit.put(key, object);
+    if (tables == null) {
+      tablesOfEntriesToAdd.remove(key);
+    } else {
+      tablesOfEntriesToAdd.put(key, tables);
+    }
+    if (tableVersions == null || !tablesToInvalidateOnCommit.isEmpty()
+        && (tables == null || intersects(tables, tablesToInvalidateOnCommit))) {
+      // 读了本事务写过的表，它包含本事务的修改，提交时在增加这些表的版本号之后再盖章
+      stampsOfEntriesToAdd.remove(key);
+    } else {
+      stampsOfEntriesToAdd.put(key, tableVersions.stamp(object, tables));
+    }
   }
 
   /**
@@ -111,6 +196,85 @@ public class TransactionalCache implements Cache {
      */
     clearOnCommit = true;
     entriesToAddOnCommit.clear();
+    tablesOfEntriesToAdd.clear();
+    stampsOfEntriesToAdd.clear();
+  }
+
+  /**
+   * Invalidates, on commit, the entries read from one of the given tables. Clears the whole cache instead when the
+   * tables are unknown or when the cache does not track tables.
+   *
+   * @param tables
+   *          the tables that were written, null if unknown
+   * @since 3.5.7
+   */
+  public void invalidate(Set<String> tables) {
+    if (tables == null || tableVersions == null) {
+      clear();
+      return;
+    }
+    tablesToInvalidateOnCommit.addAll(tables);
+    // 和 clear 一样丢弃之前查询到的、读过这些表的条目
+    Iterator<Object> keys = entriesToAddOnCommit.keySet().iterator();
+    while (keys.hasNext()) {
+      Object key = keys.next();
+      Set<String> entryTables = tablesOfEntriesToAdd.get(key);
+      if (entryTables == null || intersects(entryTables, tables)) {
+        keys.remove();
+        tablesOfEntriesToAdd.remove(key);
+        stampsOfEntriesToAdd.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Puts a buffered entry in the cache before commit, so that the callers waiting for it in a blocking cache get it
+   * without waiting for the end of the transaction. Does nothing if the transaction invalidated this cache, since
+   * the entry may then contain uncommitted changes.
+   *
+   * @param key
+   *          the key of an entry put in this transaction
+   * @since 3.5.7
+   */
+  public void flushEntry(Object key) {
+    if (clearOnCommit || !tablesToInvalidateOnCommit.isEmpty() || entriesInvalidatedInTransaction.contains(key)
+        || !entriesToAddOnCommit.containsKey(key)) {
+      return;
+    }
+    Object value = stampedValue(key, entriesToAddOnCommit.remove(key));
+    tablesOfEntriesToAdd.remove(key);
+    stampsOfEntriesToAdd.remove(key);
+    entriesMissedInCache.remove(key);
+    delegate.putObject(key, value);
+  }
+
+  /**
+   * Releases a missed key whose value will not be put, for example because its query failed, so that the callers
+   * waiting for it in a blocking cache load it themselves.
+   *
+   * @param key
+   *          the key
+   * @since 3.5.7
+   */
+  public void releaseEntry(Object key) {
+    if (entriesMissedInCache.remove(key)) {
+      delegate.removeObject(key);
+    }
+  }
+
+  /**
+   * Adds the invalidations that the commit of this transaction makes, to be published to the other nodes.
+   *
+   * @param invalidation
+   *          the invalidations of the commit
+   * @since 3.5.7
+   */
+  public void addInvalidation(CacheInvalidation invalidation) {
+    if (clearOnCommit) {
+      invalidation.add(getId(), null);
+    } else if (!tablesToInvalidateOnCommit.isEmpty()) {
+      invalidation.add(getId(), tablesToInvalidateOnCommit);
+    }
   }
 
   public void commit() {
@@ -118,6 +282,9 @@ public class TransactionalCache implements Cache {
     if (clearOnCommit) {
       delegate.clear();
     }
+    if (!tablesToInvalidateOnCommit.isEmpty()) {
+      tableVersions.invalidate(tablesToInvalidateOnCommit);
+    }
     flushPendingEntries();
     // 为什么要重置 ，重用 TransactionCache 对象
     reset();
@@ -139,6 +306,10 @@ public class TransactionalCache implements Cache {
     clearOnCommit = false;
     entriesToAddOnCommit.clear();
     entriesMissedInCache.clear();
+    tablesToInvalidateOnCommit.clear();
+    tablesOfEntriesToAdd.clear();
+    stampsOfEntriesToAdd.clear();
+    entriesInvalidatedInTransaction.clear();
   }
 
   /**
@@ -146,7 +317,10 @@ public class TransactionalCache implements Cache {
    */
   private void flushPendingEntries() {
     for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
-      delegate.putObject(entry.getKey(), entry.getValue());
+      if (entriesInvalidatedInTransaction.contains(entry.getKey())) {
+        continue;
+      }
+      delegate.putObject(entry.getKey(), stampedValue(entry.getKey(), entry.getValue()));
     }
     // 如果存在缓存未命中的 key，则将 cache 中对应的 value 设置为 null
     for (Object entry : entriesMissedInCache) {
@@ -156,6 +330,44 @@ public class TransactionalCache implements Cache {
     }
   }
 
+  /**
+   * 优先使用查询时盖的章，没有的话在增加本事务写过的表的版本号之后盖章
+   */
+  private Object stampedValue(Object key, Object value) {
+    if (tableVersions == null) {
+      return value;
+    }
+    TableVersions.StampedValue stamped = stampsOfEntriesToAdd.get(key);
+    return stamped != null ? stamped : tableVersions.stamp(value, tablesOfEntriesToAdd.get(key));
+  }
+
+  /**
+   * 条目读过的表在本事务中是否被写过，表未知的条目在任何写之后都算
+   */
+  private boolean isInvalidated(String[] tables) {
+    if (tablesToInvalidateOnCommit.isEmpty()) {
+      return false;
+    }
+    if (tables == null) {
+      return true;
+    }
+    for (String table : tables) {
+      if (tablesToInvalidateOnCommit.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean intersects(Set<String> tables, Collection<String> others) {
+    for (String table : others) {
+      if (tables.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * 释放调用 缓存未命中的 key
    */
@@ -0,0 +1,217 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.MemoryBudget;
+import org.apache.ibatis.cache.SampledWeigher;
+import org.apache.ibatis.cache.Weigher;
+
+/**
+ * 按估算的内存大小而不是条目个数限制缓存，超出时淘汰最近最少使用的条目
+ * Bounds a cache by the estimated size of its entries instead of their number, evicting the least recently used
+ * entries first. The cache can also count against a {@link MemoryBudget} shared with other caches.
+ * <p>
+ * Entries removed by the decorators below this one, such as an {@link LruCache}, are accounted for when the size of
+ * the delegate falls below the number of weighed entries, taking the least recently used first, or when they are
+ * looked up. This decorator is thread safe, so that the budget can evict from it while it is used.
+ *
+ * @since 3.5.7
+ */
+public class WeightedCache implements Cache {
+
+  private final Cache delegate;
+  /**
+   * 按访问顺序记录每个条目的大小
+   */
+  private final LinkedHashMap<Object, Long> weights = new LinkedHashMap<>(16, .75F, true);
+  private Weigher weigher = new SampledWeigher();
+  private long maxWeight;
+  private MemoryBudget budget;
+  private CacheStats stats;
+  private volatile long weight;
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Sets the maximum total weight of this cache.
+   *
+   * @param maxWeight
+   *          the maximum weight in bytes, 0 for no limit
+   */
+  public void setMaxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  public void setWeigher(Weigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * Makes the entries of this cache count against a budget shared with other caches.
+   *
+   * @param budget
+   *          the budget
+   */
+  public void setBudget(MemoryBudget budget) {
+    this.budget = budget;
+    budget.register(this);
+  }
+
+  /**
+   * Sets the statistics that count the evicted entries and record the weight of this cache.
+   *
+   * @param stats
+   *          the statistics of the cache
+   */
+  public void setStats(CacheStats stats) {
+    this.stats = stats;
+    stats.recordWeight(weight);
+  }
+
+  /**
+   * Gets the estimated size of the entries of this cache.
+   *
+   * @return the weight in bytes
+   */
+  public long getWeight() {
+    return weight;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    long entryWeight = weigher.weigh(key, value);
+    synchronized (this) {
+      delegate.putObject(key, value);
+      Long previous = weights.put(key, entryWeight);
+      changeWeight(entryWeight - (previous == null ? 0 : previous));
+      forgetRemovedBelowLocked();
+      // 单个条目超过上限时也不保留
+      while (maxWeight > 0 && weight > maxWeight && evictEldestLocked()) {
+        // 继续淘汰
+      }
+    }
+    if (budget != null) {
+      // 不能持有本缓存的锁，以免和淘汰其他缓存的线程死锁
+      budget.enforce();
+    }
+  }
+
+  @Override
+  public synchronized Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      // 已经被下层的装饰器淘汰
+      Long removed = weights.remove(key);
+      if (removed != null) {
+        changeWeight(-removed);
+      }
+    } else {
+      weights.get(key); // touch
+    }
+    return value;
+  }
+
+  @Override
+  public synchronized Object removeObject(Object key) {
+    Long removed = weights.remove(key);
+    if (removed != null) {
+      changeWeight(-removed);
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public synchronized void clear() {
+    delegate.clear();
+    weights.clear();
+    changeWeight(-weight);
+  }
+
+  /**
+   * Evicts the least recently used entry.
+   *
+   * @return false if the cache is empty
+   */
+  public synchronized boolean evictEldest() {
+    return evictEldestLocked();
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  private boolean evictEldestLocked() {
+    Iterator<Map.Entry<Object, Long>> iterator = weights.entrySet().iterator();
+    if (!iterator.hasNext()) {
+      return false;
+    }
+    Map.Entry<Object, Long> eldest = iterator.next();
+    iterator.remove();
+    changeWeight(-eldest.getValue());
+    delegate.removeObject(eldest.getKey());
+    if (stats != null) {
+      stats.recordEviction();
+    }
+    return true;
+  }
+
+  /**
+   * 下层装饰器（例如 LruCache）淘汰的条目不会经过这里，按最近最少使用的顺序扣除多出来的条目的大小
+   */
+  private void forgetRemovedBelowLocked() {
+    Iterator<Map.Entry<Object, Long>> iterator = weights.entrySet().iterator();
+    for (int excess = weights.size() - delegate.getSize(); excess > 0 && iterator.hasNext(); excess--) {
+      Map.Entry<Object, Long> eldest = iterator.next();
+      iterator.remove();
+      changeWeight(-eldest.getValue());
+    }
+  }
+
+  private void changeWeight(long delta) {
+    weight += delta;
+    if (stats != null) {
+      stats.recordWeight(weight);
+    }
+    if (budget != null) {
+      budget.add(delta);
+    }
+  }
+
+}
@@ -0,0 +1,253 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.CacheException;
+
+/**
+ * 线程安全的缓存实现，读操作无锁，自带分段的 CLOCK 淘汰策略，不需要 SynchronizedCache 和淘汰装饰器
+ * A thread-safe cache with its own eviction, so that it needs neither {@link org.apache.ibatis.cache.decorators.SynchronizedCache}
+ * nor an eviction decorator.
+ * <p>
+ * Entries live in a {@link ConcurrentHashMap}, and a read only sets the reference bit of the entry it finds. Keys are
+ * spread over segments that each run the CLOCK algorithm over their share of the capacity: a put takes the lock of
+ * one segment, and the hand of that segment evicts the first entry that was not read since the hand last passed it.
+ *
+ * @since 3.5.7
+ */
+public class ConcurrentCache implements Cache {
+
+  private static final int DEFAULT_SIZE = 1024;
+  private static final int MAXIMUM_SEGMENTS = 16;
+  /**
+   * 每个分段至少容纳的条目数，容量较小时减少分段数，使淘汰更接近全局的 CLOCK
+   */
+  private static final int MINIMUM_SEGMENT_SIZE = 64;
+
+  private final String id;
+
+  private final ConcurrentMap<Object, Node> cache = new ConcurrentHashMap<>();
+
+  private volatile Segment[] segments;
+
+  private int size;
+  private volatile CacheStats stats;
+
+  public ConcurrentCache(String id) {
+    this.id = id;
+    setSize(DEFAULT_SIZE);
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the statistics that count the evicted entries.
+   *
+   * @param stats
+   *          the statistics of the cache
+   * @since 3.5.7
+   */
+  public void setStats(CacheStats stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * Sets the maximum number of entries, clearing the cache.
+   *
+   * @param size
+   *          the maximum number of entries
+   */
+  public void setSize(int size) {
+    if (size <= 0) {
+      throw new CacheException("The size of cache '" + id + "' must be positive but was " + size + ".");
+    }
+    int segmentCount = 1;
+    while (segmentCount < MAXIMUM_SEGMENTS && segmentCount * 2 * MINIMUM_SEGMENT_SIZE <= size) {
+      segmentCount *= 2;
+    }
+    Segment[] newSegments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      // 余数分给前面的分段，总容量正好是 size
+      newSegments[i] = new Segment(size / segmentCount + (i < size % segmentCount ? 1 : 0));
+    }
+    clear();
+    this.size = size;
+    this.segments = newSegments;
+  }
+
+  public int getCapacity() {
+    return size;
+  }
+
+  @Override
+  public int getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Node node = new Node(key, value);
+    Node previous = cache.put(key, node);
+    if (previous != null) {
+      previous.removed = true;
+    }
+    segmentFor(key).add(node);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Node node = cache.get(key);
+    if (node == null) {
+      return null;
+    }
+    // 已经置位时不再写，避免多个线程争抢同一个缓存行
+    if (!node.referenced) {
+      node.referenced = true;
+    }
+    return node.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Node node = cache.remove(key);
+    if (node == null) {
+      return null;
+    }
+    node.removed = true;
+    return node.value;
+  }
+
+  @Override
+  public void clear() {
+    Segment[] current = segments;
+    if (current == null) {
+      return;
+    }
+    for (Segment segment : current) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private Segment segmentFor(Object key) {
+    Segment[] current = segments;
+    int h = key == null ? 0 : key.hashCode();
+    return current[(h ^ (h >>> 16)) & (current.length - 1)];
+  }
+
+  /**
+   * 缓存条目，referenced 为 CLOCK 算法的访问位
+   */
+  private static final class Node {
+
+    private final Object key;
+    private final Object value;
+    private volatile boolean referenced;
+    /**
+     * 已经被覆盖或删除，CLOCK 指针扫到时直接复用它的位置
+     */
+    private volatile boolean removed;
+
+    Node(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * 一个分段，使用环形数组实现 CLOCK 算法，只有写操作需要获取它的锁
+   */
+  private final class Segment {
+
+    private final Node[] ring;
+    private int count;
+    private int hand;
+
+    Segment(int capacity) {
+      this.ring = new Node[Math.max(1, capacity)];
+    }
+
+    synchronized void add(Node node) {
+      if (count < ring.length) {
+        ring[count++] = node;
+        return;
+      }
+      while (true) {
+        Node candidate = ring[hand];
+        if (candidate.removed) {
+          break;
+        }
+        if (candidate.referenced) {
+          // 给被访问过的条目第二次机会
+          candidate.referenced = false;
+          hand = (hand + 1) % ring.length;
+          continue;
+        }
+        candidate.removed = true;
+        if (cache.remove(candidate.key, candidate) && stats != null) {
+          stats.recordEviction();
+        }
+        break;
+      }
+      ring[hand] = node;
+      hand = (hand + 1) % ring.length;
+    }
+
+    synchronized void clear() {
+      for (int i = 0; i < count; i++) {
+        Node node = ring[i];
+        node.removed = true;
+        // 只删除仍然是该条目的映射，并发写入的新值保留，随后会加入分段
+        cache.remove(node.key, node);
+        ring[i] = null;
+      }
+      count = 0;
+      hand = 0;
+    }
+  }
+
+}
@@ -0,0 +1,497 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.io.SerialFilterChecker;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 保存在本地内存映射文件中的缓存，重启后可以直接使用之前的条目
+ * A cache that keeps its entries in a local memory-mapped file, so that a restarted application starts with the
+ * entries of the previous run instead of an empty cache.
+ * <p>
+ * Entries are appended to a log and found through an index kept in memory, which is rebuilt from the log when the
+ * file is reopened. The log is compacted when most of it holds replaced or removed entries. The file starts with the
+ * version of the cache: when the configured version differs, the previous entries are dropped, so changing it
+ * invalidates the entries of a namespace across restarts. Keys and values must be serializable, and each get returns
+ * a new copy of the value.
+ * <p>
+ * The {@code directory} property is required. A file can be used by one cache at a time. Within a JVM, a cache that is
+ * initialized for the file of another cache takes it over, and the previous cache then behaves as an empty cache that
+ * stores nothing, as happens when a {@code SqlSessionFactory} is built again after a restart or redeployment. Across
+ * processes, the cache holds a lock on the file until {@link #close()}, and fails to initialize when another process
+ * holds it.
+ *
+ * @since 3.5.7
+ */
+public class DiskCache implements Cache, InitializingObject {
+
+  private static final Log log = LogFactory.getLog(DiskCache.class);
+
+  /**
+   * 本 JVM 中打开的缓存文件，同一个文件的新缓存接管旧缓存
+   */
+  private static final Map<Path, DiskCache> openCaches = new HashMap<>();
+
+  private static final int MAGIC = 0x4D424443;
+  /**
+   * 记录头：key 的长度以及 value 的长度，value 长度为 -1 表示删除
+   */
+  private static final int RECORD_HEADER = 8;
+  private static final int REMOVED = -1;
+  private static final int MIN_MAPPING = 1 << 16;
+  /**
+   * 日志小于这个大小时不压缩
+   */
+  private static final long MIN_COMPACTION = 1 << 20;
+
+  private final String id;
+  private String directory;
+  private String version = "0";
+
+  /**
+   * key 以及对应记录在文件中的位置
+   */
+  private final Map<Object, Integer> index = new HashMap<>();
+  private Path file;
+  /**
+   * 锁住与缓存文件同名的 .lock 文件，压缩时替换缓存文件也不会释放锁
+   */
+  private FileChannel lockChannel;
+  private FileLock lock;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  /**
+   * 第一条记录的位置
+   */
+  private int start;
+  /**
+   * 下一条记录写入的位置
+   */
+  private int end;
+  /**
+   * 索引中的记录占用的字节数
+   */
+  private long liveBytes;
+
+  public DiskCache(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Sets the directory of the cache files. Each cache uses a file named after its id. This property is required.
+   *
+   * @param directory
+   *          the directory, created if missing
+   */
+  public void setDirectory(String directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Sets the version of the entries. The entries stored with another version are dropped when the file is opened.
+   *
+   * @param version
+   *          the version
+   */
+  public void setVersion(String version) {
+    this.version = version;
+  }
+
+  @Override
+  public void initialize() throws IOException {
+    if (directory == null) {
+      throw new CacheException("DiskCache " + id + " requires the directory property.");
+    }
+    Path dir = Paths.get(directory);
+    Files.createDirectories(dir);
+    Path path = dir.resolve(id.replaceAll("[^A-Za-z0-9._-]", "_") + ".cache").toAbsolutePath().normalize();
+    // 先锁注册表再锁缓存，close 也按这个顺序
+    synchronized (openCaches) {
+      DiskCache previous = openCaches.remove(path);
+      if (previous != null) {
+        // 例如重新构建 SqlSessionFactory，之前的缓存没有被关闭
+        previous.release();
+      }
+      synchronized (this) {
+        file = path;
+        lock();
+        try {
+          open();
+        } catch (IOException | RuntimeException e) {
+          release();
+          throw e;
+        }
+      }
+      openCaches.put(path, this);
+    }
+  }
+
+  /**
+   * Closes the file of the cache and releases its lock, so that another process can open it. The cache then behaves
+   * as an empty cache that stores nothing.
+   */
+  public void close() {
+    synchronized (openCaches) {
+      if (file != null) {
+        openCaches.remove(file, this);
+      }
+      release();
+    }
+  }
+
+  private synchronized void release() {
+    index.clear();
+    liveBytes = 0;
+    buffer = null;
+    closeQuietly(channel);
+    channel = null;
+    closeQuietly(lockChannel);
+    lockChannel = null;
+    lock = null;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public synchronized int getSize() {
+    return index.size();
+  }
+
+  @Override
+  public synchronized void putObject(Object key, Object value) {
+    if (buffer == null) {
+      // 已经关闭或者被同一个文件的新缓存接管
+      return;
+    }
+    if (value == null) {
+      // 和 PerpetualCache 一样，null 与没有条目相同
+      removeObject(key);
+      return;
+    }
+    if (!(key instanceof Serializable) || !(value instanceof Serializable)) {
+      throw new CacheException("DiskCache failed to store a non-serializable entry: " + key);
+    }
+    byte[] keyBytes = serialize(key);
+    byte[] valueBytes = serialize(value);
+    int offset = append(keyBytes, valueBytes);
+    Integer previous = index.put(key, offset);
+    if (previous != null) {
+      liveBytes -= recordLength(previous);
+    }
+    liveBytes += recordLength(offset);
+    compactIfWasteful();
+  }
+
+  @Override
+  public synchronized Object getObject(Object key) {
+    Integer offset = index.get(key);
+    if (offset == null) {
+      return null;
+    }
+    int keyLength = buffer.getInt(offset);
+    int valueLength = buffer.getInt(offset + 4);
+    try {
+      return deserialize(offset + RECORD_HEADER + keyLength, valueLength);
+    } catch (CacheException e) {
+      // 例如类已经改变，当作未命中
+      log.warn("Dropping unreadable entry of cache " + id + ". Cause: " + e.getCause());
+      removeObject(key);
+      return null;
+    }
+  }
+
+  @Override
+  public synchronized Object removeObject(Object key) {
+    Integer offset = index.remove(key);
+    if (offset == null) {
+      return null;
+    }
+    liveBytes -= recordLength(offset);
+    append(serialize(key), null);
+    return null;
+  }
+
+  @Override
+  public synchronized void clear() {
+    index.clear();
+    liveBytes = 0;
+    end = start;
+    if (buffer != null) {
+      buffer.putInt(end, 0);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private void lock() throws IOException {
+    Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      lock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // 同一个 JVM 中 DiskCache 以外的代码持有锁
+      lock = null;
+    }
+    if (lock == null) {
+      closeQuietly(lockChannel);
+      lockChannel = null;
+      throw new CacheException("DiskCache " + id + " cannot use " + file
+          + " because another process holds its lock. Configure a separate directory for each application.");
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private void open() throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_MAPPING, channel.size()));
+    byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+    start = 8 + versionBytes.length;
+    index.clear();
+    liveBytes = 0;
+    end = start;
+    if (hasHeader(versionBytes)) {
+      load();
+    } else {
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, versionBytes.length);
+      for (int i = 0; i < versionBytes.length; i++) {
+        buffer.put(8 + i, versionBytes[i]);
+      }
+      buffer.putInt(start, 0);
+    }
+  }
+
+  private boolean hasHeader(byte[] versionBytes) {
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != versionBytes.length) {
+      return false;
+    }
+    for (int i = 0; i < versionBytes.length; i++) {
+      if (buffer.get(8 + i) != versionBytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 读取日志重建索引，key 的长度为 0 表示日志结束
+   */
+  private void load() {
+    int offset = start;
+    while (offset + RECORD_HEADER <= buffer.capacity()) {
+      int keyLength = buffer.getInt(offset);
+      int valueLength = buffer.getInt(offset + 4);
+      if (keyLength <= 0 || valueLength < REMOVED
+          || (long) offset + RECORD_HEADER + keyLength + Math.max(valueLength, 0) > buffer.capacity()) {
+        break;
+      }
+      Object key;
+      try {
+        key = deserialize(offset + RECORD_HEADER, keyLength);
+      } catch (CacheException e) {
+        key = null;
+      }
+      if (key != null) {
+        Integer previous = valueLength == REMOVED ? index.remove(key) : index.put(key, offset);
+        if (previous != null) {
+          liveBytes -= recordLength(previous);
+        }
+        if (valueLength != REMOVED) {
+          liveBytes += recordLength(offset);
+        }
+      }
+      offset += RECORD_HEADER + keyLength + Math.max(valueLength, 0);
+    }
+    end = offset;
+    if (end + 4 <= buffer.capacity()) {
+      buffer.putInt(end, 0);
+    }
+    compactIfWasteful();
+  }
+
+  /**
+   * 先写入内容，最后写入 key 的长度，写到一半时中断的记录在重新打开时被忽略
+   */
+  private int append(byte[] keyBytes, byte[] valueBytes) {
+    int valueLength = valueBytes == null ? 0 : valueBytes.length;
+    long length = (long) RECORD_HEADER + keyBytes.length + valueLength;
+    if (end + length + 4 > buffer.capacity()) {
+      compact();
+      if (end + length + 4 > buffer.capacity()) {
+        grow(end + length + 4);
+      }
+    }
+    int offset = end;
+    // 通过 Buffer 和 ByteBuffer 调用，JDK 9 以上编译时才能在 Java 8 上运行
+    ByteBuffer record = ((ByteBuffer) buffer).duplicate();
+    ((Buffer) record).position(offset + 4);
+    record.putInt(valueBytes == null ? REMOVED : valueLength);
+    record.put(keyBytes);
+    if (valueBytes != null) {
+      record.put(valueBytes);
+    }
+    end = record.position();
+    record.putInt(0);
+    buffer.putInt(offset, keyBytes.length);
+    return offset;
+  }
+
+  private void grow(long required) {
+    long capacity = Math.max(required, (long) buffer.capacity() * 2);
+    if (capacity > Integer.MAX_VALUE) {
+      if (required > Integer.MAX_VALUE) {
+        throw new CacheException("DiskCache " + id + " cannot store an entry of " + required + " bytes.");
+      }
+      capacity = Integer.MAX_VALUE;
+    }
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    } catch (IOException e) {
+      throw new CacheException("Error growing the file of cache " + id + ". Cause: " + e, e);
+    }
+  }
+
+  private void compactIfWasteful() {
+    if (end - start > MIN_COMPACTION && liveBytes < (end - start) / 2) {
+      compact();
+    }
+  }
+
+  /**
+   * 把索引中的记录复制到新文件，再替换旧文件
+   */
+  private void compact() {
+    if (liveBytes == end - start) {
+      return;
+    }
+    Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+    try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer copy = target.map(FileChannel.MapMode.READ_WRITE, 0,
+          Math.max(MIN_MAPPING, Math.min(Integer.MAX_VALUE, start + liveBytes * 2 + 4)));
+      ByteBuffer source = ((ByteBuffer) buffer).duplicate();
+      ((Buffer) source).position(0);
+      ((Buffer) source).limit(start);
+      copy.put(source);
+      for (Map.Entry<Object, Integer> entry : index.entrySet()) {
+        int offset = entry.getValue();
+        ((Buffer) source).limit(offset + recordLength(offset));
+        ((Buffer) source).position(offset);
+        entry.setValue(copy.position());
+        copy.put(source);
+      }
+      end = copy.position();
+      copy.putInt(0);
+      copy.force();
+      channel.close();
+      Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      buffer = copy;
+    } catch (IOException e) {
+      throw new CacheException("Error compacting the file of cache " + id + ". Cause: " + e, e);
+    }
+  }
+
+  private int recordLength(int offset) {
+    return RECORD_HEADER + buffer.getInt(offset) + Math.max(buffer.getInt(offset + 4), 0);
+  }
+
+  private static byte[] serialize(Object value) {
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(value);
+      oos.flush();
+      return bos.toByteArray();
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  private Object deserialize(int offset, int length) {
+    SerialFilterChecker.check();
+    byte[] bytes = new byte[length];
+    ByteBuffer source = ((ByteBuffer) buffer).duplicate();
+    ((Buffer) source).position(offset);
+    source.get(bytes);
+    try (ObjectInputStream ois = new SerializedCache.CustomObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return ois.readObject();
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+}
@@ -0,0 +1,379 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.io.SerialFilterChecker;
+
+/**
+ * 把序列化后的缓存值保存在堆外内存中的缓存实现，命中时反序列化，减少大缓存对 GC 的压力
+ * A cache that keeps serialized values in direct memory, so that large caches do not fill the old generation.
+ * Every hit returns a new copy, as with {@link SerializedCache}.
+ * <p>
+ * Memory is allocated in slabs of {@link #setSlabSize(int)} bytes, up to {@link #setCapacity(long)} bytes, and each
+ * slab is cut into blocks of {@link #setBlockSize(int)} bytes. A value takes as many blocks as it needs, wherever
+ * they are, so that memory never fragments. When there are not enough free blocks, the least recently used entries
+ * are evicted. Keys and the index stay on the heap.
+ *
+ * @since 3.5.7
+ */
+public class OffHeapCache implements Cache {
+
+  private final String id;
+
+  /**
+   * 堆内的索引，按访问顺序排列，最前面的是最近最少使用的条目
+   */
+  private final Map<Object, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long capacity = 64L * 1024 * 1024;
+  private int slabSize = 4 * 1024 * 1024;
+  private int blockSize = 256;
+
+  private ByteBuffer[] slabs;
+  private int blocksPerSlab;
+  private int totalBlocks;
+  /**
+   * 空闲的块编号，作为栈使用
+   */
+  private int[] freeBlocks;
+  private int freeCount;
+  /**
+   * 还没有分配过的第一个块，所在的 slab 在第一次用到时才分配
+   */
+  private int nextUnusedBlock;
+  private long usedBytes;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the maximum number of bytes of direct memory, clearing the cache.
+   *
+   * @param capacity
+   *          the capacity in bytes
+   */
+  public synchronized void setCapacity(long capacity) {
+    this.capacity = capacity;
+    release();
+  }
+
+  /**
+   * Sets the size of each direct buffer allocated, clearing the cache.
+   *
+   * @param slabSize
+   *          the slab size in bytes
+   */
+  public synchronized void setSlabSize(int slabSize) {
+    this.slabSize = slabSize;
+    release();
+  }
+
+  /**
+   * Sets the allocation unit within a slab, clearing the cache. Values take a whole number of blocks.
+   *
+   * @param blockSize
+   *          the block size in bytes
+   */
+  public synchronized void setBlockSize(int blockSize) {
+    this.blockSize = blockSize;
+    release();
+  }
+
+  public synchronized long getCapacity() {
+    return capacity;
+  }
+
+  public synchronized int getSlabSize() {
+    return slabSize;
+  }
+
+  public synchronized int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Gets the number of bytes taken by serialized values, not counting the unused end of their last block.
+   *
+   * @return the used bytes
+   */
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /**
+   * Gets the number of bytes of direct memory allocated so far.
+   *
+   * @return the allocated bytes
+   */
+  public synchronized long getAllocatedBytes() {
+    if (slabs == null) {
+      return 0;
+    }
+    long allocated = 0;
+    for (ByteBuffer slab : slabs) {
+      if (slab != null) {
+        allocated += slab.capacity();
+      }
+    }
+    return allocated;
+  }
+
+  @Override
+  public synchronized int getSize() {
+    return index.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      // null 值不需要占用堆外内存，命中与未命中的结果相同
+      removeObject(key);
+      return;
+    }
+    if (!(value instanceof Serializable)) {
+      throw new CacheException("OffHeapCache failed to store a non-serializable object: " + value);
+    }
+    byte[] bytes = serialize((Serializable) value);
+    synchronized (this) {
+      free(key);
+      int[] blocks = allocate(bytes.length);
+      if (blocks == null) {
+        // 比整个缓存还大，不缓存
+        return;
+      }
+      write(blocks, bytes);
+      index.put(key, new Entry(blocks, bytes.length));
+      usedBytes += bytes.length;
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] bytes;
+    synchronized (this) {
+      Entry entry = index.get(key);
+      if (entry == null) {
+        return null;
+      }
+      bytes = read(entry);
+    }
+    // 在锁外反序列化
+    return deserialize(bytes);
+  }
+
+  /**
+   * Removes an entry. Returns null rather than deserializing a value that the core never uses.
+   */
+  @Override
+  public synchronized Object removeObject(Object key) {
+    free(key);
+    return null;
+  }
+
+  @Override
+  public synchronized void clear() {
+    for (Entry entry : index.values()) {
+      releaseBlocks(entry.blocks);
+    }
+    index.clear();
+    usedBytes = 0;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  /**
+   * 分配能容纳 length 个字节的块，不够时淘汰最近最少使用的条目，超过容量时返回 null
+   */
+  private int[] allocate(int length) {
+    ensureInitialized();
+    int count = (length + blockSize - 1) / blockSize;
+    if (count > totalBlocks) {
+      return null;
+    }
+    while (freeCount + (totalBlocks - nextUnusedBlock) < count) {
+      Iterator<Entry> eldest = index.values().iterator();
+      Entry entry = eldest.next();
+      eldest.remove();
+      releaseBlocks(entry.blocks);
+      usedBytes -= entry.length;
+    }
+    int[] blocks = new int[count];
+    for (int i = 0; i < count; i++) {
+      if (freeCount > 0) {
+        blocks[i] = freeBlocks[--freeCount];
+      } else {
+        int block = nextUnusedBlock++;
+        int slab = block / blocksPerSlab;
+        if (slabs[slab] == null) {
+          // 最后一个 slab 只分配容量以内的部分
+          slabs[slab] = ByteBuffer.allocateDirect(Math.min(blocksPerSlab, totalBlocks - slab * blocksPerSlab) * blockSize);
+        }
+        blocks[i] = block;
+      }
+    }
+    return blocks;
+  }
+
+  private void free(Object key) {
+    Entry entry = index.remove(key);
+    if (entry != null) {
+      releaseBlocks(entry.blocks);
+      usedBytes -= entry.length;
+    }
+  }
+
+  private void releaseBlocks(int[] blocks) {
+    for (int block : blocks) {
+      freeBlocks[freeCount++] = block;
+    }
+  }
+
+  private void write(int[] blocks, byte[] bytes) {
+    int offset = 0;
+    for (int block : blocks) {
+      int length = Math.min(blockSize, bytes.length - offset);
+      ByteBuffer slab = slabs[block / blocksPerSlab];
+      // 通过 Buffer 调用，JDK 9 以上编译时才能在 Java 8 上运行
+      ((Buffer) slab).position((block % blocksPerSlab) * blockSize);
+      slab.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  private byte[] read(Entry entry) {
+    int length = entry.length;
+    byte[] bytes = new byte[length];
+    int offset = 0;
+    for (int block : entry.blocks) {
+      int n = Math.min(blockSize, length - offset);
+      ByteBuffer slab = slabs[block / blocksPerSlab];
+      ((Buffer) slab).position((block % blocksPerSlab) * blockSize);
+      slab.get(bytes, offset, n);
+      offset += n;
+    }
+    return bytes;
+  }
+
+  private void ensureInitialized() {
+    if (slabs != null) {
+      return;
+    }
+    if (blockSize <= 0 || slabSize < blockSize || capacity < blockSize) {
+      throw new CacheException("Invalid off-heap cache '" + id + "': capacity " + capacity + ", slab size " + slabSize
+          + " and block size " + blockSize + " must be positive and the block size not larger than the others.");
+    }
+    blocksPerSlab = slabSize / blockSize;
+    long blocks = capacity / blockSize;
+    if (blocks > Integer.MAX_VALUE) {
+      throw new CacheException("Invalid off-heap cache '" + id + "': too many blocks, use a larger block size.");
+    }
+    totalBlocks = (int) blocks;
+    slabs = new ByteBuffer[(totalBlocks + blocksPerSlab - 1) / blocksPerSlab];
+    freeBlocks = new int[totalBlocks];
+    freeCount = 0;
+    nextUnusedBlock = 0;
+  }
+
+  /**
+   * 释放所有条目和堆外内存，下一次写入时按新的配置重新分配
+   */
+  private void release() {
+    index.clear();
+    usedBytes = 0;
+    slabs = null;
+    freeBlocks = null;
+  }
+
+  private byte[] serialize(Serializable value) {
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(value);
+      oos.flush();
+      return bos.toByteArray();
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  private Serializable deserialize(byte[] value) {
+    SerialFilterChecker.check();
+    Serializable result;
+    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
+        ObjectInputStream ois = new SerializedCache.CustomObjectInputStream(bis)) {
+      result = (Serializable) ois.readObject();
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+    return result;
+  }
+
+  /**
+   * 索引中的条目，记录保存值的块以及序列化后的字节数
+   */
+  private static final class Entry {
+
+    private final int[] blocks;
+    private final int length;
+
+    Entry(int[] blocks, int length) {
+      this.blocks = blocks;
+      this.length = length;
+    }
+  }
+
+}
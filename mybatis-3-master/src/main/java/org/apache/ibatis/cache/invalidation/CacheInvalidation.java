@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次提交使其他节点的二级缓存失效的内容：清空整个缓存或者使读过某些表的条目失效
+ * The invalidations of the second-level caches made by committed writes, to be applied by the other nodes: each
+ * cache is either cleared or invalidated for some tables, as with the {@code TABLE} cache invalidation scope.
+ * Invalidations of the same cache are merged, so that a message can carry a burst of writes.
+ *
+ * @since 3.5.7
+ */
+public class CacheInvalidation implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * 缓存 id 以及失效的表，为 null 时清空整个缓存
+   */
+  private final Map<String, Set<String>> tablesByCache = new LinkedHashMap<>();
+
+  /**
+   * Adds the invalidation of a cache.
+   *
+   * @param cacheId
+   *          the id of the cache
+   * @param tables
+   *          the tables that were written, or null to clear the whole cache
+   * @return this invalidation
+   */
+  public synchronized CacheInvalidation add(String cacheId, Set<String> tables) {
+    if (tables == null) {
+      tablesByCache.put(cacheId, null);
+    } else if (!tablesByCache.containsKey(cacheId)) {
+      tablesByCache.put(cacheId, new HashSet<>(tables));
+    } else {
+      Set<String> invalidated = tablesByCache.get(cacheId);
+      if (invalidated != null) {
+        invalidated.addAll(tables);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Adds the invalidations of another message.
+   *
+   * @param other
+   *          the other invalidation
+   * @return this invalidation
+   */
+  public CacheInvalidation addAll(CacheInvalidation other) {
+    for (Map.Entry<String, Set<String>> entry : other.getTablesByCache().entrySet()) {
+      add(entry.getKey(), entry.getValue());
+    }
+    return this;
+  }
+
+  /**
+   * Gets the invalidated caches.
+   *
+   * @return the tables that were written by cache id, null when the whole cache is cleared
+   */
+  public synchronized Map<String, Set<String>> getTablesByCache() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(tablesByCache));
+  }
+
+  public synchronized boolean isEmpty() {
+    return tablesByCache.isEmpty();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "CacheInvalidation" + tablesByCache;
+  }
+
+}
@@ -0,0 +1,46 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+/**
+ * 在节点之间传播二级缓存失效的 SPI
+ * SPI for the transports that propagate the invalidations of the second-level caches between the nodes of a cluster.
+ * <p>
+ * Each node publishes the invalidations of its committed writes, and applies the invalidations published by the
+ * other nodes to its own caches. An implementation must not deliver a message back to the node that published it,
+ * and needs a public no-argument constructor to be set with the {@code cacheInvalidationBus} setting.
+ *
+ * @since 3.5.7
+ */
+public interface CacheInvalidationBus {
+
+  /**
+   * Sends invalidations to the other nodes.
+   *
+   * @param invalidation
+   *          the invalidations of a commit
+   */
+  void publish(CacheInvalidation invalidation);
+
+  /**
+   * Adds a listener called with the invalidations published by the other nodes.
+   *
+   * @param listener
+   *          the listener
+   */
+  void subscribe(CacheInvalidationListener listener);
+
+}
@@ -0,0 +1,29 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+/**
+ * 接收其他节点发布的缓存失效
+ * Receives the invalidations published by the other nodes.
+ *
+ * @since 3.5.7
+ */
+@FunctionalInterface
+public interface CacheInvalidationListener {
+
+  void onInvalidation(CacheInvalidation invalidation);
+
+}
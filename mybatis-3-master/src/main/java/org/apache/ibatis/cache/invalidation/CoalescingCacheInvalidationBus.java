@@ -0,0 +1,102 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 合并一段时间内发布的缓存失效，一批写操作只发送一条消息
+ * Merges the invalidations published during a window into a single message, so that a burst of writes sends one
+ * message instead of one per commit. The other nodes may serve stale entries during the window.
+ *
+ * @since 3.5.7
+ */
+public class CoalescingCacheInvalidationBus implements CacheInvalidationBus {
+
+  private static final Log log = LogFactory.getLog(CoalescingCacheInvalidationBus.class);
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "mybatis-cache-invalidation");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final CacheInvalidationBus delegate;
+  private final long window;
+  /**
+   * 等待发送的失效，为 null 时没有安排发送
+   */
+  private CacheInvalidation pending;
+
+  /**
+   * Creates a coalescing bus.
+   *
+   * @param delegate
+   *          the transport
+   * @param window
+   *          the time in milliseconds during which invalidations are merged
+   */
+  public CoalescingCacheInvalidationBus(CacheInvalidationBus delegate, long window) {
+    this.delegate = delegate;
+    this.window = window;
+  }
+
+  public CacheInvalidationBus getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void publish(CacheInvalidation invalidation) {
+    synchronized (this) {
+      if (pending != null) {
+        pending.addAll(invalidation);
+        return;
+      }
+      pending = new CacheInvalidation().addAll(invalidation);
+    }
+    scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void subscribe(CacheInvalidationListener listener) {
+    delegate.subscribe(listener);
+  }
+
+  /**
+   * Sends the pending invalidations now.
+   */
+  public void flush() {
+    CacheInvalidation invalidation;
+    synchronized (this) {
+      invalidation = pending;
+      pending = null;
+    }
+    if (invalidation == null) {
+      return;
+    }
+    try {
+      delegate.publish(invalidation);
+    } catch (RuntimeException e) {
+      log.warn("Could not publish " + invalidation + ". Cause: " + e);
+    }
+  }
+
+}
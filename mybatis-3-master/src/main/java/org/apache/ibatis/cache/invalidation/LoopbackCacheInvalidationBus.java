@@ -0,0 +1,101 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 同一个 JVM 内的传输，用于测试以及单机多个 SqlSessionFactory 的场景
+ * A transport within the JVM, which delivers the invalidations to the other buses of the same channel in the
+ * publishing thread. It is meant for tests, and for several configurations that share a database in one application.
+ * The channels reference their buses weakly, so that a bus, and the configuration it delivers to, can be garbage
+ * collected once the configuration is discarded, even if {@link #close()} is not called.
+ *
+ * @since 3.5.7
+ */
+public class LoopbackCacheInvalidationBus implements CacheInvalidationBus {
+
+  private static final String DEFAULT_CHANNEL = "default";
+  /**
+   * 弱引用频道中的总线，丢弃的 Configuration 不会因为总线而无法回收
+   */
+  private static final Map<String, Set<LoopbackCacheInvalidationBus>> channels = new ConcurrentHashMap<>();
+
+  private final String channel;
+  private final List<CacheInvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+  public LoopbackCacheInvalidationBus() {
+    this(DEFAULT_CHANNEL);
+  }
+
+  /**
+   * Creates a bus that exchanges invalidations with the other buses of a channel.
+   *
+   * @param channel
+   *          the name of the channel
+   */
+  public LoopbackCacheInvalidationBus(String channel) {
+    this.channel = channel;
+    channels.computeIfAbsent(channel, k -> Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>())))
+        .add(this);
+  }
+
+  @Override
+  public void publish(CacheInvalidation invalidation) {
+    Set<LoopbackCacheInvalidationBus> buses = channels.get(channel);
+    if (buses == null) {
+      return;
+    }
+    List<LoopbackCacheInvalidationBus> targets;
+    synchronized (buses) {
+      targets = new ArrayList<>(buses);
+    }
+    for (LoopbackCacheInvalidationBus bus : targets) {
+      if (bus != this) {
+        bus.deliver(invalidation);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(CacheInvalidationListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Leaves the channel, so that this bus no longer receives invalidations.
+   */
+  public void close() {
+    Set<LoopbackCacheInvalidationBus> buses = channels.get(channel);
+    if (buses != null) {
+      buses.remove(this);
+    }
+  }
+
+  private void deliver(CacheInvalidation invalidation) {
+    for (CacheInvalidationListener listener : listeners) {
+      listener.onInvalidation(invalidation);
+    }
+  }
+
+}
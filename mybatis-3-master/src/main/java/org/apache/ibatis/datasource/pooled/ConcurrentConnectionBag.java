@@ -0,0 +1,355 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 并发模式下的连接容器，获取、归还连接都不需要竞争 PoolState 的锁
+ * A lock-free container of physical connections used by {@link PooledDataSource} in concurrent mode.
+ * <p>
+ * A borrowing thread first looks at the connections it used last (kept in a thread local), then scans the shared
+ * list, claiming an entry with a CAS on its state. Threads that find nothing wait on a handoff queue that returning
+ * threads feed directly.
+ */
+class ConcurrentConnectionBag {
+
+  static final int STATE_REMOVED = -1;
+  static final int STATE_IDLE = 0;
+  static final int STATE_IN_USE = 1;
+
+  /**
+   * 每个线程最多记住的最近使用过的连接数量
+   */
+  private static final int THREAD_LOCAL_LIST_SIZE = 16;
+
+  /**
+   * 所有的物理连接，读多写少
+   */
+  private final CopyOnWriteArrayList<Entry> sharedList = new CopyOnWriteArrayList<>();
+  /**
+   * 当前线程最近归还的连接，弱引用避免线程持有已关闭的连接
+   */
+  private final ThreadLocal<List<WeakReference<Entry>>> threadList = ThreadLocal.withInitial(() -> new ArrayList<>(THREAD_LOCAL_LIST_SIZE));
+  /**
+   * 归还连接的线程直接把连接交给等待中的线程
+   */
+  private final SynchronousQueue<Entry> handoffQueue = new SynchronousQueue<>(true);
+  /**
+   * 正在等待连接的线程数量
+   */
+  private final AtomicInteger waiters = new AtomicInteger();
+  /**
+   * 物理连接总数，包括已预留但还在创建中的连接
+   */
+  private final AtomicInteger totalCount = new AtomicInteger();
+  /**
+   * 空闲连接数，随条目状态的 CAS 一起维护，避免每次归还连接都遍历 sharedList
+   */
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  /**
+   * Tries to claim an idle connection without blocking.
+   *
+   * @return the claimed entry in {@link #STATE_IN_USE}, or null if every connection is in use
+   */
+  Entry borrow() {
+    List<WeakReference<Entry>> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      Entry entry = list.remove(i).get();
+      if (entry != null && entry.compareAndSetState(STATE_IDLE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    for (Entry entry : sharedList) {
+      if (entry.compareAndSetState(STATE_IDLE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Waits for a connection to be handed off by a returning thread.
+   *
+   * @param timeoutMillis
+   *          the maximum time to wait
+   * @return the claimed entry in {@link #STATE_IN_USE}, or null if the time elapsed
+   * @throws InterruptedException
+   *           if the waiting thread is interrupted
+   */
+  Entry poll(long timeoutMillis) throws InterruptedException {
+    waiters.incrementAndGet();
+    try {
+      long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      long deadline = System.nanoTime() + timeout;
+      do {
+        // a connection may have been returned before this thread was counted as a waiter
+        Entry entry = borrow();
+        if (entry != null) {
+          return entry;
+        }
+        entry = handoffQueue.poll(timeout, TimeUnit.NANOSECONDS);
+        if (entry != null && entry.compareAndSetState(STATE_IDLE, STATE_IN_USE)) {
+          return entry;
+        }
+        timeout = deadline - System.nanoTime();
+      } while (timeout > 0);
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns a connection to the bag, handing it to a waiting thread if there is one.
+   *
+   * @param entry
+   *          the entry to return
+   */
+  void requite(Entry entry) {
+    if (!entry.compareAndSetState(STATE_IN_USE, STATE_IDLE)) {
+      // removed while in use, e.g. by forceCloseAll
+      return;
+    }
+    for (int i = 0; waiters.get() > 0; i++) {
+      if (entry.getState() != STATE_IDLE || handoffQueue.offer(entry)) {
+        return;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+    List<WeakReference<Entry>> list = threadList.get();
+    if (list.size() < THREAD_LOCAL_LIST_SIZE) {
+      list.add(new WeakReference<>(entry));
+    }
+  }
+
+  /**
+   * Reserves a slot for a new physical connection.
+   *
+   * @param maximum
+   *          the maximum number of physical connections
+   * @return true if a slot was reserved, the caller must then either {@link #add(Connection, PreparedStatementCache, ConnectionState)} or {@link #unreserve()}
+   */
+  boolean reserve(int maximum) {
+    for (;;) {
+      int count = totalCount.get();
+      if (count >= maximum) {
+        return false;
+      }
+      if (totalCount.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases a slot reserved with {@link #reserve(int)} that will not be used.
+   */
+  void unreserve() {
+    totalCount.decrementAndGet();
+  }
+
+  /**
+   * Adds a new physical connection into a previously reserved slot.
+   *
+   * @param realConnection
+   *          the physical connection
+   * @param statementCache
+   *          the statement cache of the physical connection, may be null
+   * @param connectionState
+   *          the tracked state of the physical connection, may be null
+   * @return the new entry, already in {@link #STATE_IN_USE}
+   */
+  Entry add(Connection realConnection, PreparedStatementCache statementCache, ConnectionState connectionState) {
+    Entry entry = new Entry(realConnection, statementCache, connectionState, idleCount);
+    sharedList.add(entry);
+    return entry;
+  }
+
+  /**
+   * Adds a new idle physical connection into a previously reserved slot, handing it to a waiting thread if there is
+   * one.
+   *
+   * @param realConnection
+   *          the physical connection
+   * @param statementCache
+   *          the statement cache of the physical connection, may be null
+   * @param connectionState
+   *          the tracked state of the physical connection, may be null
+   */
+  void addIdle(Connection realConnection, PreparedStatementCache statementCache, ConnectionState connectionState) {
+    requite(add(realConnection, statementCache, connectionState));
+  }
+
+  /**
+   * Removes an entry from the bag. Closing the physical connection is up to the caller.
+   *
+   * @param entry
+   *          the entry to remove
+   * @return true if this call removed the entry
+   */
+  boolean remove(Entry entry) {
+    if (entry.compareAndSetState(STATE_IN_USE, STATE_REMOVED) || entry.compareAndSetState(STATE_IDLE, STATE_REMOVED)) {
+      sharedList.remove(entry);
+      totalCount.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Finds the in-use connection that has been checked out the longest.
+   *
+   * @return the entry, or null if no connection is checked out
+   */
+  Entry getOldestInUse() {
+    Entry oldest = null;
+    long oldestCheckout = Long.MAX_VALUE;
+    for (Entry entry : sharedList) {
+      PooledConnection owner = entry.getOwner();
+      if (entry.getState() == STATE_IN_USE && owner != null && owner.getCheckoutTimestamp() < oldestCheckout) {
+        oldest = entry;
+        oldestCheckout = owner.getCheckoutTimestamp();
+      }
+    }
+    return oldest;
+  }
+
+  List<Entry> values() {
+    return new ArrayList<>(sharedList);
+  }
+
+  int getIdleCount() {
+    return idleCount.get();
+  }
+
+  int getActiveCount() {
+    int count = 0;
+    for (Entry entry : sharedList) {
+      if (entry.getState() == STATE_IN_USE) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  boolean hasWaiters() {
+    return waiters.get() > 0;
+  }
+
+  /**
+   * 一个物理连接在 bag 中的条目，每次被取出时都会包装成一个新的 PooledConnection
+   */
+  static final class Entry {
+
+    private final Connection realConnection;
+    private final PreparedStatementCache statementCache;
+    private final ConnectionState connectionState;
+    private final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+    private final AtomicInteger idleCount;
+    /**
+     * 当前持有该连接的 PooledConnection，归还或者被超时回收时置为 null
+     */
+    private final AtomicReference<PooledConnection> owner = new AtomicReference<>();
+    private final long createdTimestamp;
+    private volatile long lastUsedTimestamp;
+    private volatile long lastValidatedTimestamp;
+
+    Entry(Connection realConnection, PreparedStatementCache statementCache, ConnectionState connectionState, AtomicInteger idleCount) {
+      this.realConnection = realConnection;
+      this.statementCache = statementCache;
+      this.connectionState = connectionState;
+      this.idleCount = idleCount;
+      this.createdTimestamp = System.currentTimeMillis();
+      this.lastUsedTimestamp = createdTimestamp;
+      this.lastValidatedTimestamp = createdTimestamp;
+    }
+
+    Connection getRealConnection() {
+      return realConnection;
+    }
+
+    PreparedStatementCache getStatementCache() {
+      return statementCache;
+    }
+
+    ConnectionState getConnectionState() {
+      return connectionState;
+    }
+
+    int getState() {
+      return state.get();
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+      if (!state.compareAndSet(expect, update)) {
+        return false;
+      }
+      if (expect == STATE_IDLE) {
+        idleCount.decrementAndGet();
+      } else if (update == STATE_IDLE) {
+        idleCount.incrementAndGet();
+      }
+      return true;
+    }
+
+    PooledConnection getOwner() {
+      return owner.get();
+    }
+
+    void setOwner(PooledConnection conn) {
+      owner.set(conn);
+    }
+
+    boolean releaseOwner(PooledConnection conn) {
+      return owner.compareAndSet(conn, null);
+    }
+
+    long getCreatedTimestamp() {
+      return createdTimestamp;
+    }
+
+    long getLastUsedTimestamp() {
+      return lastUsedTimestamp;
+    }
+
+    void setLastUsedTimestamp(long lastUsedTimestamp) {
+      this.lastUsedTimestamp = lastUsedTimestamp;
+    }
+
+    long getLastValidatedTimestamp() {
+      return lastValidatedTimestamp;
+    }
+
+    void setLastValidatedTimestamp(long lastValidatedTimestamp) {
+      this.lastValidatedTimestamp = lastValidatedTimestamp;
+    }
+  }
+
+}
@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * 记录真正的连接的状态（autoCommit、事务隔离级别、只读、catalog、schema、网络超时），
+ * 状态没有变化时不再调用驱动，省去网络往返
+ * Tracks the session state of a physical connection, so that getters are answered locally and setters that would
+ * not change anything are skipped. On many drivers each of these calls is a round-trip to the database.
+ * <p>
+ * State changed behind the pool's back, e.g. with a <code>SET</code> statement or through an unwrapped connection,
+ * is not seen.
+ */
+class ConnectionState {
+
+  private static final int AUTO_COMMIT = 0;
+  private static final int TRANSACTION_ISOLATION = 1;
+  private static final int READ_ONLY = 2;
+  private static final int CATALOG = 3;
+  private static final int SCHEMA = 4;
+  private static final int NETWORK_TIMEOUT = 5;
+
+  private static final Map<String, Integer> GETTERS = new HashMap<>();
+  private static final Map<String, Integer> SETTERS = new HashMap<>();
+
+  static {
+    GETTERS.put("getAutoCommit", AUTO_COMMIT);
+    GETTERS.put("getTransactionIsolation", TRANSACTION_ISOLATION);
+    GETTERS.put("isReadOnly", READ_ONLY);
+    GETTERS.put("getCatalog", CATALOG);
+    GETTERS.put("getSchema", SCHEMA);
+    GETTERS.put("getNetworkTimeout", NETWORK_TIMEOUT);
+    SETTERS.put("setAutoCommit", AUTO_COMMIT);
+    SETTERS.put("setTransactionIsolation", TRANSACTION_ISOLATION);
+    SETTERS.put("setReadOnly", READ_ONLY);
+    SETTERS.put("setCatalog", CATALOG);
+    SETTERS.put("setSchema", SCHEMA);
+    SETTERS.put("setNetworkTimeout", NETWORK_TIMEOUT);
+  }
+
+  private final PoolState state;
+  /**
+   * 已知的状态值，null 表示未知，需要询问驱动
+   */
+  private final Object[] values = new Object[6];
+
+  ConnectionState(PoolState state) {
+    this.state = state;
+  }
+
+  /**
+   * Invokes a method of the proxied connection, answering it from the tracked state when possible.
+   *
+   * @param realConnection
+   *          the physical connection
+   * @param method
+   *          the invoked method
+   * @param args
+   *          its arguments
+   * @return the result of the method
+   * @throws Throwable
+   *           if the driver throws
+   */
+  synchronized Object invoke(Connection realConnection, Method method, Object[] args) throws Throwable {
+    String methodName = method.getName();
+    int argCount = args == null ? 0 : args.length;
+    Integer getter = argCount == 0 ? GETTERS.get(methodName) : null;
+    if (getter != null) {
+      Object value = values[getter];
+      if (value != null) {
+        state.recordAvoidedStateRoundTrip();
+        return value;
+      }
+      value = doInvoke(realConnection, method, args);
+      values[getter] = value;
+      return value;
+    }
+    Integer setter = argCount > 0 ? SETTERS.get(methodName) : null;
+    if (setter != null) {
+      Object value = args[argCount - 1];
+      if (value != null && value.equals(values[setter])) {
+        state.recordAvoidedStateRoundTrip();
+        return null;
+      }
+      values[setter] = null;
+      doInvoke(realConnection, method, args);
+      values[setter] = value;
+      return null;
+    }
+    return doInvoke(realConnection, method, args);
+  }
+
+  /**
+   * Returns whether the physical connection is in auto-commit mode, asking the driver only if it is not known.
+   *
+   * @param realConnection
+   *          the physical connection
+   * @return true if auto-commit is enabled
+   * @throws SQLException
+   *           if the driver throws
+   */
+  synchronized boolean getAutoCommit(Connection realConnection) throws SQLException {
+    Object value = values[AUTO_COMMIT];
+    if (value != null) {
+      state.recordAvoidedStateRoundTrip();
+      return (Boolean) value;
+    }
+    boolean autoCommit = realConnection.getAutoCommit();
+    values[AUTO_COMMIT] = autoCommit;
+    return autoCommit;
+  }
+
+  /**
+   * Rolls back the physical connection unless it is in auto-commit mode. Statements run outside of the connection
+   * proxy, so whether a transaction is open is not known and the rollback is never skipped.
+   *
+   * @param realConnection
+   *          the physical connection
+   * @throws SQLException
+   *           if the driver throws
+   */
+  synchronized void rollbackIfNeeded(Connection realConnection) throws SQLException {
+    if (!getAutoCommit(realConnection)) {
+      realConnection.rollback();
+    }
+  }
+
+  private Object doInvoke(Connection realConnection, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(realConnection, args);
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+}
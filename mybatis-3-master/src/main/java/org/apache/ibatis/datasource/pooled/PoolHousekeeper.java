@@ -0,0 +1,86 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 连接池的后台维护任务，所有连接池共用一个守护线程
+ * Periodically runs {@link PooledDataSource#housekeep()} off the request path. All pools share one daemon thread, and
+ * a pool is only weakly referenced so that an abandoned pool can still be collected.
+ */
+class PoolHousekeeper implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolHousekeeper.class);
+
+  private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "mybatis-pool-housekeeper");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final WeakReference<PooledDataSource> dataSource;
+  private volatile ScheduledFuture<?> future;
+
+  private PoolHousekeeper(PooledDataSource dataSource) {
+    this.dataSource = new WeakReference<>(dataSource);
+  }
+
+  /**
+   * Schedules housekeeping of a pool, running it once right away.
+   *
+   * @param dataSource
+   *          the pool
+   * @param periodMillis
+   *          the delay between two runs
+   * @return the housekeeper, to be stopped when no longer needed
+   */
+  static PoolHousekeeper start(PooledDataSource dataSource, long periodMillis) {
+    PoolHousekeeper housekeeper = new PoolHousekeeper(dataSource);
+    housekeeper.future = EXECUTOR.scheduleWithFixedDelay(housekeeper, 0, periodMillis, TimeUnit.MILLISECONDS);
+    return housekeeper;
+  }
+
+  void stop() {
+    ScheduledFuture<?> f = future;
+    if (f != null) {
+      f.cancel(false);
+    }
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource ds = dataSource.get();
+    if (ds == null) {
+      stop();
+      return;
+    }
+    try {
+      ds.housekeep();
+    } catch (Exception e) {
+      // keep the schedule alive, the next run will try again
+      log.warn("Pool housekeeping failed: " + e.getMessage());
+    }
+  }
+
+}
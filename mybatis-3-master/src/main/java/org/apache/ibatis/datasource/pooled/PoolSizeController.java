@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 根据获取连接的等待时间以及连接的使用时长，动态调整连接池大小
+ * Adjusts the effective pool limits from what the pool observed since the last adjustment.
+ * <p>
+ * Borrow waits are recorded in a log2 histogram. When their 95th percentile is above the target, the maximum number
+ * of active connections grows by a quarter. Otherwise the number of connections actually needed is estimated with
+ * Little's law, i.e. the total checkout time divided by the length of the window, or from the connections still
+ * checked out if there are more, and the limits shrink halfway towards it.
+ */
+class PoolSizeController {
+
+  private static final int BUCKETS = 32;
+  /**
+   * 估算出的并发连接数之上预留的余量
+   */
+  private static final double HEADROOM = 1.5;
+
+  /**
+   * 第 i 个桶记录等待时间在 [2^(i-1), 2^i) 毫秒之间的次数，第 0 个桶记录没有等待的次数
+   */
+  private final AtomicLongArray waitHistogram = new AtomicLongArray(BUCKETS);
+  private final LongAdder checkoutTime = new LongAdder();
+
+  private volatile int maximumActiveConnections;
+  private volatile int maximumIdleConnections;
+  private volatile long lastWaitPercentile;
+  private long windowStart;
+
+  PoolSizeController(int maximumActiveConnections, int maximumIdleConnections) {
+    reset(maximumActiveConnections, maximumIdleConnections);
+  }
+
+  synchronized void reset(int maximumActiveConnections, int maximumIdleConnections) {
+    this.maximumActiveConnections = maximumActiveConnections;
+    this.maximumIdleConnections = maximumIdleConnections;
+    this.lastWaitPercentile = 0;
+    this.windowStart = System.currentTimeMillis();
+    for (int i = 0; i < BUCKETS; i++) {
+      waitHistogram.set(i, 0);
+    }
+    checkoutTime.reset();
+  }
+
+  void recordBorrow(long waitMillis) {
+    waitHistogram.incrementAndGet(bucket(waitMillis));
+  }
+
+  void recordCheckout(long checkoutMillis) {
+    checkoutTime.add(checkoutMillis);
+  }
+
+  int getMaximumActiveConnections() {
+    return maximumActiveConnections;
+  }
+
+  int getMaximumIdleConnections() {
+    return maximumIdleConnections;
+  }
+
+  long getLastWaitPercentile() {
+    return lastWaitPercentile;
+  }
+
+  /**
+   * Closes the current window and adjusts the limits.
+   *
+   * @param lowerBound
+   *          the smallest maximum number of active connections
+   * @param upperBound
+   *          the largest maximum number of active connections
+   * @param configuredMaximumIdle
+   *          the configured maximum number of idle connections
+   * @param minimumIdle
+   *          the configured minimum number of idle connections
+   * @param targetWaitTime
+   *          the 95th percentile of borrow waits to stay under, in milliseconds
+   * @param activeConnections
+   *          the number of connections currently checked out
+   * @return a positive number if the pool grew, a negative one if it shrank, 0 if it did not change
+   */
+  synchronized int adjust(int lowerBound, int upperBound, int configuredMaximumIdle, int minimumIdle, long targetWaitTime,
+      int activeConnections) {
+    long[] counts = new long[BUCKETS];
+    long borrows = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = waitHistogram.getAndSet(i, 0);
+      borrows += counts[i];
+    }
+    long now = System.currentTimeMillis();
+    long window = Math.max(1, now - windowStart);
+    windowStart = now;
+    long waitPercentile = percentile(counts, borrows, 0.95);
+    lastWaitPercentile = waitPercentile;
+    // Little's law: 平均同时被使用的连接数 = 所有连接的使用总时长 / 时间窗口
+    // 使用时长在归还时才记录，还没有归还的连接按当前的活跃连接数计算
+    double concurrency = Math.max((double) checkoutTime.sumThenReset() / window, activeConnections);
+    int needed = (int) Math.ceil(concurrency * HEADROOM) + 1;
+
+    int current = maximumActiveConnections;
+    int next = current;
+    if (borrows > 0 && waitPercentile > targetWaitTime) {
+      next = Math.min(upperBound, current + Math.max(1, current / 4));
+    } else if (needed < current) {
+      next = Math.max(lowerBound, current - Math.max(1, (current - needed) / 2));
+    }
+    next = Math.max(Math.min(next, Math.max(upperBound, lowerBound)), lowerBound);
+    maximumActiveConnections = next;
+    maximumIdleConnections = Math.min(Math.min(configuredMaximumIdle, next), Math.max(minimumIdle, needed));
+    return Integer.compare(next, current);
+  }
+
+  private static int bucket(long waitMillis) {
+    if (waitMillis <= 0) {
+      return 0;
+    }
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(waitMillis));
+  }
+
+  private static long percentile(long[] counts, long total, double percentile) {
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        // 返回桶的上界
+        return i == 0 ? 0 : (1L << i) - 1;
+      }
+    }
+    return (1L << (BUCKETS - 1)) - 1;
+  }
+
+}
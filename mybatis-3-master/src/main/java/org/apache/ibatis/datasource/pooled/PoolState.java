@@ -17,6 +17,7 @@ package org.apache.ibatis.datasource.pooled;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 管理连接池的状态的
@@ -35,88 +36,286 @@ public class PoolState {
    * 活跃线程的连接集合
    */
   protected final List<PooledConnection> activeConnections = new ArrayList<>();
+  /**
+   * 后台维护线程从空闲集合中取出、正在 ping 的连接数，计入连接总数，避免校验期间创建超出上限的连接
+   */
+  int validatingConnectionCount;
 
   /**
    * 定义了一些统计的字段信息
+   * 这些字段只在持有 state 锁时更新，并发模式下不会更新，统计值请通过 getter 获取
    */
   /**
    * 从线程池中获取连接的数量
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getRequestCount()}
    */
+  @Deprecated
   protected long requestCount = 0;
   /**
    * 获取连接的累积时间，阻塞时长
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getAverageRequestTime()}
    */
+  @Deprecated
   protected long accumulatedRequestTime = 0;
   /**
    * CheckoutTime表示应用从连接池中取出连接数，到归还连接着端时长
    * 记录了所有累积的 CheckoutTime 时长
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getAverageCheckoutTime()}
    */
+  @Deprecated
   protected long accumulatedCheckoutTime = 0;
   /**
    * 当连接长时间未归还给连接池时，会被如认为该连接超时
    * 记录了超时的连接数量
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getClaimedOverdueConnectionCount()}
    */
+  @Deprecated
   protected long claimedOverdueConnectionCount = 0;
   /**
    * 累积超时时间
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getAverageOverdueCheckoutTime()}
    */
+  @Deprecated
   protected long accumulatedCheckoutTimeOfOverdueConnections = 0;
   /**
    * 累积等待时间
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getAverageWaitTime()}
    */
+  @Deprecated
   protected long accumulatedWaitTime = 0;
   /**
    * 等待次数
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getHadToWaitCount()}
    */
+  @Deprecated
   protected long hadToWaitCount = 0;
   /**
    * 无效的连接数
+   *
+   * @deprecated not updated in concurrent mode, use {@link #getBadConnectionCount()}
    */
+  @Deprecated
   protected long badConnectionCount = 0;
 
+  /**
+   * 不持有 state 锁时（并发模式、后台维护线程）使用 LongAdder 累加，getter 返回两者之和
+   */
+  private final LongAdder concurrentRequestCount = new LongAdder();
+  private final LongAdder concurrentAccumulatedRequestTime = new LongAdder();
+  private final LongAdder concurrentAccumulatedCheckoutTime = new LongAdder();
+  private final LongAdder concurrentClaimedOverdueConnectionCount = new LongAdder();
+  private final LongAdder concurrentAccumulatedCheckoutTimeOfOverdueConnections = new LongAdder();
+  private final LongAdder concurrentAccumulatedWaitTime = new LongAdder();
+  private final LongAdder concurrentHadToWaitCount = new LongAdder();
+  private final LongAdder concurrentBadConnectionCount = new LongAdder();
+  /**
+   * 因为超过最长存活时间或者空闲太久而被关闭的连接数
+   */
+  private final LongAdder evictedConnectionCount = new LongAdder();
+  /**
+   * 所有连接的 PreparedStatement 缓存命中、未命中以及被淘汰的次数
+   */
+  private final LongAdder statementCacheHitCount = new LongAdder();
+  private final LongAdder statementCacheMissCount = new LongAdder();
+  private final LongAdder statementCacheEvictionCount = new LongAdder();
+  /**
+   * 因为连接状态没有变化而省去的驱动调用次数（autoCommit、隔离级别等）
+   */
+  private final LongAdder avoidedStateRoundTripCount = new LongAdder();
+  /**
+   * 动态调整连接池大小时扩大、缩小的次数
+   */
+  private final LongAdder adaptiveGrowCount = new LongAdder();
+  private final LongAdder adaptiveShrinkCount = new LongAdder();
+
   public PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
 
   public synchronized long getRequestCount() {
-    return requestCount;
+    return requestCount + concurrentRequestCount.sum();
   }
 
   public synchronized long getAverageRequestTime() {
-    return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
+    long requests = getRequestCount();
+    return requests == 0 ? 0 : (accumulatedRequestTime + concurrentAccumulatedRequestTime.sum()) / requests;
   }
 
   public synchronized long getAverageWaitTime() {
-    return hadToWaitCount == 0 ? 0 : accumulatedWaitTime / hadToWaitCount;
+    long waits = getHadToWaitCount();
+    return waits == 0 ? 0 : (accumulatedWaitTime + concurrentAccumulatedWaitTime.sum()) / waits;
 
   }
 
   public synchronized long getHadToWaitCount() {
-    return hadToWaitCount;
+    return hadToWaitCount + concurrentHadToWaitCount.sum();
   }
 
   public synchronized long getBadConnectionCount() {
-    return badConnectionCount;
+    return badConnectionCount + concurrentBadConnectionCount.sum();
+  }
+
+  public long getEvictedConnectionCount() {
+    return evictedConnectionCount.sum();
+  }
+
+  public long getStatementCacheHitCount() {
+    return statementCacheHitCount.sum();
+  }
+
+  public long getStatementCacheMissCount() {
+    return statementCacheMissCount.sum();
+  }
+
+  public long getStatementCacheEvictionCount() {
+    return statementCacheEvictionCount.sum();
+  }
+
+  public long getAvoidedStateRoundTripCount() {
+    return avoidedStateRoundTripCount.sum();
+  }
+
+  public long getAdaptiveGrowCount() {
+    return adaptiveGrowCount.sum();
+  }
+
+  public long getAdaptiveShrinkCount() {
+    return adaptiveShrinkCount.sum();
+  }
+
+  /**
+   * Gets the maximum number of active connections currently enforced, which adaptive sizing may have moved away from
+   * the configured one.
+   *
+   * @return the current maximum number of active connections
+   * @since 3.5.7
+   */
+  public int getCurrentMaximumActiveConnections() {
+    PoolSizeController controller = dataSource.sizeController;
+    return controller == null ? dataSource.poolMaximumActiveConnections : controller.getMaximumActiveConnections();
+  }
+
+  /**
+   * Gets the maximum number of idle connections currently enforced, which adaptive sizing may have moved away from
+   * the configured one.
+   *
+   * @return the current maximum number of idle connections
+   * @since 3.5.7
+   */
+  public int getCurrentMaximumIdleConnections() {
+    PoolSizeController controller = dataSource.sizeController;
+    return controller == null ? dataSource.poolMaximumIdleConnections : controller.getMaximumIdleConnections();
+  }
+
+  /**
+   * Gets the 95th percentile of the time spent waiting for a connection, as seen by the last adaptive sizing run.
+   *
+   * @return the wait time in milliseconds, rounded up to a power of two minus one, or 0 without adaptive sizing
+   * @since 3.5.7
+   */
+  public long getWaitTimePercentile95() {
+    PoolSizeController controller = dataSource.sizeController;
+    return controller == null ? 0 : controller.getLastWaitPercentile();
   }
 
   public synchronized long getClaimedOverdueConnectionCount() {
-    return claimedOverdueConnectionCount;
+    return claimedOverdueConnectionCount + concurrentClaimedOverdueConnectionCount.sum();
   }
 
   public synchronized long getAverageOverdueCheckoutTime() {
-    return claimedOverdueConnectionCount == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
+    long claimed = getClaimedOverdueConnectionCount();
+    return claimed == 0 ? 0
+        : (accumulatedCheckoutTimeOfOverdueConnections + concurrentAccumulatedCheckoutTimeOfOverdueConnections.sum()) / claimed;
   }
 
   public synchronized long getAverageCheckoutTime() {
-    return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
+    long requests = getRequestCount();
+    return requests == 0 ? 0 : (accumulatedCheckoutTime + concurrentAccumulatedCheckoutTime.sum()) / requests;
+  }
+
+  public int getIdleConnectionCount() {
+    ConcurrentConnectionBag bag = dataSource.bag;
+    if (bag != null) {
+      return bag.getIdleCount();
+    }
+    synchronized (this) {
+      return idleConnections.size();
+    }
+  }
+
+  public int getActiveConnectionCount() {
+    ConcurrentConnectionBag bag = dataSource.bag;
+    if (bag != null) {
+      return bag.getActiveCount();
+    }
+    synchronized (this) {
+      return activeConnections.size();
+    }
+  }
+
+  /**
+   * 以下方法供不持有 state 锁的调用方使用
+   */
+  void recordRequest(long requestTime) {
+    concurrentRequestCount.increment();
+    concurrentAccumulatedRequestTime.add(requestTime);
+  }
+
+  void recordCheckoutTime(long checkoutTime) {
+    concurrentAccumulatedCheckoutTime.add(checkoutTime);
+  }
+
+  void recordOverdueClaim(long checkoutTime) {
+    concurrentClaimedOverdueConnectionCount.increment();
+    concurrentAccumulatedCheckoutTimeOfOverdueConnections.add(checkoutTime);
+    concurrentAccumulatedCheckoutTime.add(checkoutTime);
+  }
+
+  void recordWait() {
+    concurrentHadToWaitCount.increment();
+  }
+
+  void recordWaitTime(long waitTime) {
+    concurrentAccumulatedWaitTime.add(waitTime);
+  }
+
+  void recordBadConnection() {
+    concurrentBadConnectionCount.increment();
+  }
+
+  void recordEviction() {
+    evictedConnectionCount.increment();
+  }
+
+  void recordStatementCacheHit() {
+    statementCacheHitCount.increment();
+  }
+
+  void recordStatementCacheMiss() {
+    statementCacheMissCount.increment();
+  }
+
+  void recordStatementCacheEviction() {
+    statementCacheEvictionCount.increment();
+  }
+
+  void recordAvoidedStateRoundTrip() {
+    avoidedStateRoundTripCount.increment();
   }
 
-  public synchronized int getIdleConnectionCount() {
-    return idleConnections.size();
+  void recordAdaptiveGrow() {
+    adaptiveGrowCount.increment();
   }
 
-  public synchronized int getActiveConnectionCount() {
-    return activeConnections.size();
+  void recordAdaptiveShrink() {
+    adaptiveShrinkCount.increment();
   }
 
   @Override
@@ -134,6 +333,14 @@ public class PoolState {
     builder.append("\n poolPingEnabled                ").append(dataSource.poolPingEnabled);
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ").append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolConcurrentMode             ").append(dataSource.isPoolConcurrentMode());
+    builder.append("\n poolMinimumIdle                ").append(dataSource.poolMinimumIdle);
+    builder.append("\n poolMaximumIdleTime            ").append(dataSource.poolMaximumIdleTime);
+    builder.append("\n poolMaximumLifetime            ").append(dataSource.poolMaximumLifetime);
+    builder.append("\n poolPreparedStatementCacheSize ").append(dataSource.poolPreparedStatementCacheSize);
+    builder.append("\n poolTrackConnectionState       ").append(dataSource.poolTrackConnectionState);
+    builder.append("\n poolPartitionByCredentials     ").append(dataSource.poolPartitionByCredentials);
+    builder.append("\n poolAdaptiveSizing             ").append(dataSource.poolAdaptiveSizing);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
@@ -145,6 +352,16 @@ public class PoolState {
     builder.append("\n hadToWait                      ").append(getHadToWaitCount());
     builder.append("\n averageWaitTime                ").append(getAverageWaitTime());
     builder.append("\n badConnectionCount             ").append(getBadConnectionCount());
+    builder.append("\n evictedConnectionCount         ").append(getEvictedConnectionCount());
+    builder.append("\n statementCacheHits             ").append(getStatementCacheHitCount());
+    builder.append("\n statementCacheMisses           ").append(getStatementCacheMissCount());
+    builder.append("\n statementCacheEvictions        ").append(getStatementCacheEvictionCount());
+    builder.append("\n avoidedStateRoundTrips         ").append(getAvoidedStateRoundTripCount());
+    builder.append("\n currentMaxActiveConnections    ").append(getCurrentMaximumActiveConnections());
+    builder.append("\n currentMaxIdleConnections      ").append(getCurrentMaximumIdleConnections());
+    builder.append("\n waitTimePercentile95           ").append(getWaitTimePercentile95());
+    builder.append("\n adaptiveGrows                  ").append(getAdaptiveGrowCount());
+    builder.append("\n adaptiveShrinks                ").append(getAdaptiveShrinkCount());
     builder.append("\n===============================================================");
     return builder.toString();
   }
@@ -65,6 +65,10 @@ class PooledConnection implements InvocationHandler {
    * 该连接最后一次被使用时间戳
    */
   private long lastUsedTimestamp;
+  /**
+   * 该连接最后一次 ping 成功的时间戳，后台维护线程校验过的连接在取出时可以跳过 ping
+   */
+  private long lastValidatedTimestamp;
   /**
    * 用URL、用户名和密码计算出来的hash 值，用来标识该连接所在的连接池
    * PooledDataSource#expectedConnectionTypeCode
@@ -74,7 +78,19 @@ class PooledConnection implements InvocationHandler {
    * 检测当前 PooledConnection 是否有效
    * 主要是为了防止程序通过 close() 方法将连接归还给连接池之后，依然通过连接操作数据库
    */
-  private boolean valid;
+  private volatile boolean valid;
+  /**
+   * 并发模式下该连接所属的 bag 条目，非并发模式下为 null
+   */
+  private ConcurrentConnectionBag.Entry bagEntry;
+  /**
+   * 真正的连接上的 PreparedStatement 缓存，随物理连接在各个 PooledConnection 之间传递，未启用时为 null
+   */
+  private PreparedStatementCache statementCache;
+  /**
+   * 真正的连接的状态，同样随物理连接传递，未启用状态跟踪时为 null
+   */
+  private ConnectionState connectionState;
 
   /**
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed in.
@@ -90,6 +106,7 @@ class PooledConnection implements InvocationHandler {
     this.dataSource = dataSource;
     this.createdTimestamp = System.currentTimeMillis();
     this.lastUsedTimestamp = System.currentTimeMillis();
+    this.lastValidatedTimestamp = createdTimestamp;
     this.valid = true;
     this.proxyConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), IFACES, this);
   }
@@ -203,6 +220,34 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - lastUsedTimestamp;
   }
 
+  /**
+   * Getter for the time that the connection was last validated with the ping query.
+   *
+   * @return the timestamp
+   */
+  public long getLastValidatedTimestamp() {
+    return lastValidatedTimestamp;
+  }
+
+  /**
+   * Setter for the time that the connection was last validated with the ping query.
+   *
+   * @param lastValidatedTimestamp
+   *          the timestamp
+   */
+  public void setLastValidatedTimestamp(long lastValidatedTimestamp) {
+    this.lastValidatedTimestamp = lastValidatedTimestamp;
+  }
+
+  /**
+   * Getter for the time since this connection was last validated.
+   *
+   * @return the time since the last validation
+   */
+  public long getTimeElapsedSinceLastValidation() {
+    return System.currentTimeMillis() - lastValidatedTimestamp;
+  }
+
   /**
    * Getter for the age of the connection.
    *
@@ -240,6 +285,63 @@ class PooledConnection implements InvocationHandler {
     return System.currentTimeMillis() - checkoutTimestamp;
   }
 
+  /**
+   * Getter for the bag entry that owns the physical connection when the pool runs in concurrent mode.
+   *
+   * @return the bag entry, or null when the pool is not in concurrent mode
+   */
+  ConcurrentConnectionBag.Entry getBagEntry() {
+    return bagEntry;
+  }
+
+  /**
+   * Setter for the bag entry that owns the physical connection.
+   *
+   * @param bagEntry
+   *          the bag entry
+   */
+  void setBagEntry(ConcurrentConnectionBag.Entry bagEntry) {
+    this.bagEntry = bagEntry;
+  }
+
+  /**
+   * Getter for the prepared statement cache of the real connection.
+   *
+   * @return the statement cache, or null if statement caching is disabled
+   */
+  PreparedStatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  /**
+   * Setter for the prepared statement cache of the real connection.
+   *
+   * @param statementCache
+   *          the statement cache
+   */
+  void setStatementCache(PreparedStatementCache statementCache) {
+    this.statementCache = statementCache;
+  }
+
+  /**
+   * Getter for the tracked state of the real connection.
+   *
+   * @return the connection state, or null if state tracking is disabled
+   */
+  ConnectionState getConnectionState() {
+    return connectionState;
+  }
+
+  /**
+   * Setter for the tracked state of the real connection.
+   *
+   * @param connectionState
+   *          the connection state
+   */
+  void setConnectionState(ConnectionState connectionState) {
+    this.connectionState = connectionState;
+  }
+
   @Override
   public int hashCode() {
     return hashCode;
@@ -294,6 +396,13 @@ class PooledConnection implements InvocationHandler {
         // 如果不是Object 中定义的方法
         // 检测当前的连接是否有效，没有就抛出异常，防止继续使用该Connection
         checkConnection();
+        if (statementCache != null && PreparedStatementCache.isCacheable(method)) {
+          return statementCache.prepare(method, args);
+        }
+        if (connectionState != null) {
+          // 状态没有变化时不调用驱动
+          return connectionState.invoke(realConnection, method, args);
+        }
       }
       return method.invoke(realConnection, args);
     } catch (Throwable t) {
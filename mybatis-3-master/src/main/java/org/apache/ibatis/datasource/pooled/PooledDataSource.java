@@ -22,11 +22,21 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
+import org.apache.ibatis.datasource.DataSourceException;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
@@ -82,6 +92,75 @@ public class PooledDataSource implements DataSource {
    * 当连接超过 该值设定的毫秒未使用时，会发送一次测试SQL 语句
    */
   protected int poolPingConnectionsNotUsedFor;
+  /**
+   * 是否启用并发模式，启用后获取、归还连接不再竞争 state 的锁
+   */
+  protected boolean poolConcurrentMode;
+
+  /**
+   * 后台维护线程保持的最少空闲连接数，启动时会预先创建
+   */
+  protected int poolMinimumIdle;
+  /**
+   * 空闲超过该毫秒数的连接会被后台维护线程关闭（保留 poolMinimumIdle 个），0 表示不关闭
+   */
+  protected int poolMaximumIdleTime;
+  /**
+   * 连接的最长存活毫秒数，超过后不再放回连接池，0 表示不限制
+   */
+  protected int poolMaximumLifetime;
+  /**
+   * 后台维护线程的执行间隔
+   */
+  protected int poolHousekeepingPeriod = 30000;
+  /**
+   * 每个物理连接最多缓存的 PreparedStatement 数量，0 表示不缓存
+   */
+  protected int poolPreparedStatementCacheSize;
+  /**
+   * 是否跟踪物理连接的状态，跳过不会改变状态的 setAutoCommit、setTransactionIsolation 等调用
+   */
+  protected boolean poolTrackConnectionState;
+  /**
+   * 是否为 getConnection(username, password) 的每一组账号密码单独建立一个子连接池
+   */
+  protected boolean poolPartitionByCredentials;
+  /**
+   * 是否根据获取连接的等待时间和连接的使用时长，由后台维护线程动态调整最大活跃连接数和最大空闲连接数
+   */
+  protected boolean poolAdaptiveSizing;
+  /**
+   * 动态调整时最大活跃连接数的下限
+   */
+  protected int poolAdaptiveMinimumActiveConnections = 1;
+  /**
+   * 动态调整时最大活跃连接数的上限，0 表示使用 poolMaximumActiveConnections
+   */
+  protected int poolAdaptiveMaximumActiveConnections;
+  /**
+   * 获取连接的等待时间 95 分位的目标毫秒数，超过时扩大连接池
+   */
+  protected int poolAdaptiveTargetWaitTime = 10;
+
+  /**
+   * 按账号密码划分的子连接池，key 为 url、用户名和密码的摘要
+   */
+  private final ConcurrentMap<String, PooledDataSource> partitions = new ConcurrentHashMap<>();
+
+  /**
+   * 并发模式下的连接容器，非并发模式下为 null
+   */
+  volatile ConcurrentConnectionBag bag;
+
+  /**
+   * 后台维护任务，在第一次获取连接或 PooledDataSourceFactory 配置完成时启动
+   */
+  private volatile PoolHousekeeper housekeeper;
+
+  /**
+   * 动态调整连接池大小的控制器，未启用时为 null
+   */
+  volatile PoolSizeController sizeController;
 
   /**
    * 用URL、用户名和密码计算出来的hash 值，用来标识该连接所在的连接池
@@ -123,6 +202,10 @@ public class PooledDataSource implements DataSource {
 
   @Override
   public Connection getConnection(String username, String password) throws SQLException {
+    if (poolPartitionByCredentials
+        && !(Objects.equals(username, dataSource.getUsername()) && Objects.equals(password, dataSource.getPassword()))) {
+      return getPartition(username, password).getConnection();
+    }
     return popConnection(username, password).getProxyConnection();
   }
 
@@ -286,6 +369,170 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * Determines if connections are borrowed and returned without locking the pool state. In concurrent mode, a
+   * thread first reuses the connection it returned last and threads waiting for a connection get it handed
+   * over directly, instead of competing for a single monitor.
+   *
+   * @param poolConcurrentMode
+   *          True to borrow and return connections without locking
+   * @since 3.5.7
+   */
+  public void setPoolConcurrentMode(boolean poolConcurrentMode) {
+    forceCloseAll();
+    this.poolConcurrentMode = poolConcurrentMode;
+    this.bag = poolConcurrentMode ? new ConcurrentConnectionBag() : null;
+  }
+
+  /**
+   * The number of idle connections the background housekeeper keeps in the pool. They are created when the
+   * housekeeper starts, so that the first requests do not pay the connect latency.
+   *
+   * @param poolMinimumIdle
+   *          The minimum number of idle connections
+   * @since 3.5.7
+   */
+  public void setPoolMinimumIdle(int poolMinimumIdle) {
+    this.poolMinimumIdle = poolMinimumIdle;
+    forceCloseAll();
+  }
+
+  /**
+   * If a connection has been idle for this many milliseconds, the background housekeeper closes it unless the pool
+   * would go below the minimum idle connections.
+   *
+   * @param milliseconds
+   *          the maximum idle time, 0 to keep idle connections
+   * @since 3.5.7
+   */
+  public void setPoolMaximumIdleTime(int milliseconds) {
+    this.poolMaximumIdleTime = milliseconds;
+    forceCloseAll();
+  }
+
+  /**
+   * The maximum time a connection can live. An older connection is closed when it is returned or found idle.
+   *
+   * @param milliseconds
+   *          the maximum lifetime, 0 for no limit
+   * @since 3.5.7
+   */
+  public void setPoolMaximumLifetime(int milliseconds) {
+    this.poolMaximumLifetime = milliseconds;
+    forceCloseAll();
+  }
+
+  /**
+   * The time between two runs of the background housekeeper.
+   *
+   * @param milliseconds
+   *          the housekeeping period
+   * @since 3.5.7
+   */
+  public void setPoolHousekeepingPeriod(int milliseconds) {
+    this.poolHousekeepingPeriod = milliseconds;
+    stopHousekeeper();
+    forceCloseAll();
+  }
+
+  /**
+   * The number of prepared statements cached on each physical connection. Closing a statement puts it back into
+   * the cache of its connection, so that later sessions can reuse it without preparing it again.
+   *
+   * @param poolPreparedStatementCacheSize
+   *          the maximum number of cached statements per connection, 0 to disable the cache
+   * @since 3.5.7
+   */
+  public void setPoolPreparedStatementCacheSize(int poolPreparedStatementCacheSize) {
+    this.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    forceCloseAll();
+  }
+
+  /**
+   * Determines if the state of each physical connection (auto-commit, transaction isolation, read-only, catalog,
+   * schema and network timeout) is tracked by the pool. Getters are then answered without asking the driver, and
+   * setters that would not change anything are skipped.
+   * <p>
+   * State changed without going through the pooled connection, e.g. with a <code>SET</code> statement, is not seen.
+   *
+   * @param poolTrackConnectionState
+   *          True to track the state of physical connections
+   * @since 3.5.7
+   */
+  public void setPoolTrackConnectionState(boolean poolTrackConnectionState) {
+    this.poolTrackConnectionState = poolTrackConnectionState;
+    forceCloseAll();
+  }
+
+  /**
+   * Determines if connections requested with {@link #getConnection(String, String)} are pooled separately for each
+   * set of credentials. Each partition is a pool with the same settings as this one, its own limits and its own
+   * {@link PoolState}, so that switching between credentials reuses warm connections instead of closing them.
+   *
+   * @param poolPartitionByCredentials
+   *          True to keep a separate pool for each set of credentials
+   * @since 3.5.7
+   */
+  public void setPoolPartitionByCredentials(boolean poolPartitionByCredentials) {
+    this.poolPartitionByCredentials = poolPartitionByCredentials;
+    forceCloseAll();
+  }
+
+  /**
+   * Determines if the housekeeper adjusts the pool size to the load. At every run it looks at the 95th percentile of
+   * the time spent waiting for a connection since the previous run: above {@link #setPoolAdaptiveTargetWaitTime(int)}
+   * the maximum number of active connections grows by a quarter. Otherwise it shrinks towards the number of
+   * connections actually in use, estimated from the checkout times, and so does the maximum number of idle
+   * connections. {@link #setPoolMaximumActiveConnections(int)} and {@link #setPoolMaximumIdleConnections(int)} are
+   * the starting point.
+   *
+   * @param poolAdaptiveSizing
+   *          True to adjust the pool size to the load
+   * @since 3.5.7
+   */
+  public void setPoolAdaptiveSizing(boolean poolAdaptiveSizing) {
+    this.poolAdaptiveSizing = poolAdaptiveSizing;
+    forceCloseAll();
+  }
+
+  /**
+   * The smallest maximum number of active connections adaptive sizing can shrink the pool to.
+   *
+   * @param poolAdaptiveMinimumActiveConnections
+   *          The lower bound of the maximum number of active connections
+   * @since 3.5.7
+   */
+  public void setPoolAdaptiveMinimumActiveConnections(int poolAdaptiveMinimumActiveConnections) {
+    this.poolAdaptiveMinimumActiveConnections = poolAdaptiveMinimumActiveConnections;
+    forceCloseAll();
+  }
+
+  /**
+   * The largest maximum number of active connections adaptive sizing can grow the pool to. 0, the default, means
+   * {@link #getPoolMaximumActiveConnections()}, so that the pool only shrinks.
+   *
+   * @param poolAdaptiveMaximumActiveConnections
+   *          The upper bound of the maximum number of active connections
+   * @since 3.5.7
+   */
+  public void setPoolAdaptiveMaximumActiveConnections(int poolAdaptiveMaximumActiveConnections) {
+    this.poolAdaptiveMaximumActiveConnections = poolAdaptiveMaximumActiveConnections;
+    forceCloseAll();
+  }
+
+  /**
+   * The 95th percentile of the time spent waiting for a connection, in milliseconds, above which adaptive sizing
+   * grows the pool.
+   *
+   * @param poolAdaptiveTargetWaitTime
+   *          The target wait time in milliseconds
+   * @since 3.5.7
+   */
+  public void setPoolAdaptiveTargetWaitTime(int poolAdaptiveTargetWaitTime) {
+    this.poolAdaptiveTargetWaitTime = poolAdaptiveTargetWaitTime;
+    forceCloseAll();
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -356,11 +603,99 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  /**
+   * Gets whether the pool runs in concurrent mode.
+   *
+   * @return true if connections are borrowed and returned without locking
+   * @since 3.5.7
+   */
+  public boolean isPoolConcurrentMode() {
+    return poolConcurrentMode;
+  }
+
+  public int getPoolMinimumIdle() {
+    return poolMinimumIdle;
+  }
+
+  public int getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
+  public int getPoolMaximumLifetime() {
+    return poolMaximumLifetime;
+  }
+
+  public int getPoolHousekeepingPeriod() {
+    return poolHousekeepingPeriod;
+  }
+
+  public int getPoolPreparedStatementCacheSize() {
+    return poolPreparedStatementCacheSize;
+  }
+
+  public boolean isPoolTrackConnectionState() {
+    return poolTrackConnectionState;
+  }
+
+  public boolean isPoolPartitionByCredentials() {
+    return poolPartitionByCredentials;
+  }
+
+  public boolean isPoolAdaptiveSizing() {
+    return poolAdaptiveSizing;
+  }
+
+  public int getPoolAdaptiveMinimumActiveConnections() {
+    return poolAdaptiveMinimumActiveConnections;
+  }
+
+  public int getPoolAdaptiveMaximumActiveConnections() {
+    return poolAdaptiveMaximumActiveConnections;
+  }
+
+  public int getPoolAdaptiveTargetWaitTime() {
+    return poolAdaptiveTargetWaitTime;
+  }
+
+  /**
+   * Gets the state of the pools kept for credentials other than the configured ones.
+   *
+   * @return the state of each partition
+   * @since 3.5.7
+   */
+  public List<PoolState> getPartitionPoolStates() {
+    List<PoolState> states = new ArrayList<>();
+    for (PooledDataSource partition : partitions.values()) {
+      states.add(partition.getPoolState());
+    }
+    return states;
+  }
+
   /**
    * 关闭所有活跃和空闲的连接
    * Closes all active and idle connections in the pool.
    */
   public void forceCloseAll() {
+    for (Iterator<PooledDataSource> it = partitions.values().iterator(); it.hasNext();) {
+      PooledDataSource partition = it.next();
+      it.remove();
+      partition.stopHousekeeper();
+      partition.forceCloseAll();
+    }
+    ConcurrentConnectionBag bag = this.bag;
+    if (bag != null) {
+      expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+      for (ConcurrentConnectionBag.Entry entry : bag.values()) {
+        if (bag.remove(entry)) {
+          // 正在被使用的连接也置为无效，归还时会被当做坏连接丢弃
+          PooledConnection owner = entry.getOwner();
+          if (owner != null) {
+            owner.invalidate();
+          }
+          closeQuietly(entry.getRealConnection());
+        }
+      }
+    }
     // 上锁
     synchronized (state) {
       // 组装，生产TypeCode
@@ -400,15 +735,93 @@ public class PooledDataSource implements DataSource {
         }
       }
     }
+    // 连接池重新开始，之前的统计不再适用
+    sizeController = newSizeController();
     if (log.isDebugEnabled()) {
       log.debug("PooledDataSource forcefully closed/removed all connections.");
     }
   }
 
+  private void closeQuietly(Connection realConn) {
+    try {
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
   public PoolState getPoolState() {
     return state;
   }
 
+  private PooledDataSource getPartition(String username, String password) {
+    return partitions.computeIfAbsent(partitionKey(dataSource.getUrl(), username, password),
+        key -> newPartition(username, password));
+  }
+
+  /**
+   * 创建一个子连接池，除了账号密码，其他配置都与当前连接池一致
+   */
+  private PooledDataSource newPartition(String username, String password) {
+    UnpooledDataSource partitionSource = new UnpooledDataSource(dataSource.getDriverClassLoader(), dataSource.getDriver(),
+        dataSource.getUrl(), username, password);
+    partitionSource.setDriverProperties(dataSource.getDriverProperties());
+    partitionSource.setAutoCommit(dataSource.isAutoCommit());
+    partitionSource.setDefaultTransactionIsolationLevel(dataSource.getDefaultTransactionIsolationLevel());
+    partitionSource.setDefaultNetworkTimeout(dataSource.getDefaultNetworkTimeout());
+    PooledDataSource partition = new PooledDataSource(partitionSource);
+    partition.poolMaximumActiveConnections = poolMaximumActiveConnections;
+    partition.poolMaximumIdleConnections = poolMaximumIdleConnections;
+    partition.poolMaximumCheckoutTime = poolMaximumCheckoutTime;
+    partition.poolTimeToWait = poolTimeToWait;
+    partition.poolMaximumLocalBadConnectionTolerance = poolMaximumLocalBadConnectionTolerance;
+    partition.poolPingQuery = poolPingQuery;
+    partition.poolPingEnabled = poolPingEnabled;
+    partition.poolPingConnectionsNotUsedFor = poolPingConnectionsNotUsedFor;
+    partition.poolConcurrentMode = poolConcurrentMode;
+    partition.bag = poolConcurrentMode ? new ConcurrentConnectionBag() : null;
+    partition.poolMinimumIdle = poolMinimumIdle;
+    partition.poolMaximumIdleTime = poolMaximumIdleTime;
+    partition.poolMaximumLifetime = poolMaximumLifetime;
+    partition.poolHousekeepingPeriod = poolHousekeepingPeriod;
+    partition.poolPreparedStatementCacheSize = poolPreparedStatementCacheSize;
+    partition.poolTrackConnectionState = poolTrackConnectionState;
+    partition.poolAdaptiveSizing = poolAdaptiveSizing;
+    partition.poolAdaptiveMinimumActiveConnections = poolAdaptiveMinimumActiveConnections;
+    partition.poolAdaptiveMaximumActiveConnections = poolAdaptiveMaximumActiveConnections;
+    partition.poolAdaptiveTargetWaitTime = poolAdaptiveTargetWaitTime;
+    partition.sizeController = newSizeController();
+    partition.expectedConnectionTypeCode = assembleConnectionTypeCode(partitionSource.getUrl(), username, password);
+    if (log.isDebugEnabled()) {
+      log.debug("Created pool partition for user " + username + ".");
+    }
+    return partition;
+  }
+
+  /**
+   * 子连接池的 key，不直接保存密码
+   */
+  private static String partitionKey(String url, String username, String password) {
+    String passwordDigest;
+    if (password == null) {
+      passwordDigest = "";
+    } else {
+      try {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8))) {
+          builder.append(String.format("%02x", b));
+        }
+        passwordDigest = builder.toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new DataSourceException("Could not digest the password of a pool partition. Cause: " + e, e);
+      }
+    }
+    return url + '\0' + username + '\0' + passwordDigest;
+  }
+
   private int assembleConnectionTypeCode(String url, String username, String password) {
     return ("" + url + username + password).hashCode();
   }
@@ -419,6 +832,10 @@ public class PooledDataSource implements DataSource {
    * @throws SQLException 异常
    */
   protected void pushConnection(PooledConnection conn) throws SQLException {
+    if (conn.getBagEntry() != null) {
+      pushConcurrentConnection(conn);
+      return;
+    }
 
     synchronized (state) {
       /**
@@ -434,14 +851,14 @@ public class PooledDataSource implements DataSource {
         // 1、当前的空闲连接数 < 小于最大空闲连接数
         // 2、是同一个连接池，conn 所属的连接池时与当前的连接池为同一个
         // 进入到第一个if 分支
-        if (state.idleConnections.size() < poolMaximumIdleConnections && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
+        if (state.idleConnections.size() < currentMaximumIdleConnections() && conn.getConnectionTypeCode() == expectedConnectionTypeCode
+            && !isExpired(conn.getCreatedTimestamp())) {
           // 连接使用时间累加
           state.accumulatedCheckoutTime += conn.getCheckoutTime();
+          recordCheckout(conn.getCheckoutTime());
           // mybatis 并不会提交事务处理，将会默认回滚，即 autoCommit 为 false 时，如果为 true，则交mybatis 会自动提交
           // 回滚未提交的事务。 -- rollback 要在 commit 之前执行才能回滚
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
+          rollbackIfNeeded(conn);
           // 创建一个新的连接，还是使用当前的连接，进行包装
           PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
           // 空闲连接+1
@@ -449,6 +866,9 @@ public class PooledDataSource implements DataSource {
           // 重置连接创建时间戳、最后使用的时间戳从上一个 conn 传递过来的
           newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
           newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+          newConn.setLastValidatedTimestamp(conn.getLastValidatedTimestamp());
+          newConn.setStatementCache(conn.getStatementCache());
+          newConn.setConnectionState(conn.getConnectionState());
           // 将连接置位 逻辑无效
           // 除非再次从线程池中拿出
           conn.invalidate();
@@ -461,11 +881,10 @@ public class PooledDataSource implements DataSource {
           // 如果空闲时间满了
           // 连接使用时间累加
           state.accumulatedCheckoutTime += conn.getCheckoutTime();
+          recordCheckout(conn.getCheckoutTime());
           // mybatis 并不会提交事务处理，将会默认回滚，即 autoCommit 为 false 时，如果为 true，则交由用户手动回滚
           // 回滚未提交的事务。 -- rollback 要在 commit 之前执行才能回滚
-          if (!conn.getRealConnection().getAutoCommit()) {
-            conn.getRealConnection().rollback();
-          }
+          rollbackIfNeeded(conn);
           // 真正的关闭连接
           conn.getRealConnection().close();
           if (log.isDebugEnabled()) {
@@ -491,6 +910,10 @@ public class PooledDataSource implements DataSource {
    * @throws SQLException 异常
    */
   private PooledConnection popConnection(String username, String password) throws SQLException {
+    ConcurrentConnectionBag bag = this.bag;
+    if (bag != null) {
+      return popConcurrentConnection(bag, username, password);
+    }
     // 是否需要等待有空闲连接，如果此时空闲连接中没有了，则需要等待
     boolean countedWait = false;
     // 获取到的连接信息
@@ -503,39 +926,48 @@ public class PooledDataSource implements DataSource {
     /**
      * 循环获取
      */
+    ensureHousekeeperStarted();
     while (conn == null) {
+      PooledConnection expired = null;
       synchronized (state) {
         if (!state.idleConnections.isEmpty()) {
           // 空闲连接不为空
           // Pool has available connection
           // 弹出第一个
           conn = state.idleConnections.remove(0);
-          if (log.isDebugEnabled()) {
+          // 超过最长存活时间的连接在锁外关闭，重新获取
+          if (isExpired(conn.getCreatedTimestamp())) {
+            expired = conn;
+            conn = null;
+          } else if (log.isDebugEnabled()) {
             log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
           }
         } else {
           // Pool does not have available connection
           // 空闲连接为空
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
+          // 后台维护线程正在校验的连接也占用名额
+          if (state.activeConnections.size() + state.validatingConnectionCount < currentMaximumActiveConnections()) {
             // Can create new connection
             // 当前最大活跃的连接数 < 配置的最多活跃线程数量，直接创建一个线程了
-            conn = new PooledConnection(dataSource.getConnection(), this);
+            conn = newPooledConnection(dataSource.getConnection());
             if (log.isDebugEnabled()) {
               log.debug("Created connection " + conn.getRealHashCode() + ".");
             }
           } else {
             // Cannot create new connection
             // 不能创建新的conn 了。从 活跃的线程list 中取出最先放进去的连接
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
+            // 名额全部被正在校验的连接占用时没有可回收的连接，只能等待
+            PooledConnection oldestActiveConnection = state.activeConnections.isEmpty() ? null : state.activeConnections.get(0);
             // 计算是否已经超时了
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+            long longestCheckoutTime = oldestActiveConnection == null ? 0 : oldestActiveConnection.getCheckoutTime();
             // 如果已经超时了
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
+            if (oldestActiveConnection != null && longestCheckoutTime > poolMaximumCheckoutTime) {
               // Can claim overdue connection
               // 指标添加
               state.claimedOverdueConnectionCount++;
               state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
               state.accumulatedCheckoutTime += longestCheckoutTime;
+              recordCheckout(longestCheckoutTime);
               // 从list 中移除掉当前这个连接
               state.activeConnections.remove(oldestActiveConnection);
               if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
@@ -558,6 +990,9 @@ public class PooledDataSource implements DataSource {
               conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
               conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
               conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+              conn.setLastValidatedTimestamp(oldestActiveConnection.getLastValidatedTimestamp());
+              conn.setStatementCache(oldestActiveConnection.getStatementCache());
+              conn.setConnectionState(oldestActiveConnection.getConnectionState());
               // 置为无效啊
               oldestActiveConnection.invalidate();
               if (log.isDebugEnabled()) {
@@ -595,16 +1030,16 @@ public class PooledDataSource implements DataSource {
           // valid && realConnection != null && dataSource.pingConnection(this)
           // 如果 valid 为 false ，则会去发送心跳核查
           if (conn.isValid()) {
-            if (!conn.getRealConnection().getAutoCommit()) {
-              conn.getRealConnection().rollback();
-            }
+            rollbackIfNeeded(conn);
             conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
             conn.setCheckoutTimestamp(System.currentTimeMillis());
             conn.setLastUsedTimestamp(System.currentTimeMillis());
             state.activeConnections.add(conn);
             state.requestCount++;
             // 获取连接池的总时长累加
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
+            long requestTime = System.currentTimeMillis() - t;
+            state.accumulatedRequestTime += requestTime;
+            recordBorrow(requestTime);
           } else {
             // 连接无效
             if (log.isDebugEnabled()) {
@@ -626,7 +1061,172 @@ public class PooledDataSource implements DataSource {
           }
         }
       }
+      if (expired != null) {
+        retire(expired);
+      }
+    }
+
+    if (conn == null) {
+      if (log.isDebugEnabled()) {
+        log.debug("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+      }
+      throw new SQLException("PooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    }
+
+    return conn;
+  }
+
+  /**
+   * 并发模式下归还连接，与 pushConnection 的逻辑一致，只是不需要获取 state 的锁
+   * @param conn 连接
+   * @throws SQLException 异常
+   */
+  private void pushConcurrentConnection(PooledConnection conn) throws SQLException {
+    ConcurrentConnectionBag.Entry entry = conn.getBagEntry();
+    ConcurrentConnectionBag bag = this.bag;
+    // 已经被归还过、被当作超时连接回收或者连接池已经被关闭
+    boolean released = bag != null && entry.releaseOwner(conn);
+    if (!released || !conn.isValid()) {
+      if (released && bag.remove(entry)) {
+        closeQuietly(entry.getRealConnection());
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.recordBadConnection();
+      return;
+    }
+    state.recordCheckoutTime(conn.getCheckoutTime());
+    recordCheckout(conn.getCheckoutTime());
+    conn.invalidate();
+    try {
+      rollbackIfNeeded(conn);
+    } catch (SQLException | RuntimeException e) {
+      // 条目已经没有持有者，不移除的话会一直占用一个连接名额
+      if (bag.remove(entry)) {
+        closeQuietly(entry.getRealConnection());
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Bad connection " + conn.getRealHashCode() + ". Could not roll back, discarding connection.");
+      }
+      state.recordBadConnection();
+      throw e;
+    }
+    if ((bag.hasWaiters() || bag.getIdleCount() < currentMaximumIdleConnections())
+        && conn.getConnectionTypeCode() == expectedConnectionTypeCode && !isExpired(entry.getCreatedTimestamp())) {
+      entry.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+      entry.setLastValidatedTimestamp(conn.getLastValidatedTimestamp());
+      bag.requite(entry);
+      if (log.isDebugEnabled()) {
+        log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+      }
+    } else {
+      if (bag.remove(entry)) {
+        conn.getRealConnection().close();
+      }
+      if (log.isDebugEnabled()) {
+        log.debug("Closed connection " + conn.getRealHashCode() + ".");
+      }
+    }
+  }
+
+  /**
+   * 并发模式下获取连接
+   * 1、先从 bag 中获取空闲连接（优先当前线程上一次归还的连接）
+   * 2、没有空闲连接且未达到最大活跃连接数，创建新的连接
+   * 3、回收超时的连接
+   * 4、等待其他线程直接交接归还的连接
+   * @param bag 连接容器
+   * @param username 用户名
+   * @param password 密码
+   * @return 返回信息
+   * @throws SQLException 异常
+   */
+  private PooledConnection popConcurrentConnection(ConcurrentConnectionBag bag, String username, String password) throws SQLException {
+    boolean countedWait = false;
+    PooledConnection conn = null;
+    long t = System.currentTimeMillis();
+    int localBadConnectionCount = 0;
+
+    ensureHousekeeperStarted();
+    while (conn == null) {
+      ConcurrentConnectionBag.Entry entry = bag.borrow();
+      if (entry != null && isExpired(entry.getCreatedTimestamp())) {
+        retire(bag, entry);
+        continue;
+      }
+      if (entry != null) {
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + entry.getRealConnection().hashCode() + " from pool.");
+        }
+      } else if (bag.reserve(currentMaximumActiveConnections())) {
+        Connection realConn;
+        try {
+          realConn = dataSource.getConnection();
+        } catch (SQLException | RuntimeException e) {
+          bag.unreserve();
+          throw e;
+        }
+        entry = bag.add(realConn, newStatementCache(realConn), newConnectionState());
+        if (log.isDebugEnabled()) {
+          log.debug("Created connection " + realConn.hashCode() + ".");
+        }
+      } else {
+        entry = claimOverdueConnection(bag);
+        if (entry == null) {
+          if (!countedWait) {
+            state.recordWait();
+            countedWait = true;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+          }
+          long wt = System.currentTimeMillis();
+          try {
+            entry = bag.poll(poolTimeToWait);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          } finally {
+            state.recordWaitTime(System.currentTimeMillis() - wt);
+          }
+        }
+      }
 
+      if (entry != null) {
+        conn = new PooledConnection(entry.getRealConnection(), this);
+        conn.setCreatedTimestamp(entry.getCreatedTimestamp());
+        conn.setLastUsedTimestamp(entry.getLastUsedTimestamp());
+        conn.setLastValidatedTimestamp(entry.getLastValidatedTimestamp());
+        conn.setStatementCache(entry.getStatementCache());
+        conn.setConnectionState(entry.getConnectionState());
+        conn.setBagEntry(entry);
+        if (conn.isValid() && rollbackOnBorrow(conn)) {
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          entry.setOwner(conn);
+          long requestTime = System.currentTimeMillis() - t;
+          state.recordRequest(requestTime);
+          recordBorrow(requestTime);
+        } else {
+          if (log.isDebugEnabled()) {
+            log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+          }
+          if (bag.remove(entry)) {
+            closeQuietly(entry.getRealConnection());
+          }
+          state.recordBadConnection();
+          localBadConnectionCount++;
+          conn = null;
+          if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+            if (log.isDebugEnabled()) {
+              log.debug("PooledDataSource: Could not get a good connection to the database.");
+            }
+            throw new SQLException("PooledDataSource: Could not get a good connection to the database.");
+          }
+        }
+      }
     }
 
     if (conn == null) {
@@ -639,6 +1239,54 @@ public class PooledDataSource implements DataSource {
     return conn;
   }
 
+  /**
+   * 取出连接时回滚未提交的事务，回滚失败的连接当作坏连接处理，由调用方移除并重新获取
+   */
+  private boolean rollbackOnBorrow(PooledConnection conn) {
+    try {
+      rollbackIfNeeded(conn);
+      return true;
+    } catch (SQLException | RuntimeException e) {
+      log.debug("Bad connection. Could not roll back");
+      return false;
+    }
+  }
+
+  /**
+   * 回收检出时间超过 poolMaximumCheckoutTime 的连接
+   * @param bag 连接容器
+   * @return 被回收的连接，没有超时的连接则返回 null
+   */
+  private ConcurrentConnectionBag.Entry claimOverdueConnection(ConcurrentConnectionBag bag) {
+    ConcurrentConnectionBag.Entry oldest = bag.getOldestInUse();
+    if (oldest == null) {
+      return null;
+    }
+    PooledConnection oldestActiveConnection = oldest.getOwner();
+    if (oldestActiveConnection == null) {
+      return null;
+    }
+    long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+    // 与归还连接的线程竞争，只有一方能成功
+    if (longestCheckoutTime <= poolMaximumCheckoutTime || !oldest.releaseOwner(oldestActiveConnection)) {
+      return null;
+    }
+    state.recordOverdueClaim(longestCheckoutTime);
+    recordCheckout(longestCheckoutTime);
+    oldestActiveConnection.invalidate();
+    try {
+      if (!oldest.getRealConnection().getAutoCommit()) {
+        oldest.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      log.debug("Bad connection. Could not roll back");
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + oldest.getRealConnection().hashCode() + ".");
+    }
+    return oldest;
+  }
+
   /**
    * 核查conn 是否有效
    * Method to check to see if a connection is still usable
@@ -661,11 +1309,13 @@ public class PooledDataSource implements DataSource {
     }
 
     if (result && poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
-        && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
+        && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor
+        && conn.getTimeElapsedSinceLastValidation() > poolPingConnectionsNotUsedFor) {
       // 1、未关闭
       // 2、启用了ping 功能
       // 3、poolPingConnectionsNotUsedFor 设置了
       // 4、上一次使用连接的时间与当前的时间间隔比间隔 ping 的时间大
+      // 5、后台维护线程最近也没有 ping 过该连接
       try {
         if (log.isDebugEnabled()) {
           log.debug("Testing connection " + conn.getRealHashCode() + " ...");
@@ -678,6 +1328,7 @@ public class PooledDataSource implements DataSource {
           realConn.rollback();
         }
         result = true;
+        conn.setLastValidatedTimestamp(System.currentTimeMillis());
         if (log.isDebugEnabled()) {
           log.debug("Connection " + conn.getRealHashCode() + " is GOOD!");
         }
@@ -714,8 +1365,307 @@ public class PooledDataSource implements DataSource {
     return conn;
   }
 
+  /**
+   * 后台维护：调整连接池大小，关闭超过最长存活时间、空闲太久以及超出最大空闲数的连接，在请求路径之外 ping 空闲连接，并补足最少空闲连接数
+   * Maintains the idle connections off the request path. Called periodically by the {@link PoolHousekeeper}.
+   *
+   * @throws SQLException
+   *           if a new connection could not be opened
+   */
+  void housekeep() throws SQLException {
+    ConcurrentConnectionBag bag = this.bag;
+    adjustPoolSize(bag);
+    if (bag != null) {
+      housekeepBag(bag);
+    } else {
+      housekeepIdleConnections();
+    }
+    fillToMinimumIdle(bag);
+  }
+
+  private void housekeepIdleConnections() {
+    List<PooledConnection> toClose = new ArrayList<>();
+    List<PooledConnection> toValidate = new ArrayList<>();
+    synchronized (state) {
+      int idle = state.idleConnections.size();
+      for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext();) {
+        PooledConnection conn = it.next();
+        if (isExpired(conn.getCreatedTimestamp()) || idle > currentMaximumIdleConnections()
+            || (idle > poolMinimumIdle && isIdleTooLong(conn.getLastUsedTimestamp()))) {
+          it.remove();
+          idle--;
+          toClose.add(conn);
+        } else if (needsValidation(conn.getLastUsedTimestamp(), conn.getLastValidatedTimestamp())) {
+          it.remove();
+          toValidate.add(conn);
+          state.validatingConnectionCount++;
+        }
+      }
+    }
+    for (PooledConnection conn : toClose) {
+      retire(conn);
+    }
+    for (PooledConnection conn : toValidate) {
+      boolean valid = pingConnection(conn);
+      synchronized (state) {
+        state.validatingConnectionCount--;
+        if (valid && state.idleConnections.size() < currentMaximumIdleConnections() && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
+          state.idleConnections.add(conn);
+          state.notifyAll();
+          continue;
+        }
+        // 名额被释放，等待中的线程可以创建新的连接
+        state.notifyAll();
+      }
+      if (valid) {
+        retire(conn);
+      } else {
+        conn.invalidate();
+        state.recordBadConnection();
+      }
+    }
+  }
+
+  private void housekeepBag(ConcurrentConnectionBag bag) {
+    int idle = bag.getIdleCount();
+    for (ConcurrentConnectionBag.Entry entry : bag.values()) {
+      boolean expired = isExpired(entry.getCreatedTimestamp()) || idle > currentMaximumIdleConnections()
+          || (idle > poolMinimumIdle && isIdleTooLong(entry.getLastUsedTimestamp()));
+      if (expired) {
+        // 只处理空闲的连接，先占用再关闭
+        if (entry.compareAndSetState(ConcurrentConnectionBag.STATE_IDLE, ConcurrentConnectionBag.STATE_IN_USE)) {
+          idle--;
+          retire(bag, entry);
+        }
+      } else if (needsValidation(entry.getLastUsedTimestamp(), entry.getLastValidatedTimestamp())
+          && entry.compareAndSetState(ConcurrentConnectionBag.STATE_IDLE, ConcurrentConnectionBag.STATE_IN_USE)) {
+        PooledConnection conn = new PooledConnection(entry.getRealConnection(), this);
+        conn.setLastUsedTimestamp(entry.getLastUsedTimestamp());
+        conn.setLastValidatedTimestamp(entry.getLastValidatedTimestamp());
+        if (pingConnection(conn)) {
+          entry.setLastValidatedTimestamp(conn.getLastValidatedTimestamp());
+          bag.requite(entry);
+        } else {
+          bag.remove(entry);
+          state.recordBadConnection();
+        }
+      }
+    }
+  }
+
+  /**
+   * 根据上一个周期的等待时间和连接使用时长调整最大活跃连接数和最大空闲连接数，扩大后唤醒正在等待的线程
+   */
+  private void adjustPoolSize(ConcurrentConnectionBag bag) throws SQLException {
+    PoolSizeController controller = sizeController;
+    if (controller == null) {
+      return;
+    }
+    int upperBound = poolAdaptiveMaximumActiveConnections > 0 ? poolAdaptiveMaximumActiveConnections : poolMaximumActiveConnections;
+    int previous = controller.getMaximumActiveConnections();
+    int decision = controller.adjust(poolAdaptiveMinimumActiveConnections, upperBound, poolMaximumIdleConnections,
+        poolMinimumIdle, poolAdaptiveTargetWaitTime, state.getActiveConnectionCount());
+    if (decision == 0) {
+      return;
+    }
+    if (decision > 0) {
+      state.recordAdaptiveGrow();
+    } else {
+      state.recordAdaptiveShrink();
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Adjusted maximum active connections from " + previous + " to " + controller.getMaximumActiveConnections()
+          + " and maximum idle connections to " + controller.getMaximumIdleConnections() + " (95th percentile wait "
+          + controller.getLastWaitPercentile() + " ms).");
+    }
+    if (decision < 0) {
+      return;
+    }
+    if (bag == null) {
+      synchronized (state) {
+        state.notifyAll();
+      }
+      return;
+    }
+    // 并发模式下等待的线程不会自己创建连接，直接交给它们
+    while (bag.hasWaiters() && bag.reserve(controller.getMaximumActiveConnections())) {
+      Connection realConn;
+      try {
+        realConn = dataSource.getConnection();
+      } catch (SQLException | RuntimeException e) {
+        bag.unreserve();
+        throw e;
+      }
+      bag.addIdle(realConn, newStatementCache(realConn), newConnectionState());
+    }
+  }
+
+  private void fillToMinimumIdle(ConcurrentConnectionBag bag) throws SQLException {
+    int minimumIdle = Math.min(poolMinimumIdle, currentMaximumIdleConnections());
+    if (bag != null) {
+      while (bag.getIdleCount() < minimumIdle && bag.reserve(currentMaximumActiveConnections())) {
+        Connection realConn;
+        try {
+          realConn = dataSource.getConnection();
+        } catch (SQLException | RuntimeException e) {
+          bag.unreserve();
+          throw e;
+        }
+        bag.addIdle(realConn, newStatementCache(realConn), newConnectionState());
+        if (log.isDebugEnabled()) {
+          log.debug("Created idle connection " + realConn.hashCode() + ".");
+        }
+      }
+      return;
+    }
+    while (true) {
+      synchronized (state) {
+        if (state.idleConnections.size() >= minimumIdle
+            || state.idleConnections.size() + state.activeConnections.size() + state.validatingConnectionCount >= currentMaximumActiveConnections()) {
+          return;
+        }
+      }
+      // 在锁外创建连接，避免阻塞获取连接的线程
+      Connection realConn = dataSource.getConnection();
+      synchronized (state) {
+        if (state.idleConnections.size() < minimumIdle
+            && state.idleConnections.size() + state.activeConnections.size() + state.validatingConnectionCount < currentMaximumActiveConnections()) {
+          PooledConnection conn = newPooledConnection(realConn);
+          conn.setConnectionTypeCode(expectedConnectionTypeCode);
+          state.idleConnections.add(conn);
+          state.notifyAll();
+          if (log.isDebugEnabled()) {
+            log.debug("Created idle connection " + conn.getRealHashCode() + ".");
+          }
+          continue;
+        }
+      }
+      closeQuietly(realConn);
+      return;
+    }
+  }
+
+  private int currentMaximumActiveConnections() {
+    PoolSizeController controller = sizeController;
+    return controller == null ? poolMaximumActiveConnections : controller.getMaximumActiveConnections();
+  }
+
+  private int currentMaximumIdleConnections() {
+    PoolSizeController controller = sizeController;
+    return controller == null ? poolMaximumIdleConnections : controller.getMaximumIdleConnections();
+  }
+
+  private void recordBorrow(long requestTime) {
+    PoolSizeController controller = sizeController;
+    if (controller != null) {
+      controller.recordBorrow(requestTime);
+    }
+  }
+
+  private void recordCheckout(long checkoutTime) {
+    PoolSizeController controller = sizeController;
+    if (controller != null) {
+      controller.recordCheckout(checkoutTime);
+    }
+  }
+
+  private PoolSizeController newSizeController() {
+    return poolAdaptiveSizing ? new PoolSizeController(poolMaximumActiveConnections, poolMaximumIdleConnections) : null;
+  }
+
+  /**
+   * 包装一个新建的物理连接
+   */
+  private PooledConnection newPooledConnection(Connection realConn) {
+    PooledConnection conn = new PooledConnection(realConn, this);
+    conn.setStatementCache(newStatementCache(realConn));
+    conn.setConnectionState(newConnectionState());
+    return conn;
+  }
+
+  private ConnectionState newConnectionState() {
+    return poolTrackConnectionState ? new ConnectionState(state) : null;
+  }
+
+  /**
+   * 回滚未提交的事务，跟踪连接状态时跳过没有被使用过的连接
+   */
+  private void rollbackIfNeeded(PooledConnection conn) throws SQLException {
+    ConnectionState connectionState = conn.getConnectionState();
+    if (connectionState != null) {
+      connectionState.rollbackIfNeeded(conn.getRealConnection());
+    } else if (!conn.getRealConnection().getAutoCommit()) {
+      conn.getRealConnection().rollback();
+    }
+  }
+
+  private PreparedStatementCache newStatementCache(Connection realConn) {
+    return poolPreparedStatementCacheSize > 0 ? new PreparedStatementCache(realConn, state, poolPreparedStatementCacheSize) : null;
+  }
+
+  private boolean isExpired(long createdTimestamp) {
+    return poolMaximumLifetime > 0 && System.currentTimeMillis() - createdTimestamp > poolMaximumLifetime;
+  }
+
+  private boolean isIdleTooLong(long lastUsedTimestamp) {
+    return poolMaximumIdleTime > 0 && System.currentTimeMillis() - lastUsedTimestamp > poolMaximumIdleTime;
+  }
+
+  private boolean needsValidation(long lastUsedTimestamp, long lastValidatedTimestamp) {
+    long now = System.currentTimeMillis();
+    return poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
+        && now - lastUsedTimestamp > poolPingConnectionsNotUsedFor
+        && now - lastValidatedTimestamp > poolPingConnectionsNotUsedFor;
+  }
+
+  private void retire(PooledConnection conn) {
+    conn.invalidate();
+    closeQuietly(conn.getRealConnection());
+    state.recordEviction();
+    if (log.isDebugEnabled()) {
+      log.debug("Evicted connection " + conn.getRealHashCode() + ".");
+    }
+  }
+
+  private void retire(ConcurrentConnectionBag bag, ConcurrentConnectionBag.Entry entry) {
+    if (bag.remove(entry)) {
+      closeQuietly(entry.getRealConnection());
+      state.recordEviction();
+      if (log.isDebugEnabled()) {
+        log.debug("Evicted connection " + entry.getRealConnection().hashCode() + ".");
+      }
+    }
+  }
+
+  private boolean isHousekeepingEnabled() {
+    return poolMinimumIdle > 0 || poolMaximumIdleTime > 0 || poolMaximumLifetime > 0 || poolAdaptiveSizing;
+  }
+
+  private void ensureHousekeeperStarted() {
+    if (housekeeper == null && isHousekeepingEnabled()) {
+      startHousekeeper();
+    }
+  }
+
+  /**
+   * Starts the background housekeeper if minimum idle, idle eviction or maximum lifetime is configured.
+   */
+  synchronized void startHousekeeper() {
+    if (housekeeper == null && isHousekeepingEnabled()) {
+      housekeeper = PoolHousekeeper.start(this, poolHousekeepingPeriod);
+    }
+  }
+
+  private synchronized void stopHousekeeper() {
+    if (housekeeper != null) {
+      housekeeper.stop();
+      housekeeper = null;
+    }
+  }
+
   @Override
   protected void finalize() throws Throwable {
+    stopHousekeeper();
     forceCloseAll();
     super.finalize();
   }
@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import java.util.Properties;
+
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 
 /**
@@ -26,4 +28,11 @@ public class PooledDataSourceFactory extends UnpooledDataSourceFactory {
     this.dataSource = new PooledDataSource();
   }
 
+  @Override
+  public void setProperties(Properties properties) {
+    super.setProperties(properties);
+    // 配置完成后启动后台维护线程，预先创建最少空闲连接
+    ((PooledDataSource) dataSource).startHousekeeper();
+  }
+
 }
@@ -0,0 +1,154 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * PreparedStatement 动态代理，close() 时把真正的 PreparedStatement 放回到连接的缓存中
+ * A prepared statement checked out of a {@link PreparedStatementCache}. Each checkout gets a new proxy, so a closed
+ * proxy can not reach a statement that has been handed out again.
+ */
+class PooledPreparedStatement implements InvocationHandler {
+
+  private static final String CLOSE = "close";
+  private static final String IS_CLOSED = "isClosed";
+  private static final String ADD_BATCH = "addBatch";
+  /**
+   * 放回缓存时可以还原的设置，修改了其他设置的语句直接关闭
+   */
+  private static final Set<String> RESETTABLE_SETTERS = new HashSet<>(Arrays.asList("setQueryTimeout", "setMaxRows", "setFetchSize"));
+  private static final Class<?>[] IFACES = new Class<?>[] { PreparedStatement.class };
+
+  private final PreparedStatementCache cache;
+  private final PreparedStatementCache.StatementKey key;
+  private final PreparedStatement realStatement;
+  private final PreparedStatement proxyStatement;
+  /**
+   * 创建时驱动默认的 fetchSize，放回缓存时如果被修改过需要还原
+   */
+  private final int defaultFetchSize;
+  /**
+   * 是否修改过 fetchSize、queryTimeout、maxRows
+   */
+  private boolean dirty;
+  /**
+   * 是否修改过 fetchDirection、maxFieldSize、escapeProcessing 等无法还原的设置，这样的语句不能再放回缓存
+   */
+  private boolean unresettable;
+  /**
+   * 是否有还没有执行的批量参数
+   */
+  private boolean batched;
+  private boolean closed;
+
+  PooledPreparedStatement(PreparedStatementCache cache, PreparedStatementCache.StatementKey key,
+      PreparedStatement realStatement, int defaultFetchSize) {
+    this.cache = cache;
+    this.key = key;
+    this.realStatement = realStatement;
+    this.defaultFetchSize = defaultFetchSize;
+    this.proxyStatement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), IFACES, this);
+  }
+
+  PreparedStatementCache.StatementKey getKey() {
+    return key;
+  }
+
+  PreparedStatement getRealStatement() {
+    return realStatement;
+  }
+
+  PreparedStatement getProxyStatement() {
+    return proxyStatement;
+  }
+
+  int getDefaultFetchSize() {
+    return defaultFetchSize;
+  }
+
+  /**
+   * Tells whether every setting changed while checked out can be restored by {@link #reset()}.
+   *
+   * @return false if the statement must be closed instead of cached
+   */
+  boolean isResettable() {
+    return !unresettable;
+  }
+
+  /**
+   * Restores the settings changed while checked out, so that the next user starts from the driver defaults.
+   *
+   * @throws SQLException
+   *           if the statement could not be reset
+   */
+  void reset() throws SQLException {
+    realStatement.clearParameters();
+    if (batched) {
+      realStatement.clearBatch();
+    }
+    if (dirty) {
+      realStatement.setQueryTimeout(0);
+      realStatement.setMaxRows(0);
+      realStatement.setFetchSize(defaultFetchSize);
+    }
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String methodName = method.getName();
+    if (CLOSE.equals(methodName)) {
+      if (!closed) {
+        closed = true;
+        cache.release(this);
+      }
+      return null;
+    }
+    if (IS_CLOSED.equals(methodName) && closed) {
+      return true;
+    }
+    try {
+      if (!Object.class.equals(method.getDeclaringClass())) {
+        if (closed) {
+          throw new SQLException("Error accessing PooledPreparedStatement. Statement is closed.");
+        }
+        if (methodName.startsWith("set") && args != null && args.length == 1) {
+          // setFetchSize、setQueryTimeout、setMaxRows 可以还原，其他的会被下一次使用继承
+          if (RESETTABLE_SETTERS.contains(methodName)) {
+            dirty = true;
+          } else {
+            unresettable = true;
+          }
+        } else if (ADD_BATCH.equals(methodName)) {
+          batched = true;
+        }
+      }
+      return method.invoke(realStatement, args);
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+}
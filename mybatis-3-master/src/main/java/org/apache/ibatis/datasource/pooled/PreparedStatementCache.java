@@ -0,0 +1,193 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * 一个物理连接上的 PreparedStatement 缓存，跨 SqlSession 复用，最近最少使用的 statement 会被关闭
+ * An LRU cache of prepared statements bound to one physical connection, so that it outlives the sessions that use
+ * the connection. Statements are keyed by the arguments of the <code>prepareStatement</code> call: the SQL plus the
+ * result set type and concurrency, or the key generation mode.
+ * <p>
+ * A statement is removed from the cache while checked out and goes back in when its proxy is closed.
+ */
+class PreparedStatementCache {
+
+  private static final Log log = LogFactory.getLog(PreparedStatementCache.class);
+
+  private static final String PREPARE_STATEMENT = "prepareStatement";
+
+  private final Connection realConnection;
+  private final PoolState state;
+  private final int maxSize;
+  private final Map<StatementKey, PooledPreparedStatement> statements;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  PreparedStatementCache(Connection realConnection, PoolState state, int maxSize) {
+    this.realConnection = realConnection;
+    this.state = state;
+    this.maxSize = maxSize;
+    this.statements = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  static boolean isCacheable(Method method) {
+    return PREPARE_STATEMENT.equals(method.getName());
+  }
+
+  /**
+   * Returns a cached statement for the <code>prepareStatement</code> call, preparing a new one on a miss.
+   *
+   * @param method
+   *          the <code>prepareStatement</code> method
+   * @param args
+   *          its arguments
+   * @return a proxy that goes back into this cache when closed
+   * @throws SQLException
+   *           if a new statement could not be prepared
+   */
+  synchronized PreparedStatement prepare(Method method, Object[] args) throws SQLException {
+    StatementKey key = new StatementKey(args);
+    PooledPreparedStatement cached = statements.remove(key);
+    if (cached != null && !cached.getRealStatement().isClosed()) {
+      hits++;
+      state.recordStatementCacheHit();
+      return new PooledPreparedStatement(this, key, cached.getRealStatement(), cached.getDefaultFetchSize()).getProxyStatement();
+    }
+    misses++;
+    state.recordStatementCacheMiss();
+    PreparedStatement statement;
+    try {
+      statement = (PreparedStatement) method.invoke(realConnection, args);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      Throwable t = ExceptionUtil.unwrapThrowable(e);
+      if (t instanceof SQLException) {
+        throw (SQLException) t;
+      }
+      throw new SQLException("Could not prepare statement. Cause: " + t, t);
+    }
+    return new PooledPreparedStatement(this, key, statement, statement.getFetchSize()).getProxyStatement();
+  }
+
+  /**
+   * Puts a statement back into the cache, closing the least recently used one if the cache is full.
+   *
+   * @param statement
+   *          the statement that was closed by its user
+   */
+  synchronized void release(PooledPreparedStatement statement) {
+    PreparedStatement realStatement = statement.getRealStatement();
+    try {
+      if (realStatement.isClosed()) {
+        return;
+      }
+      if (!statement.isResettable()) {
+        closeQuietly(realStatement);
+        return;
+      }
+      statement.reset();
+    } catch (SQLException e) {
+      closeQuietly(realStatement);
+      return;
+    }
+    PooledPreparedStatement previous = statements.put(statement.getKey(), statement);
+    if (previous != null) {
+      // 同一个 SQL 同时被打开了两次，只保留一个
+      closeQuietly(previous.getRealStatement());
+    }
+    if (statements.size() > maxSize) {
+      Iterator<PooledPreparedStatement> it = statements.values().iterator();
+      PooledPreparedStatement eldest = it.next();
+      it.remove();
+      evictions++;
+      state.recordStatementCacheEviction();
+      closeQuietly(eldest.getRealStatement());
+    }
+  }
+
+  synchronized int size() {
+    return statements.size();
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  synchronized long getEvictions() {
+    return evictions;
+  }
+
+  private void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Could not close cached statement: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * 缓存的 key，即 prepareStatement 的所有参数
+   */
+  static final class StatementKey {
+
+    private final Object[] args;
+    private final int hashCode;
+
+    StatementKey(Object[] args) {
+      this.args = args.clone();
+      this.hashCode = Arrays.deepHashCode(this.args);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof StatementKey)) {
+        return false;
+      }
+      StatementKey other = (StatementKey) obj;
+      return hashCode == other.hashCode && Arrays.deepEquals(args, other.args);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+}
@@ -87,7 +87,7 @@ public abstract class BaseExecutor implements Executor {
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<>();
-    this.localCache = new PerpetualCache("LocalCache");
+    this.localCache = newLocalCache(configuration);
     this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
     this.closed = false;
     this.configuration = configuration;
@@ -208,6 +208,10 @@ public abstract class BaseExecutor implements Executor {
       // issue #601
       // 情况延迟队列
       deferredLoads.clear();
+      if (localCache instanceof BoundedLocalCache) {
+        // 延迟加载完成之后才能淘汰，嵌套查询的结果在此之前都要保留
+        ((BoundedLocalCache) localCache).trim(localOutputParameterCache);
+      }
       // 如果 localCacheScope 类型为 SQL 语句级 ，则需要情况缓存
       // localCacheScope 的配置是影响一级缓存中结果对象存活时长的第二个方面
       if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
@@ -261,13 +265,11 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
-    CacheKey cacheKey = new CacheKey();
-    // 将 MappedStatement id 添加到 CacheKey 对象中
-    cacheKey.update(ms.getId());
+    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+    // MappedStatement id 和 SQL 放在语句共享的前缀中，不在每个 CacheKey 中重复保存
+    CacheKey cacheKey = new CacheKey(ms.getCacheKeyPrefix(boundSql.getSql()), parameterMappings.size() + 3);
     cacheKey.update(rowBounds.getOffset());
     cacheKey.update(rowBounds.getLimit());
-    cacheKey.update(boundSql.getSql());
-    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
     TypeHandlerRegistry typeHandlerRegistry = ms.getConfiguration().getTypeHandlerRegistry();
     // mimic DefaultParameterHandler logic
     for (ParameterMapping parameterMapping : parameterMappings) {
@@ -414,6 +416,15 @@ public abstract class BaseExecutor implements Executor {
     return list;
   }
 
+  private static PerpetualCache newLocalCache(Configuration configuration) {
+    // ClosedExecutor 等没有 configuration
+    if (configuration != null
+        && (configuration.getLocalCacheSize() > 0 || configuration.getLocalCacheMaxWeight() > 0)) {
+      return new BoundedLocalCache(configuration.getLocalCacheSize(), configuration.getLocalCacheMaxWeight());
+    }
+    return new PerpetualCache("LocalCache");
+  }
+
   protected Connection getConnection(Log statementLog) throws SQLException {
     Connection connection = transaction.getConnection();
     if (statementLog.isDebugEnabled()) {
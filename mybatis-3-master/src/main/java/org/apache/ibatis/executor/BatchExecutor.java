@@ -20,9 +20,15 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.ibatis.cache.SampledWeigher;
+import org.apache.ibatis.cache.Weigher;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -30,6 +36,7 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -59,6 +66,25 @@ public class BatchExecutor extends BaseExecutor {
    * 当前的 MappedStatement sql 抽象信息
    */
   private MappedStatement currentStatement;
+  /**
+   * 按 SQL 分组时，SQL 对应的 Statement 在 statementList 中的下标
+   */
+  private final Map<String, Integer> statementIndexes = new HashMap<>();
+  /**
+   * 达到阈值自动执行的批处理结果，下次 flushStatements 时一起返回
+   * 丢弃参数对象时，同一个语句的结果合并为一个，内存不随行数增长
+   */
+  private final List<BatchResult> flushedResults = new ArrayList<>();
+  /**
+   * 未执行的行数和估算的字节数
+   */
+  private int pendingRows;
+  private long pendingBytes;
+  private Weigher weigher;
+  /**
+   * 改写为多行 INSERT 执行的批处理，这些批处理的参数不绑定到 Statement 上
+   */
+  private final Map<BatchResult, MultiRowInsert> multiRowInserts = new IdentityHashMap<>();
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -104,35 +130,164 @@ public class BatchExecutor extends BaseExecutor {
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
     final Statement stmt;
-    if (sql.equals(currentSql) && ms.equals(currentStatement)) {
+    final BatchResult batchResult;
+    int last = configuration.isBatchGroupBySql() ? groupIndex(ms, sql) : -1;
+    if (last < 0 && sql.equals(currentSql) && ms.equals(currentStatement)) {
       // 如果 currentSql 与 执行的 SQL 相等，并且 ms 是当前同一个对象
-      int last = statementList.size() - 1;
       // 拿到 最后一次 statement ，这个 statement 是与当前调用 doUpdate 的是同一个执行批处理的语句
+      last = statementList.size() - 1;
+    }
+    final MultiRowInsert multiRowInsert;
+    if (last >= 0) {
       stmt = statementList.get(last);
-      // 设置超时
-      applyTransactionTimeout(stmt);
-      // 设置SQL 参数
-      handler.parameterize(stmt);// fix Issues 322
       // 批处理结果
       // 这里记录了每一次的执行 参数
-      BatchResult batchResult = batchResultList.get(last);
+      batchResult = batchResultList.get(last);
+      multiRowInsert = multiRowInserts.get(batchResult);
+      if (multiRowInsert == null) {
+        // 设置超时
+        applyTransactionTimeout(stmt);
+        // 设置SQL 参数
+        handler.parameterize(stmt);// fix Issues 322
+      }
       // 记录批处理参数
       batchResult.addParameterObject(parameterObject);
     } else {
-      // 否则，获取新的Connection 连接。并组装新的 stmt
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    // fix Issues 322
+      multiRowInsert = configuration.getBatchMultiRowInsertSize() > 1 ? MultiRowInsert.of(ms, boundSql) : null;
+      if (multiRowInsert == null) {
+        // 否则，获取新的Connection 连接。并组装新的 stmt
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+        handler.parameterize(stmt);    // fix Issues 322
+      } else {
+        // 执行时按行数准备多行 INSERT，这里只占位
+        stmt = null;
+      }
       // 记录当前 SQL
       currentSql = sql;
       currentStatement = ms;
+      if (configuration.isBatchGroupBySql() && ms.getSqlCommandType() == SqlCommandType.INSERT) {
+        statementIndexes.put(sql, statementList.size());
+      }
       statementList.add(stmt);
-      batchResultList.add(new BatchResult(ms, sql, parameterObject));
+      batchResult = new BatchResult(ms, sql, parameterObject);
+      batchResultList.add(batchResult);
+      if (multiRowInsert != null) {
+        multiRowInserts.put(batchResult, multiRowInsert);
+      }
+      pendingBytes += sql.length() * 2L;
+    }
+    if (multiRowInsert == null) {
+      handler.batch(stmt);
+    }
+    pendingRows++;
+    if (configuration.getBatchMaxBytes() > 0) {
+      if (weigher == null) {
+        weigher = new SampledWeigher();
+      }
+      pendingBytes += weigher.weigh(null, parameterObject);
+    }
+    if (isFlushRequired(configuration, batchResult)) {
+      // 达到阈值时执行已经积累的全部批处理，保持执行顺序，JDBC 驱动也不再缓冲这些行
+      keepFlushedResults(executeBatches(false), configuration);
     }
-    handler.batch(stmt);
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * 丢弃参数对象时把自动执行的结果按语句合并，更新数数组只保留一个元素：驱动返回了更新数的行的更新数之和
+   */
+  private void keepFlushedResults(List<BatchResult> results, Configuration configuration) {
+    if (!configuration.isBatchDiscardParameterObjects()) {
+      flushedResults.addAll(results);
+      return;
+    }
+    for (BatchResult result : results) {
+      BatchResult folded = null;
+      for (BatchResult flushed : flushedResults) {
+        if (flushed.getMappedStatement().equals(result.getMappedStatement()) && flushed.getSql().equals(result.getSql())) {
+          folded = flushed;
+          break;
+        }
+      }
+      if (folded == null) {
+        folded = new BatchResult(result.getMappedStatement(), result.getSql());
+        folded.setUpdateCounts(new int[] { 0 });
+        flushedResults.add(folded);
+      }
+      long total = folded.getUpdateCounts()[0];
+      for (int count : result.getUpdateCounts()) {
+        if (count >= 0) {
+          total += count;
+        }
+      }
+      folded.getUpdateCounts()[0] = (int) Math.min(total, Integer.MAX_VALUE);
+    }
+  }
+
+  private boolean isFlushRequired(Configuration configuration, BatchResult batchResult) {
+    return configuration.getBatchMaxStatementRows() > 0
+        && batchResult.getParameterObjects().size() >= configuration.getBatchMaxStatementRows()
+        || configuration.getBatchMaxRows() > 0 && pendingRows >= configuration.getBatchMaxRows()
+        || configuration.getBatchMaxBytes() > 0 && pendingBytes >= configuration.getBatchMaxBytes();
+  }
+
+  /**
+   * 按 SQL 分组时查找可以复用的 Statement，没有时返回 -1
+   * 只有 INSERT 按 SQL 分组，批处理按 SQL 第一次出现的顺序执行。UPDATE 和 DELETE 交替执行时可能修改同一行，
+   * 只复用紧挨着的前一个 Statement，并且不再复用它们之前的 INSERT，避免删除或修改被提前到它之前的插入前面执行
+   */
+  private int groupIndex(MappedStatement ms, String sql) {
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT) {
+      statementIndexes.clear();
+      return -1;
+    }
+    Integer index = statementIndexes.get(sql);
+    if (index == null || !ms.equals(batchResultList.get(index).getMappedStatement())) {
+      return -1;
+    }
+    return index;
+  }
+
+  /**
+   * 按行数为 2 的幂的多行 INSERT 执行，同样行数的语句只准备一次，每行的更新数无法得知时为 SUCCESS_NO_INFO
+   */
+  private int[] executeMultiRowInsert(MultiRowInsert multiRowInsert, MappedStatement ms, List<Object> parameterObjects)
+      throws SQLException {
+    Configuration configuration = ms.getConfiguration();
+    int[] updateCounts = new int[parameterObjects.size()];
+    Map<Integer, Statement> statements = new HashMap<>();
+    int offset = 0;
+    try {
+      Connection connection = getConnection(ms.getStatementLog());
+      while (offset < parameterObjects.size()) {
+        int rows = MultiRowInsert.chunkSize(parameterObjects.size() - offset, configuration.getBatchMultiRowInsertSize());
+        List<Object> chunk = new ArrayList<>(parameterObjects.subList(offset, offset + rows));
+        BoundSql boundSql = multiRowInsert.bind(ms, chunk);
+        StatementHandler handler = configuration.newStatementHandler(this, ms, chunk, RowBounds.DEFAULT, null, boundSql);
+        Statement stmt = statements.get(rows);
+        if (stmt == null) {
+          stmt = handler.prepare(connection, transaction.getTimeout());
+          statements.put(rows, stmt);
+        } else {
+          applyTransactionTimeout(stmt);
+        }
+        handler.parameterize(stmt);
+        // 执行并把生成的主键回填到这些参数中
+        int count = handler.update(stmt);
+        Arrays.fill(updateCounts, offset, offset + rows, count == rows ? 1 : Statement.SUCCESS_NO_INFO);
+        offset += rows;
+      }
+      return updateCounts;
+    } catch (SQLException e) {
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(updateCounts, offset), e);
+    } finally {
+      for (Statement stmt : statements.values()) {
+        closeStatement(stmt);
+      }
+    }
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -167,6 +322,23 @@ public class BatchExecutor extends BaseExecutor {
 
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+    try {
+      List<BatchResult> results = executeBatches(isRollback);
+      if (isRollback || flushedResults.isEmpty()) {
+        return results;
+      }
+      List<BatchResult> allResults = new ArrayList<>(flushedResults);
+      allResults.addAll(results);
+      return allResults;
+    } finally {
+      flushedResults.clear();
+    }
+  }
+
+  /**
+   * 执行积累的批处理，回滚时只关闭 Statement
+   */
+  private List<BatchResult> executeBatches(boolean isRollback) throws SQLException {
     try {
       List<BatchResult> results = new ArrayList<>();
       if (isRollback) {
@@ -176,27 +348,37 @@ public class BatchExecutor extends BaseExecutor {
       // 遍历每一个 statementList
       for (int i = 0, n = statementList.size(); i < n; i++) {
         Statement stmt = statementList.get(i);
-        applyTransactionTimeout(stmt);
         BatchResult batchResult = batchResultList.get(i);
         // 拿到对应的 batchResult
         // 执行每个 stmt.executeBatch 并将结果设置到 setUpdateCounts 中
         try {
-          batchResult.setUpdateCounts(stmt.executeBatch());
           // 拿到 MappedStatement，和参数列表
           MappedStatement ms = batchResult.getMappedStatement();
           List<Object> parameterObjects = batchResult.getParameterObjects();
+          MultiRowInsert multiRowInsert = multiRowInserts.get(batchResult);
           // 获取 主键生成器，然后处理主键生成
           // ??? 这里，还是有点不大明白原理，已经执行了 stmt.executeBatch()，为啥还能再这里设置主键
           // 是在 closeStatement statement.close() 的时候，才会真正执行入库的语句吗？？？
           KeyGenerator keyGenerator = ms.getKeyGenerator();
-          if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
-            Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
-            jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
-          } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
-            for (Object parameter : parameterObjects) {
-              keyGenerator.processAfter(this, ms, stmt, parameter);
+          if (multiRowInsert != null) {
+            // 执行多行 INSERT 时已经回填主键
+            batchResult.setUpdateCounts(executeMultiRowInsert(multiRowInsert, ms, parameterObjects));
+          } else {
+            applyTransactionTimeout(stmt);
+            batchResult.setUpdateCounts(stmt.executeBatch());
+            if (Jdbc3KeyGenerator.class.equals(keyGenerator.getClass())) {
+              Jdbc3KeyGenerator jdbc3KeyGenerator = (Jdbc3KeyGenerator) keyGenerator;
+              jdbc3KeyGenerator.processBatch(ms, stmt, parameterObjects);
+            } else if (!NoKeyGenerator.class.equals(keyGenerator.getClass())) { //issue #141
+              for (Object parameter : parameterObjects) {
+                keyGenerator.processAfter(this, ms, stmt, parameter);
+              }
             }
           }
+          if (ms.getConfiguration().isBatchDiscardParameterObjects()) {
+            // 主键已经回填，不再持有参数对象，大量导入时内存保持平稳
+            batchResult.discardParameterObjects();
+          }
           // Close statement to close cursor #1109
           closeStatement(stmt);
         } catch (BatchUpdateException e) {
@@ -224,6 +406,10 @@ public class BatchExecutor extends BaseExecutor {
       currentSql = null;
       statementList.clear();
       batchResultList.clear();
+      statementIndexes.clear();
+      multiRowInserts.clear();
+      pendingRows = 0;
+      pendingBytes = 0;
     }
   }
 
@@ -37,7 +37,7 @@ public class BatchResult {
   /**
    * 批处理，每次执行的 参数
    */
-  private final List<Object> parameterObjects;
+  private List<Object> parameterObjects;
 
   /**
    * 每个 sql 对应的 参数执行的影响结果数
@@ -85,4 +85,11 @@ public class BatchResult {
     this.parameterObjects.add(parameterObject);
   }
 
+  /**
+   * 换成新的空列表，clear 会保留原来列表的容量
+   */
+  void discardParameterObjects() {
+    this.parameterObjects = new ArrayList<>(0);
+  }
+
 }
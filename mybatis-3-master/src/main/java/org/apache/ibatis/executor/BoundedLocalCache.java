@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.SampledWeigher;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+
+/**
+ * 有上限的一级缓存，超出条目个数或估算的内存大小时淘汰最近最少使用的条目
+ * A local cache bounded by a number of entries and by the estimated size of its entries, which evicts the least
+ * recently used entries first.
+ * <p>
+ * Entries are only evicted by {@link #trim(Cache)}, which the executor calls once the outermost query and its
+ * deferred loads have completed, since nested queries and deferred loads rely on the entries put during the query.
+ */
+final class BoundedLocalCache extends PerpetualCache {
+
+  /**
+   * 按访问顺序排列，最前面的是最近最少使用的条目
+   */
+  private final LinkedHashMap<Object, Object> entries = new LinkedHashMap<>(16, .75F, true);
+  /**
+   * 每个条目估算的大小，没有内存上限时为 null
+   */
+  private final Map<Object, Long> weights;
+  private final Weigher weigher = new SampledWeigher();
+  private final int maxSize;
+  private final long maxWeight;
+  private long weight;
+
+  /**
+   * Creates a bounded local cache.
+   *
+   * @param maxSize
+   *          the maximum number of entries, 0 for no limit
+   * @param maxWeight
+   *          the maximum estimated size of the entries in bytes, 0 for no limit
+   */
+  BoundedLocalCache(int maxSize, long maxWeight) {
+    super("LocalCache");
+    this.maxSize = maxSize;
+    this.maxWeight = maxWeight;
+    this.weights = maxWeight > 0 ? new HashMap<>() : null;
+  }
+
+  @Override
+  public int getSize() {
+    return entries.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    entries.put(key, value);
+    if (weights != null) {
+      Long previous = weights.put(key, weigher.weigh(key, value));
+      weight += weights.get(key) - (previous == null ? 0 : previous);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return entries.get(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    if (weights != null) {
+      Long removed = weights.remove(key);
+      if (removed != null) {
+        weight -= removed;
+      }
+    }
+    return entries.remove(key);
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+    if (weights != null) {
+      weights.clear();
+      weight = 0;
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries beyond the limits.
+   *
+   * @param outputParameters
+   *          the cache of the output parameters of the callable statements, whose entries are evicted along
+   */
+  void trim(Cache outputParameters) {
+    Iterator<Object> keys = entries.keySet().iterator();
+    while (keys.hasNext() && (maxSize > 0 && entries.size() > maxSize || maxWeight > 0 && weight > maxWeight)) {
+      Object key = keys.next();
+      keys.remove();
+      if (weights != null) {
+        weight -= weights.remove(key);
+      }
+      outputParameters.removeObject(key);
+    }
+  }
+
+}
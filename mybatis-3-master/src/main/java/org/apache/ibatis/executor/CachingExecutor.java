@@ -16,18 +16,26 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheStats;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.BlockingCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.CacheInvalidationScope;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
@@ -46,10 +54,29 @@ public class CachingExecutor implements Executor {
    * 因为二级缓存是支持跨 Session 进行共享，此处需要考虑事务，那么，必然需要做到事务提交时，
    * 才将当前事务中查询时产生的缓存，同步到二级缓存中。这个功能，就通过 TransactionalCacheManager 来实现
    */
-  private final TransactionalCacheManager tcm = new TransactionalCacheManager();
+  private final TransactionalCacheManager tcm;
+  /**
+   * 当前事务是否执行过增删改，执行过时查询结果可能包含未提交的数据
+   */
+  private boolean writtenInTransaction;
 
   public CachingExecutor(Executor delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * Creates a caching executor that invalidates the second-level cache as configured by
+   * {@link Configuration#getCacheInvalidationScope()}.
+   *
+   * @param delegate
+   *          the executor
+   * @param configuration
+   *          the configuration
+   * @since 3.5.7
+   */
+  public CachingExecutor(Executor delegate, Configuration configuration) {
     this.delegate = delegate;
+    this.tcm = new TransactionalCacheManager(configuration);
     delegate.setExecutorWrapper(this);
   }
 
@@ -94,10 +121,11 @@ public class CachingExecutor implements Executor {
 
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
+    writtenInTransaction = true;
     /**
      * 如果有必要，则清除二级缓存
      */
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameterObject, null);
     return delegate.update(ms, parameterObject);
   }
 
@@ -106,7 +134,7 @@ public class CachingExecutor implements Executor {
     /**
      * 游标的要清除缓存
      */
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameter, null);
     return delegate.queryCursor(ms, parameter, rowBounds);
   }
 
@@ -125,14 +153,51 @@ public class CachingExecutor implements Executor {
     Cache cache = ms.getCache();
     if (cache != null) {
       // 如果需要清空缓存，则进行清空
-      flushCacheIfRequired(ms);
+      flushCacheIfRequired(ms, parameterObject, boundSql);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
+        // 按 id 查询时先查找实体缓存
+        CacheKey entityKey = isEntityCacheEnabled(ms) && ms.isIdLookup()
+            ? EntityKeys.forLookup(ms, parameterObject, rowBounds, boundSql) : null;
+        if (entityKey != null) {
+          Object entity = tcm.getObject(cache, entityKey);
+          if (entity != null) {
+            List<E> list = new ArrayList<>(1);
+            @SuppressWarnings("unchecked")
+            E element = (E) entity;
+            list.add(element);
+            return list;
+          }
+        }
         @SuppressWarnings("unchecked")
         List<E> list = (List<E>) tcm.getObject(cache, key);
         if (list == null) {
-          list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          long start = System.nanoTime();
+          try {
+            list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          } catch (SQLException | RuntimeException e) {
+            // 唤醒等待这些 key 的线程，由它们自己加载
+            tcm.releaseEntry(cache, key);
+            if (entityKey != null) {
+              tcm.releaseEntry(cache, entityKey);
+            }
+            throw e;
+          }
+          CacheStats stats = cache.getStats();
+          if (stats != null) {
+            stats.recordLoad(System.nanoTime() - start);
+          }
+          putObject(ms, cache, key, list, boundSql); // issue #578 and #116
+          if (isEntityCacheEnabled(ms)) {
+            putEntities(ms, cache, list, boundSql);
+          }
+          flushLoadedEntry(ms, cache, key);
+        } else if (entityKey != null && list.size() == 1) {
+          // 实体已被淘汰而查询结果还在
+          putObject(ms, cache, entityKey, list.get(0), boundSql);
+        }
+        if (entityKey != null) {
+          flushLoadedEntry(ms, cache, entityKey);
         }
         return list;
       }
@@ -140,6 +205,39 @@ public class CachingExecutor implements Executor {
     return delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
   }
 
+  /**
+   * Executes the statement against the database, bypassing the second level cache lookup, and stores the result in
+   * the cache of the statement when the transaction commits. Used to warm up and refresh cached statements.
+   *
+   * @param ms
+   *          the mapped statement
+   * @param parameterObject
+   *          the parameter object
+   * @return the loaded result
+   * @throws SQLException
+   *           if the query fails
+   * @since 3.5.7
+   */
+  @Override
+  public <E> List<E> reload(MappedStatement ms, Object parameterObject) throws SQLException {
+    BoundSql boundSql = ms.getBoundSql(parameterObject);
+    CacheKey key = createCacheKey(ms, parameterObject, RowBounds.DEFAULT, boundSql);
+    Cache cache = ms.getCache();
+    long start = System.nanoTime();
+    List<E> list = delegate.query(ms, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, key, boundSql);
+    if (cache != null && ms.isUseCache()) {
+      CacheStats stats = cache.getStats();
+      if (stats != null) {
+        stats.recordLoad(System.nanoTime() - start);
+      }
+      putObject(ms, cache, key, list, boundSql);
+      if (isEntityCacheEnabled(ms)) {
+        putEntities(ms, cache, list, boundSql);
+      }
+    }
+    return list;
+  }
+
   @Override
   public List<BatchResult> flushStatements() throws SQLException {
     return delegate.flushStatements();
@@ -150,6 +248,7 @@ public class CachingExecutor implements Executor {
     // 提交事务
     delegate.commit(required);
     tcm.commit();
+    writtenInTransaction = false;
   }
 
   @Override
@@ -159,6 +258,7 @@ public class CachingExecutor implements Executor {
     } finally {
       if (required) {
         tcm.rollback();
+        writtenInTransaction = false;
       }
     }
   }
@@ -201,24 +301,77 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
-  private void flushCacheIfRequired(MappedStatement ms) {
+  private void flushCacheIfRequired(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
     /**
      * 获取二级缓存的实现类
      */
     Cache cache = ms.getCache();
-    // 存在二级缓存，并且 flushCacheRequired = true，select 默认为 false,update 默认为 true 、 insert
     if (cache != null && ms.isFlushCacheRequired()) {
-      // 清空二级缓存，清除当前事务中的 entriesToAddOnCommit 的缓存，并不是 cache 中的缓存，此时也会将 clearOnCommit 设置为  true
-      // 而 clearOnCommit 将会在 commit 和 rollback 的方法中通过掉头 reset 方法重新设置为 false
-      // clearOnCommit 为 true ，意味着，tcm#getObject 当前的 cache 的getObject 返回结果为为 null
+      if (isTableScope(ms)) {
+        // 只让读过写入的表的条目失效，表未知时清空
+        tcm.invalidate(cache, writtenTables(ms, parameterObject, boundSql));
+      } else {
+        tcm.clear(cache);
+      }
+    }
+  }
+
+  private void putObject(MappedStatement ms, Cache cache, CacheKey key, Object value, BoundSql boundSql) {
+    if (isTableScope(ms)) {
+      // 记录查询读过的表，写入这些表时才失效
+      tcm.putObject(cache, key, value, ms.getTables(boundSql));
+    } else {
+      tcm.putObject(cache, key, value);
+    }
+  }
+
+  /**
+   * 开启 publishBeforeCommit 并且事务没有写过数据时，马上写入 BlockingCache，等待的线程不必等到事务结束
+   * 默认提交时才写入，等待的线程一直等到事务结束
+   */
+  private void flushLoadedEntry(MappedStatement ms, Cache cache, CacheKey key) {
+    if (cache instanceof BlockingCache && ((BlockingCache) cache).isPublishBeforeCommit()) {
+      if (!writtenInTransaction && ms.getStatementType() != StatementType.CALLABLE) {
+        tcm.flushEntry(cache, key);
+      }
+      // 不能马上写入时也唤醒等待的线程，由它们自己加载
+      tcm.releaseEntry(cache, key);
+    }
+  }
+
+  /**
+   * 把查询结果中有 id 的对象按 id 放入实体缓存
+   */
+  private void putEntities(MappedStatement ms, Cache cache, List<?> list, BoundSql boundSql) {
+    if (ms.getResultMaps().size() != 1) {
+      return;
+    }
+    Map<CacheKey, Object> entities = EntityKeys.collect(ms, boundSql, list);
+    for (Map.Entry<CacheKey, Object> entity : entities.entrySet()) {
+      putObject(ms, cache, entity.getKey(), entity.getValue(), boundSql);
+    }
+  }
 
+  private boolean isEntityCacheEnabled(MappedStatement ms) {
+    return ms.getConfiguration().isEntityCacheEnabled();
+  }
 
-      // 这里为什么只会清空 当前事务的 entriesToAddOnCommit 呢
-      // 1、entriesToAddOnCommit 记录的是当前 事务中 tcm cache 对应的，未进入到 全局二级缓存（即 cache，多个 session 中的 cache 是同一个）中待缓存对象
-      // 2、当 executor#commit 时，调用 tcm#commit ，遍历 TransactionalCache#txCache，如果此时 cache 对应的 clearOnCommit 为 true，则先将 cache 情空缓存，然后将
-      // 当前的 事务结果写入 flushPendingEntries cache 缓存中
-      tcm.clear(cache);
+  private boolean isTableScope(MappedStatement ms) {
+    return ms.getConfiguration().getCacheInvalidationScope() == CacheInvalidationScope.TABLE;
+  }
+
+  /**
+   * 增删改语句写入的表，查询语句设置了 flushCache 时仍然清空整个缓存
+   */
+  private Set<String> writtenTables(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
+    SqlCommandType type = ms.getSqlCommandType();
+    if (type != SqlCommandType.INSERT && type != SqlCommandType.UPDATE && type != SqlCommandType.DELETE) {
+      return null;
+    }
+    if (ms.getDeclaredTables() != null) {
+      return ms.getDeclaredTables();
     }
+    return ms.getTables(boundSql != null ? boundSql : ms.getBoundSql(parameterObject));
   }
 
   @Override
@@ -0,0 +1,219 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.loader.WriteReplaceInterface;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultFlag;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * 实体缓存的 key，由结果映射的 id、查询的列以及 &lt;id&gt; 对应属性的值组成
+ * Builds the keys under which the second-level cache keeps the mapped objects of query results: the id of their
+ * result map, the select list of the query and the values of its {@code <id>} properties. Only result maps that
+ * declare an {@code <id>} or {@code <idArg>}, and that belong to the namespace of the cache, are used, so that the
+ * writes that flush the cache are those of the namespace the objects come from.
+ * <p>
+ * Two queries share their objects only if their select lists are written the same way, so an id lookup never returns
+ * an object that a query of fewer columns filled partially.
+ */
+final class EntityKeys {
+
+  /**
+   * 区分实体 key 和查询 key
+   */
+  private static final String ENTITY = "entity";
+
+  private EntityKeys() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Gets the key of the object that an id lookup would return.
+   *
+   * @param ms
+   *          a statement marked as id lookup
+   * @param parameterObject
+   *          the id, or an object or map with the id properties
+   * @param rowBounds
+   *          the row bounds
+   * @param boundSql
+   *          the SQL of the statement
+   * @return the key, or null if the statement cannot be served from the entity cache
+   */
+  static CacheKey forLookup(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+    List<ResultMap> resultMaps = ms.getResultMaps();
+    if (parameterObject == null || resultMaps.size() != 1 || rowBounds.getOffset() != RowBounds.NO_ROW_OFFSET
+        || rowBounds.getLimit() != RowBounds.NO_ROW_LIMIT) {
+      return null;
+    }
+    ResultMap resultMap = resultMaps.get(0);
+    if (!isEntity(resultMap, ms.getCache().getId())) {
+      return null;
+    }
+    Configuration configuration = ms.getConfiguration();
+    String columns = selectListOf(ms, boundSql);
+    if (resultMap.getIdResultMappings().size() == 1
+        && configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+      // 参数就是 id 的值
+      CacheKey key = newKey(resultMap, columns);
+      key.update(parameterObject);
+      return key;
+    }
+    return keyOf(resultMap, columns, configuration.newMetaObject(parameterObject));
+  }
+
+  /**
+   * Finds the objects of a query result, and of their nested result maps, that can be kept by id.
+   *
+   * @param ms
+   *          the query
+   * @param boundSql
+   *          the SQL of the query
+   * @param results
+   *          the query result
+   * @return the objects by key, in the order they were found
+   */
+  static Map<CacheKey, Object> collect(MappedStatement ms, BoundSql boundSql, List<?> results) {
+    Map<CacheKey, Object> entities = new LinkedHashMap<>();
+    collect(ms.getConfiguration(), ms.getCache().getId(), selectListOf(ms, boundSql), ms.getResultMaps().get(0),
+        results, entities, new IdentityHashMap<>());
+    return entities;
+  }
+
+  private static void collect(Configuration configuration, String namespace, String columns, ResultMap resultMap,
+      Object value, Map<CacheKey, Object> entities, Map<Object, Object> visited) {
+    if (value == null) {
+      return;
+    }
+    if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        collect(configuration, namespace, columns, resultMap, element, entities, visited);
+      }
+      return;
+    }
+    if (configuration.getTypeHandlerRegistry().hasTypeHandler(value.getClass())
+        || visited.put(value, value) != null) {
+      return;
+    }
+    if (value instanceof WriteReplaceInterface && configuration.isAggressiveLazyLoading()) {
+      // 调用延迟加载代理的任何方法都会触发加载
+      return;
+    }
+    MetaObject metaObject = configuration.newMetaObject(value);
+    if (isEntity(resultMap, namespace)) {
+      CacheKey key = keyOf(resultMap, columns, metaObject);
+      if (key != null) {
+        entities.putIfAbsent(key, value);
+      }
+    }
+    for (ResultMapping resultMapping : resultMap.getPropertyResultMappings()) {
+      String nestedResultMapId = resultMapping.getNestedResultMapId();
+      String property = resultMapping.getProperty();
+      if (nestedResultMapId != null && property != null && metaObject.hasGetter(property)) {
+        collect(configuration, namespace, columns, configuration.getResultMap(nestedResultMapId),
+            metaObject.getValue(property), entities, visited);
+      }
+    }
+  }
+
+  private static CacheKey keyOf(ResultMap resultMap, String columns, MetaObject metaObject) {
+    CacheKey key = newKey(resultMap, columns);
+    for (ResultMapping idMapping : resultMap.getIdResultMappings()) {
+      String property = idMapping.getProperty();
+      if (property == null || !metaObject.hasGetter(property)) {
+        return null;
+      }
+      Object value = metaObject.getValue(property);
+      if (value == null) {
+        return null;
+      }
+      key.update(value);
+    }
+    return key;
+  }
+
+  private static CacheKey newKey(ResultMap resultMap, String columns) {
+    CacheKey key = new CacheKey();
+    key.update(ENTITY);
+    key.update(resultMap.getId());
+    key.update(columns);
+    return key;
+  }
+
+  /**
+   * 结果映射属于缓存所在的命名空间，该命名空间的写操作才会清空这些实体
+   */
+  private static boolean isEntity(ResultMap resultMap, String namespace) {
+    return hasDeclaredId(resultMap) && resultMap.getId().startsWith(namespace + ".");
+  }
+
+  /**
+   * 查询的列，即 SELECT 与最外层 FROM 之间的部分，空白被合并。找不到时使用语句的 id，只有同一个语句的结果可以共享
+   */
+  private static String selectListOf(MappedStatement ms, BoundSql boundSql) {
+    String sql = boundSql.getSql().trim();
+    if (!startsWithWord(sql, 0, "select")) {
+      return ms.getId();
+    }
+    int depth = 0;
+    char quote = 0;
+    for (int i = 6; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (depth == 0 && !Character.isJavaIdentifierPart(sql.charAt(i - 1)) && startsWithWord(sql, i, "from")) {
+        return sql.substring(6, i).trim().replaceAll("\\s+", " ");
+      }
+    }
+    return ms.getId();
+  }
+
+  private static boolean startsWithWord(String sql, int offset, String word) {
+    int end = offset + word.length();
+    return sql.regionMatches(true, offset, word, 0, word.length())
+        && (end == sql.length() || !Character.isJavaIdentifierPart(sql.charAt(end)));
+  }
+
+  /**
+   * 没有声明 &lt;id&gt; 时 idResultMappings 包含所有的映射，不能作为实体的标识
+   */
+  private static boolean hasDeclaredId(ResultMap resultMap) {
+    List<ResultMapping> idMappings = resultMap.getIdResultMappings();
+    return !idMappings.isEmpty() && idMappings.get(0).getFlags().contains(ResultFlag.ID);
+  }
+
+}
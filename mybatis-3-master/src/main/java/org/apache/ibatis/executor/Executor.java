@@ -79,6 +79,26 @@ public interface Executor {
    */
   <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException;
 
+  /**
+   * 跳过二级缓存查找执行查询，提交后结果放入二级缓存，用于预热和定时刷新
+   * Executes the statement against the database, bypassing the second level cache lookup. Executors with a second
+   * level cache store the result in the cache of the statement when the transaction commits.
+   *
+   * @param ms
+   *          the mapped statement
+   * @param parameter
+   *          the parameter object
+   * @param <E>
+   *          the type of the results
+   * @return the loaded result
+   * @throws SQLException
+   *           if the query fails
+   * @since 3.5.7
+   */
+  default <E> List<E> reload(MappedStatement ms, Object parameter) throws SQLException {
+    return query(ms, parameter, RowBounds.DEFAULT, NO_RESULT_HANDLER);
+  }
+
   /**
    * 刷如批处理语句
    * 批量执行 SQL 语句
@@ -0,0 +1,165 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 把批处理中同一条单行 INSERT 的多组参数合并成一条多行 VALUES 语句
+ * Folds the parameter sets of a single row {@code INSERT ... VALUES (...)} into one multi-row insert.
+ *
+ * @since 3.5.7
+ */
+final class MultiRowInsert {
+
+  private static final Pattern VALUES = Pattern.compile("\\bvalues\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * VALUES 之前的部分，包括 VALUES 关键字
+   */
+  private final String prefix;
+  /**
+   * 一行的值列表，包括括号
+   */
+  private final String row;
+
+  private MultiRowInsert(String prefix, String row) {
+    this.prefix = prefix;
+    this.row = row;
+  }
+
+  /**
+   * Returns the rewriter of a statement, or null if the statement is not a simple single row insert: a prepared
+   * insert whose SQL ends with one VALUES list that holds all its parameters, and whose keys are generated by JDBC or
+   * not at all.
+   */
+  static MultiRowInsert of(MappedStatement ms, BoundSql boundSql) {
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT || ms.getStatementType() != StatementType.PREPARED) {
+      return null;
+    }
+    Class<?> keyGeneratorType = ms.getKeyGenerator().getClass();
+    if (!Jdbc3KeyGenerator.class.equals(keyGeneratorType) && !NoKeyGenerator.class.equals(keyGeneratorType)) {
+      return null;
+    }
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      if (parameterMapping.getMode() != ParameterMode.IN) {
+        return null;
+      }
+    }
+    String sql = boundSql.getSql().trim();
+    if (!sql.regionMatches(true, 0, "insert", 0, 6)) {
+      return null;
+    }
+    Matcher matcher = VALUES.matcher(sql);
+    if (!matcher.find()) {
+      return null;
+    }
+    int start = matcher.end() - 1;
+    if (matcher.find() || sql.lastIndexOf('?', start) >= 0 || closingParenthesis(sql, start) != sql.length() - 1) {
+      return null;
+    }
+    return new MultiRowInsert(sql.substring(0, start), sql.substring(start));
+  }
+
+  /**
+   * 与 start 处的左括号匹配的右括号的位置，忽略字符串中的括号，没有时返回 -1
+   */
+  private static int closingParenthesis(String sql, int start) {
+    int depth = 0;
+    boolean quoted = false;
+    for (int i = start; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && c == '(') {
+        depth++;
+      } else if (!quoted && c == ')' && --depth == 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of rows of the next insert: the largest power of two not exceeding the remaining rows and the
+   * maximum, so that only a few distinct statements are prepared.
+   */
+  static int chunkSize(int remaining, int max) {
+    return Integer.highestOneBit(Math.min(remaining, max));
+  }
+
+  /**
+   * Binds the parameter objects to one multi-row insert. The values of each row are resolved as
+   * {@code DefaultParameterHandler} would and passed as additional parameters.
+   */
+  BoundSql bind(MappedStatement ms, List<Object> parameterObjects) {
+    Configuration configuration = ms.getConfiguration();
+    StringBuilder sql = new StringBuilder(prefix.length() + (row.length() + 2) * parameterObjects.size()).append(prefix);
+    List<ParameterMapping> parameterMappings = new ArrayList<>();
+    List<Object> values = new ArrayList<>();
+    for (int i = 0; i < parameterObjects.size(); i++) {
+      if (i > 0) {
+        sql.append(", ");
+      }
+      sql.append(row);
+      Object parameterObject = parameterObjects.get(i);
+      BoundSql rowSql = ms.getBoundSql(parameterObject);
+      MetaObject metaObject = null;
+      for (ParameterMapping parameterMapping : rowSql.getParameterMappings()) {
+        String property = parameterMapping.getProperty();
+        Object value;
+        if (rowSql.hasAdditionalParameter(property)) {
+          value = rowSql.getAdditionalParameter(property);
+        } else if (parameterObject == null) {
+          value = null;
+        } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+          value = parameterObject;
+        } else {
+          if (metaObject == null) {
+            metaObject = configuration.newMetaObject(parameterObject);
+          }
+          value = metaObject.getValue(property);
+        }
+        parameterMappings.add(new ParameterMapping.Builder(configuration, "__row_" + values.size(), parameterMapping.getTypeHandler())
+            .javaType(parameterMapping.getJavaType())
+            .jdbcType(parameterMapping.getJdbcType())
+            .numericScale(parameterMapping.getNumericScale())
+            .build());
+        values.add(value);
+      }
+    }
+    BoundSql boundSql = new BoundSql(configuration, sql.toString(), parameterMappings, parameterObjects);
+    for (int i = 0; i < values.size(); i++) {
+      boundSql.setAdditionalParameter("__row_" + i, values.get(i));
+    }
+    return boundSql;
+  }
+
+}
@@ -16,16 +16,19 @@
 package org.apache.ibatis.executor;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.session.Configuration;
@@ -41,37 +44,144 @@ import org.apache.ibatis.transaction.Transaction;
  */
 public class ReuseExecutor extends BaseExecutor {
 
+  private static final Log log = LogFactory.getLog(ReuseExecutor.class);
+
+  /**
+   * Statement 的缓存，按访问顺序排列，最久没有使用的在最前面
+   */
+  private final Map<String, Statement> statementMap = new LinkedHashMap<>(16, 0.75F, true);
   /**
-   * Statement 的缓存
+   * 最多保留的 Statement 个数，0 时不限制
    */
-  private final Map<String, Statement> statementMap = new HashMap<>();
+  private final int maxStatements;
+  /**
+   * 正在执行的语句层数，嵌套查询执行时外层的 Statement 还在使用，回到最外层才淘汰
+   */
+  private int depth;
+  private long hits;
+  private long misses;
+  private long evictions;
 
   public ReuseExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
+    this.maxStatements = configuration != null ? configuration.getReuseStatementCacheSize() : 0;
   }
 
   @Override
   public int doUpdate(MappedStatement ms, Object parameter) throws SQLException {
     Configuration configuration = ms.getConfiguration();
     StatementHandler handler = configuration.newStatementHandler(this, ms, parameter, RowBounds.DEFAULT, null, null);
-    Statement stmt = prepareStatement(handler, ms.getStatementLog());
-    return handler.update(stmt);
+    depth++;
+    try {
+      Statement stmt = prepareStatement(handler, ms.getStatementLog());
+      return handler.update(stmt);
+    } finally {
+      release();
+    }
   }
 
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
     Configuration configuration = ms.getConfiguration();
     StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, resultHandler, boundSql);
-    Statement stmt = prepareStatement(handler, ms.getStatementLog());
-    return handler.query(stmt, resultHandler);
+    depth++;
+    try {
+      Statement stmt = prepareStatement(handler, ms.getStatementLog());
+      return handler.query(stmt, resultHandler);
+    } finally {
+      release();
+    }
   }
 
   @Override
   protected <E> Cursor<E> doQueryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds, BoundSql boundSql) throws SQLException {
     Configuration configuration = ms.getConfiguration();
     StatementHandler handler = configuration.newStatementHandler(wrapper, ms, parameter, rowBounds, null, boundSql);
-    Statement stmt = prepareStatement(handler, ms.getStatementLog());
-    return handler.queryCursor(stmt);
+    depth++;
+    try {
+      Statement stmt = prepareStatement(handler, ms.getStatementLog());
+      return handler.queryCursor(stmt);
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Gets the number of statements found open for the SQL to execute.
+   *
+   * @return the number of hits
+   * @since 3.5.7
+   */
+  public long getStatementCacheHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of statements that had to be prepared.
+   *
+   * @return the number of misses
+   * @since 3.5.7
+   */
+  public long getStatementCacheMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of statements closed to stay within {@link Configuration#getReuseStatementCacheSize()}.
+   *
+   * @return the number of evictions
+   * @since 3.5.7
+   */
+  public long getStatementCacheEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Gets the number of statements kept open.
+   *
+   * @return the number of statements
+   * @since 3.5.7
+   */
+  public int getStatementCacheSize() {
+    return statementMap.size();
+  }
+
+  /**
+   * 关闭时在 debug 级别输出 Statement 缓存的统计，执行器在 SqlSession 内部，外部拿不到这些计数
+   */
+  @Override
+  public void close(boolean forceRollback) {
+    if (!isClosed() && hits + misses > 0 && log.isDebugEnabled()) {
+      log.debug("Statement cache: hits=" + hits + ", misses=" + misses + ", evictions=" + evictions);
+    }
+    super.close(forceRollback);
+  }
+
+  /**
+   * 回到最外层时关闭超出上限的最久没有使用的 Statement，结果集还开着的（如游标）保留
+   */
+  private void release() {
+    if (--depth > 0 || maxStatements <= 0 || statementMap.size() <= maxStatements) {
+      return;
+    }
+    Iterator<Statement> statements = statementMap.values().iterator();
+    while (statements.hasNext() && statementMap.size() > maxStatements) {
+      Statement stmt = statements.next();
+      if (!isInUse(stmt)) {
+        statements.remove();
+        closeStatement(stmt);
+        evictions++;
+      }
+    }
+  }
+
+  private boolean isInUse(Statement stmt) {
+    try {
+      ResultSet rs = stmt.getResultSet();
+      return rs != null && !rs.isClosed();
+    } catch (SQLException e) {
+      return false;
+    }
   }
 
   /**
@@ -95,11 +205,13 @@ public class ReuseExecutor extends BaseExecutor {
     BoundSql boundSql = handler.getBoundSql();
     String sql = boundSql.getSql();
     if (hasStatementFor(sql)) {
+      hits++;
       // 优先从 statementMap 中获取 Statemete 对象
       stmt = getStatement(sql);
       // 设置事务超时时间
       applyTransactionTimeout(stmt);
     } else {
+      misses++;
       Connection connection = getConnection(statementLog);
       stmt = handler.prepare(connection, transaction.getTimeout());
       // 放入缓存中
@@ -24,13 +24,24 @@ import java.util.Properties;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.MemoryBudget;
+import org.apache.ibatis.cache.TableVersions;
+import org.apache.ibatis.cache.Weigher;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.CopyingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TableVersionCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
 
@@ -49,6 +60,8 @@ public class CacheBuilder {
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private TableVersions tableVersions;
+  private MemoryBudget memoryBudget;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -87,6 +100,33 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * Sets the table versions that make entries stale when the tables they were read from are written.
+   *
+   * @param tableVersions
+   *          the table versions, null for namespace-level invalidation
+   * @return this builder
+   * @since 3.5.7
+   */
+  public CacheBuilder tableVersions(TableVersions tableVersions) {
+    this.tableVersions = tableVersions;
+    return this;
+  }
+
+  /**
+   * Sets the memory budget shared by the caches of a configuration, which bounds this cache by the estimated size of
+   * its entries.
+   *
+   * @param memoryBudget
+   *          the budget, null for none
+   * @return this builder
+   * @since 3.5.7
+   */
+  public CacheBuilder memoryBudget(MemoryBudget memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -99,18 +139,31 @@ public class CacheBuilder {
     setCacheProperties(cache);
     // issue #352, do not apply decorators to custom caches
     // 如果是 cache 是 PerpetualCache ，则尝试添加装饰器
+    // 可能淘汰条目的各层，由 LoggingCache 的统计信息记录淘汰的个数
+    List<Cache> layers = new ArrayList<>();
+    layers.add(cache);
     if (PerpetualCache.class.equals(cache.getClass())) {
       for (Class<? extends Cache> decorator : decorators) {
+        if (LruCache.class.equals(decorator) && isWeighted()) {
+          // 按内存大小淘汰时已经是 LRU，不再按个数淘汰
+          continue;
+        }
         cache = newCacheDecoratorInstance(decorator, cache);
         // 设置被装饰之后的属性信息
         setCacheProperties(cache);
+        layers.add(cache);
       }
       // 最后添加标准的信息
-      cache = setStandardDecorators(cache);
+      cache = setStandardDecorators(cache, layers);
+    } else if (ConcurrentCache.class.equals(cache.getClass()) || OffHeapCache.class.equals(cache.getClass())) {
+      // 自带淘汰策略，不再添加淘汰装饰器
+      cache = setStandardDecorators(cache, layers);
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
       // 否则如果父类不是 LoggingCache，则会添加一层 LoggingCache 包装器
       // 并且不再理会添加的装饰器
-      cache = new LoggingCache(cache);
+      LoggingCache loggingCache = new LoggingCache(cache);
+      bindStats(layers, loggingCache.getStats());
+      cache = loggingCache;
     }
     return cache;
   }
@@ -125,27 +178,55 @@ public class CacheBuilder {
     }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, List<Cache> layers) {
+    // ConcurrentCache、OffHeapCache 本身是线程安全的，外层的装饰器也都可以并发访问
+    boolean threadSafe = cache instanceof ConcurrentCache || cache instanceof OffHeapCache;
+    // OffHeapCache 每次命中都会反序列化出新的对象，不需要再拷贝
+    boolean copying = readWrite && !(cache instanceof OffHeapCache);
     try {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
       }
+      if (isWeighted()) {
+        // 按估算的内存大小淘汰
+        cache = newWeightedDecorator(cache);
+        layers.add(cache);
+      }
       if (clearInterval != null) {
         // 如果是设置了定时清理，则添加 ScheduledCache 装饰器
         cache = new ScheduledCache(cache);
         ((ScheduledCache) cache).setClearInterval(clearInterval);
       }
-      if (readWrite) {
-        // 序列号装饰器
-        cache = new SerializedCache(cache);
+      if (properties != null && properties.getProperty("timeToLive") != null) {
+        // 每个条目单独过期
+        cache = newExpiringDecorator(cache);
+      }
+      if (copying) {
+        // 拷贝装饰器，默认通过序列化拷贝
+        cache = newCopyingDecorator(cache);
+      }
+      if (tableVersions != null) {
+        // 过期的条目在日志和阻塞装饰器看来都是未命中
+        cache = new TableVersionCache(cache, tableVersions);
       }
       // 添加日志装饰器
-      cache = new LoggingCache(cache);
+      LoggingCache loggingCache = new LoggingCache(cache);
+      bindStats(layers, loggingCache.getStats());
+      cache = loggingCache;
       // 添加
-      cache = new SynchronizedCache(cache);
+      if (!threadSafe) {
+        cache = new SynchronizedCache(cache);
+      }
       if (blocking) {
-        cache = new BlockingCache(cache);
+        BlockingCache blockingCache = new BlockingCache(cache);
+        if (properties != null) {
+          // 等待其他线程加载的最长时间
+          blockingCache.setTimeout(longProperty("blockingTimeout", BlockingCache.DEFAULT_TIMEOUT));
+          // 查询完成后马上写入，需要显式开启
+          blockingCache.setPublishBeforeCommit(Boolean.parseBoolean(properties.getProperty("blockingPublishBeforeCommit")));
+        }
+        cache = blockingCache;
       }
       return cache;
     } catch (Exception e) {
@@ -153,6 +234,79 @@ public class CacheBuilder {
     }
   }
 
+  private Cache newCopyingDecorator(Cache cache) {
+    String copyStrategy = properties == null ? null : properties.getProperty("copyStrategy");
+    if (copyStrategy == null || "serialization".equalsIgnoreCase(copyStrategy)) {
+      return new SerializedCache(cache);
+    }
+    if ("reflection".equalsIgnoreCase(copyStrategy)) {
+      return new CopyingCache(cache);
+    }
+    throw new CacheException("Unknown copy strategy '" + copyStrategy + "' for cache '" + id
+        + "'. Use 'serialization' or 'reflection'.");
+  }
+
+  private boolean isWeighted() {
+    return memoryBudget != null || properties != null
+        && (properties.getProperty("maxWeight") != null || properties.getProperty("weigher") != null);
+  }
+
+  private Cache newWeightedDecorator(Cache cache) {
+    WeightedCache weightedCache = new WeightedCache(cache);
+    if (properties != null) {
+      weightedCache.setMaxWeight(longProperty("maxWeight", 0));
+      String weigher = properties.getProperty("weigher");
+      if (weigher != null) {
+        try {
+          weightedCache.setWeigher((Weigher) Resources.classForName(weigher).getDeclaredConstructor().newInstance());
+        } catch (Exception e) {
+          throw new CacheException("Could not create weigher '" + weigher + "' for cache '" + id + "'. Cause: " + e, e);
+        }
+      }
+    }
+    if (memoryBudget != null) {
+      weightedCache.setBudget(memoryBudget);
+    }
+    return weightedCache;
+  }
+
+  private Cache newExpiringDecorator(Cache cache) {
+    ExpiringCache expiringCache = new ExpiringCache(cache);
+    expiringCache.setTimeToLive(longProperty("timeToLive", 0));
+    expiringCache.setTimeToLiveJitter(longProperty("timeToLiveJitter", 0));
+    expiringCache.setStaleWhileRevalidate(longProperty("staleWhileRevalidate", 0));
+    return expiringCache;
+  }
+
+  private long longProperty(String name, long defaultValue) {
+    String value = properties.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long result = Long.parseLong(value.trim());
+      if (result >= 0) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // 下面抛出异常
+    }
+    throw new CacheException("Invalid value '" + value + "' of property '" + name + "' for cache '" + id
+        + "'. Use a number of milliseconds.");
+  }
+
+  /**
+   * 有 stats 属性的缓存在淘汰条目时计数
+   */
+  private void bindStats(List<Cache> layers, CacheStats stats) {
+    for (Cache layer : layers) {
+      MetaObject metaCache = SystemMetaObject.forObject(layer);
+      if (metaCache.hasSetter("stats") && CacheStats.class.equals(metaCache.getSetterType("stats"))) {
+        metaCache.setValue("stats", stats);
+      }
+    }
+  }
+
   private void setCacheProperties(Cache cache) {
     if (properties != null) {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
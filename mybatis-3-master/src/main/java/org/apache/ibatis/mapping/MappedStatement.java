@@ -17,9 +17,12 @@ package org.apache.ibatis.mapping;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -56,6 +59,26 @@ public final class MappedStatement {
   private Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  /**
+   * 声明的表，查询语句为读取的表，增删改语句为写入的表，null 表示从 SQL 中获取
+   */
+  private Set<String> tables;
+  /**
+   * 最近一次从 SQL 中获取的表，动态 SQL 生成相同的 SQL 时不再重新解析
+   */
+  private volatile SqlTables lastSqlTables;
+  /**
+   * 最近一次执行的 SQL 对应的缓存 key 前缀，SQL 相同的执行共享语句 id 和 SQL 字符串
+   */
+  private volatile CacheKeyPrefix lastCacheKeyPrefix;
+  /**
+   * 是否为按 id 查询单个对象的语句，开启实体缓存时可以直接从缓存中返回对象
+   */
+  private boolean idLookup;
+  /**
+   * 是否在构建 SqlSessionFactory 时预先执行，把结果放入二级缓存
+   */
+  private boolean warm;
 
   MappedStatement() {
     // constructor disabled
@@ -174,6 +197,55 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * Declares the tables that the statement reads, for a select, or writes, for an insert, update or delete.
+     *
+     * @param tables
+     *          table names that separate with comma(','), null to find them in the SQL
+     * @return the builder
+     * @since 3.5.7
+     */
+    public Builder tables(String tables) {
+      String[] names = delimitedStringToArray(tables);
+      if (names == null) {
+        mappedStatement.tables = null;
+      } else {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String name : names) {
+          normalized.add(TableNameParser.normalize(name));
+        }
+        mappedStatement.tables = Collections.unmodifiableSet(normalized);
+      }
+      return this;
+    }
+
+    /**
+     * Marks the statement as selecting the single row of its result map whose id is given by the parameter, so that
+     * it can be served from the entity cache.
+     *
+     * @param idLookup
+     *          true if the statement is an id lookup
+     * @return the builder
+     * @since 3.5.7
+     */
+    public Builder idLookup(boolean idLookup) {
+      mappedStatement.idLookup = idLookup;
+      return this;
+    }
+
+    /**
+     * Marks the statement as preloaded into the second level cache when the session factory is built.
+     *
+     * @param warm
+     *          true if the statement is warmed up
+     * @return the builder
+     * @since 3.5.7
+     */
+    public Builder warm(boolean warm) {
+      mappedStatement.warm = warm;
+      return this;
+    }
+
     /**
      * Resul sets.
      *
@@ -301,6 +373,90 @@ public final class MappedStatement {
     return resultSets;
   }
 
+  /**
+   * Returns whether this statement selects the single row of its result map whose id is given by the parameter.
+   *
+   * @return true if the statement is an id lookup
+   * @since 3.5.7
+   */
+  public boolean isIdLookup() {
+    return idLookup;
+  }
+
+  /**
+   * Returns whether this statement is preloaded into the second level cache when the session factory is built.
+   *
+   * @return true if the statement is warmed up
+   * @since 3.5.7
+   */
+  public boolean isWarm() {
+    return warm;
+  }
+
+  /**
+   * Gets the tables declared for this statement.
+   *
+   * @return the lower case table names, or null if not declared
+   * @since 3.5.7
+   */
+  public Set<String> getDeclaredTables() {
+    return tables;
+  }
+
+  /**
+   * Gets the tables that this statement reads, for a select, or writes, for an insert, update or delete. Tables that
+   * are not declared are found in the SQL.
+   *
+   * @param boundSql
+   *          the SQL of an execution of this statement
+   * @return the lower case table names, or null if they are unknown
+   * @since 3.5.7
+   */
+  public Set<String> getTables(BoundSql boundSql) {
+    if (tables != null) {
+      return tables;
+    }
+    String sql = boundSql.getSql();
+    SqlTables last = lastSqlTables;
+    if (last != null && last.sql.equals(sql)) {
+      return last.tables;
+    }
+    Set<String> found;
+    if (statementType == StatementType.CALLABLE) {
+      found = null;
+    } else if (sqlCommandType == SqlCommandType.SELECT) {
+      found = TableNameParser.readTables(sql);
+    } else if (sqlCommandType == SqlCommandType.INSERT || sqlCommandType == SqlCommandType.UPDATE
+        || sqlCommandType == SqlCommandType.DELETE) {
+      found = TableNameParser.writtenTables(sql);
+    } else {
+      found = null;
+    }
+    lastSqlTables = new SqlTables(sql, found);
+    return found;
+  }
+
+  /**
+   * Gets a cache key holding the id of this statement and a SQL, to be shared by the cache keys of the executions
+   * of this SQL. The key of the last SQL is kept, so a static SQL always gets the same key.
+   *
+   * @param sql
+   *          the SQL of an execution of this statement
+   * @return the cache key prefix
+   * @since 3.5.7
+   */
+  public CacheKey getCacheKeyPrefix(String sql) {
+    CacheKeyPrefix last = lastCacheKeyPrefix;
+    if (last != null && last.sql.equals(sql)) {
+      return last.key;
+    }
+    CacheKey key = new CacheKey();
+    key.update(id);
+    key.update(sql);
+    lastCacheKeyPrefix = new CacheKeyPrefix(sql, key);
+    return key;
+  }
+
   public BoundSql getBoundSql(Object parameterObject) {
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
     List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -330,4 +486,29 @@ public final class MappedStatement {
     }
   }
 
+  /**
+   * 一条 SQL 以及从中获取的表
+   */
+  private static final class SqlTables {
+
+    private final String sql;
+    private final Set<String> tables;
+
+    SqlTables(String sql, Set<String> tables) {
+      this.sql = sql;
+      this.tables = tables;
+    }
+  }
+
+  private static final class CacheKeyPrefix {
+
+    private final String sql;
+    private final CacheKey key;
+
+    CacheKeyPrefix(String sql, CacheKey key) {
+      this.sql = sql;
+      this.key = key;
+    }
+  }
+
 }
@@ -0,0 +1,320 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 从 SQL 中找出语句读写的表，用于按表失效二级缓存
+ * Finds the tables that a SQL statement reads or writes, for table-level invalidation of the second-level cache.
+ * <p>
+ * This is a scan for the tables after FROM, JOIN, INTO, UPDATE and similar keywords, not a full SQL parser. Finding
+ * a table that is not one only invalidates more than needed. When a statement cannot be understood, the tables are
+ * unknown and the caller falls back to invalidating everything. Views and tables used inside stored procedures
+ * cannot be found and must be declared.
+ */
+final class TableNameParser {
+
+  /**
+   * 不可能是表名或别名的关键字
+   */
+  private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+      "SELECT", "FROM", "WHERE", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "NATURAL", "STRAIGHT_JOIN",
+      "ON", "USING", "GROUP", "ORDER", "BY", "HAVING", "LIMIT", "OFFSET", "FETCH", "UNION", "INTERSECT", "EXCEPT",
+      "MINUS", "VALUES", "VALUE", "SET", "FOR", "WINDOW", "RETURNING", "INTO", "AS", "WITH", "LATERAL", "ONLY",
+      "PARTITION", "TABLESAMPLE", "CONNECT", "START", "QUALIFY", "OUTPUT", "USE", "FORCE", "IGNORE", "DEFAULT", "WHEN",
+      "THEN", "LOCK", "ROWS", "ROW", "KEY", "DUPLICATE", "CONFLICT", "DO", "AND", "OR", "NOT", "IS", "NULL", "UPDATE",
+      "DELETE", "INSERT", "MERGE", "REPLACE", "UPSERT", "TRUNCATE", "TABLE", "LOW_PRIORITY", "HIGH_PRIORITY",
+      "DELAYED", "QUICK", "TOP", "DISTINCT", "ALL"));
+
+  /**
+   * 写语句可以使用的开头关键字，其他语句（存储过程、DDL 等）写了哪些表是未知的
+   */
+  private static final Set<String> STATEMENT_KEYWORDS = new HashSet<>(Arrays.asList(
+      "SELECT", "WITH", "INSERT", "UPDATE", "DELETE", "MERGE", "REPLACE", "UPSERT", "TRUNCATE"));
+
+  /**
+   * 表名前面可能出现的修饰词
+   */
+  private static final Set<String> MODIFIERS = new HashSet<>(Arrays.asList(
+      "ONLY", "LOW_PRIORITY", "HIGH_PRIORITY", "DELAYED", "QUICK", "IGNORE", "TABLE", "INTO", "OVERWRITE"));
+
+  /**
+   * JOIN 前面可能出现的关键字
+   */
+  private static final Set<String> JOIN_WORDS = new HashSet<>(Arrays.asList(
+      "INNER", "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "NATURAL"));
+
+  private TableNameParser() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Finds the tables that a query reads.
+   *
+   * @param sql
+   *          the SQL
+   * @return the lower case table names, or null if none was found
+   */
+  static Set<String> readTables(String sql) {
+    List<Token> tokens = tokenize(sql);
+    if (tokens == null) {
+      return null;
+    }
+    Set<String> tables = new LinkedHashSet<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (token.is("FROM")) {
+        readTableList(tokens, i + 1, true, tables);
+      } else if (token.is("JOIN") || token.is("STRAIGHT_JOIN")) {
+        readTableList(tokens, i + 1, false, tables);
+      }
+    }
+    return tables.isEmpty() ? null : Collections.unmodifiableSet(tables);
+  }
+
+  /**
+   * Finds the tables that an insert, update or delete writes.
+   *
+   * @param sql
+   *          the SQL
+   * @return the lower case table names, or null if they are unknown
+   */
+  static Set<String> writtenTables(String sql) {
+    List<Token> tokens = tokenize(sql);
+    if (tokens == null) {
+      return null;
+    }
+    Set<String> tables = new LinkedHashSet<>();
+    boolean statementStart = true;
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (token.is(";")) {
+        statementStart = true;
+        continue;
+      }
+      if (statementStart && !token.isAny(STATEMENT_KEYWORDS)) {
+        // 存储过程、DDL 等
+        return null;
+      }
+      statementStart = false;
+      if (token.is("INSERT") || token.is("REPLACE") || token.is("UPSERT") || token.is("MERGE")
+          || token.is("TRUNCATE")) {
+        readTableList(tokens, i + 1, false, tables);
+      } else if (token.is("UPDATE")) {
+        // UPDATE a JOIN b ... SET 中的表都算作写入
+        readJoinedTables(tokens, i + 1, tables);
+      } else if (token.is("DELETE")) {
+        // DELETE a, b FROM a JOIN b 以及 DELETE FROM a
+        int next = readTableList(tokens, i + 1, true, tables);
+        if (next < tokens.size() && tokens.get(next).is("FROM")) {
+          readJoinedTables(tokens, next + 1, tables);
+        }
+      }
+    }
+    return tables.isEmpty() ? null : Collections.unmodifiableSet(tables);
+  }
+
+  /**
+   * Normalizes a declared table name in the same way as the names found in SQL.
+   *
+   * @param name
+   *          a table name, possibly quoted or qualified
+   * @return the lower case name without quotes and qualifiers
+   */
+  static String normalize(String name) {
+    List<Token> tokens = tokenize(name.trim());
+    if (tokens == null || tokens.size() != 1 || tokens.get(0).name == null) {
+      return name.trim().toLowerCase(Locale.ENGLISH);
+    }
+    return tokens.get(0).name;
+  }
+
+  /**
+   * 读取表的列表以及之后 JOIN 的表
+   */
+  private static void readJoinedTables(List<Token> tokens, int start, Set<String> tables) {
+    int i = readTableList(tokens, start, true, tables);
+    while (i < tokens.size() && (tokens.get(i).is("JOIN") || tokens.get(i).isAny(JOIN_WORDS))) {
+      i = tokens.get(i).is("JOIN") ? readTableList(tokens, i + 1, false, tables) : i + 1;
+    }
+  }
+
+  /**
+   * 读取以逗号分隔的表及其别名，子查询跳过（其中的 FROM 会被单独扫描），返回之后第一个 token 的位置
+   */
+  private static int readTableList(List<Token> tokens, int start, boolean commaSeparated, Set<String> tables) {
+    int i = start;
+    while (i < tokens.size()) {
+      Token token = tokens.get(i);
+      while (token.isAny(MODIFIERS) && i + 1 < tokens.size()) {
+        token = tokens.get(++i);
+      }
+      if (token.is("(")) {
+        i = skipParentheses(tokens, i);
+      } else if (token.name != null && !token.isKeyword()) {
+        tables.add(token.name);
+        i++;
+      } else {
+        return i;
+      }
+      // 别名
+      if (i < tokens.size() && tokens.get(i).is("AS")) {
+        i += 2;
+      } else if (i < tokens.size() && tokens.get(i).name != null && !tokens.get(i).isKeyword()) {
+        i++;
+      }
+      if (!commaSeparated || i >= tokens.size() || !tokens.get(i).is(",")) {
+        return i;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipParentheses(List<Token> tokens, int open) {
+    int depth = 0;
+    for (int i = open; i < tokens.size(); i++) {
+      if (tokens.get(i).is("(")) {
+        depth++;
+      } else if (tokens.get(i).is(")") && --depth == 0) {
+        return i + 1;
+      }
+    }
+    return tokens.size();
+  }
+
+  /**
+   * 分词，跳过字符串和注释。名称 token 保存小写的最后一段（去掉 schema 和引号），遇到 JDBC 转义语法时返回 null
+   */
+  private static List<Token> tokenize(String sql) {
+    List<Token> tokens = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '\'') {
+        i = skipQuoted(sql, i, '\'');
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '{') {
+        // {call ...} 之类的 JDBC 转义语法
+        return null;
+      } else if (isNameStart(c)) {
+        int start = i;
+        String last = null;
+        String word = null;
+        boolean quoted = false;
+        while (true) {
+          char ch = sql.charAt(i);
+          if (ch == '"' || ch == '`' || ch == '[') {
+            char close = ch == '[' ? ']' : ch;
+            int end = skipQuoted(sql, i, close);
+            last = sql.substring(i + 1, Math.max(i + 1, end - 1));
+            quoted = true;
+            i = end;
+          } else {
+            int end = i;
+            while (end < length && isNamePart(sql.charAt(end))) {
+              end++;
+            }
+            last = sql.substring(i, end);
+            quoted = false;
+            i = end;
+          }
+          if (i < length - 1 && sql.charAt(i) == '.' && isNameStart(sql.charAt(i + 1))) {
+            i++;
+          } else {
+            break;
+          }
+        }
+        if (!quoted && i == start + last.length()) {
+          word = last.toUpperCase(Locale.ENGLISH);
+        }
+        tokens.add(new Token(word, Character.isDigit(last.isEmpty() ? '0' : last.charAt(0)) && !quoted
+            ? null : last.toLowerCase(Locale.ENGLISH)));
+      } else {
+        tokens.add(new Token(String.valueOf(c), null));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static int skipQuoted(String sql, int open, char close) {
+    int i = open + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == close) {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == close && close != ']') {
+          // 转义的引号
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isNameStart(char c) {
+    return c == '"' || c == '`' || c == '[' || isNamePart(c);
+  }
+
+  private static boolean isNamePart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '@';
+  }
+
+  /**
+   * word 是未加引号的单个单词（大写），name 是可以作为表名的名称（小写）
+   */
+  private static final class Token {
+
+    private final String word;
+    private final String name;
+
+    Token(String word, String name) {
+      this.word = word;
+      this.name = name;
+    }
+
+    boolean is(String keyword) {
+      return keyword.equals(word);
+    }
+
+    boolean isAny(Set<String> keywords) {
+      return word != null && keywords.contains(word);
+    }
+
+    boolean isKeyword() {
+      return isAny(KEYWORDS);
+    }
+  }
+
+}
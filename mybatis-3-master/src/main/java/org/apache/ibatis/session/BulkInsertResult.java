@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.ibatis.executor.BatchResult;
+
+/**
+ * 批量插入的汇总结果：行数、更新数、执行和提交次数以及耗时
+ * The aggregate result of {@link SqlSession#insertAll(String, Iterable, int, int)}.
+ *
+ * @since 3.5.7
+ */
+public class BulkInsertResult {
+
+  /**
+   * insertAll 默认每多少行执行一次批处理
+   */
+  static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private final long rows;
+  private final long updateCount;
+  private final int flushes;
+  private final int commits;
+  private final long elapsedNanos;
+  private final long flushNanos;
+
+  public BulkInsertResult(long rows, long updateCount, int flushes, int commits, long elapsedNanos, long flushNanos) {
+    this.rows = rows;
+    this.updateCount = updateCount;
+    this.flushes = flushes;
+    this.commits = commits;
+    this.elapsedNanos = elapsedNanos;
+    this.flushNanos = flushNanos;
+  }
+
+  /**
+   * Gets the number of parameter objects that were inserted.
+   *
+   * @return the number of rows
+   */
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * Gets the number of rows reported as affected by the database. Rows whose count the driver does not report
+   * ({@code Statement.SUCCESS_NO_INFO}) are not included.
+   *
+   * @return the update count
+   */
+  public long getUpdateCount() {
+    return updateCount;
+  }
+
+  /**
+   * Gets the number of times the pending batch statements were executed.
+   *
+   * @return the number of flushes
+   */
+  public int getFlushes() {
+    return flushes;
+  }
+
+  /**
+   * Gets the number of intermediate commits.
+   *
+   * @return the number of commits
+   */
+  public int getCommits() {
+    return commits;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+  }
+
+  /**
+   * Gets the time spent executing the batch statements, included in the elapsed time.
+   *
+   * @return the time in milliseconds
+   */
+  public long getFlushMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(flushNanos);
+  }
+
+  /**
+   * 批处理结果中的更新数之和，驱动没有返回更新数的行不计入
+   */
+  static long updateCount(List<BatchResult> batchResults) {
+    long updateCount = 0;
+    for (BatchResult batchResult : batchResults) {
+      for (int count : batchResult.getUpdateCounts()) {
+        if (count >= 0) {
+          updateCount += count;
+        }
+      }
+    }
+    return updateCount;
+  }
+
+  static <T> Iterable<T> iterable(Stream<T> stream) {
+    return stream::iterator;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkInsertResult [rows=" + rows + ", updateCount=" + updateCount + ", flushes=" + flushes + ", commits="
+        + commits + ", elapsedMillis=" + getElapsedMillis() + ", flushMillis=" + getFlushMillis() + "]";
+  }
+
+}
@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * 构建 SqlSessionFactory 时并行执行标记为 warm 的语句，把结果放入二级缓存，并按配置的间隔定时刷新
+ * Preloads the statements marked as warm into the second level cache and refreshes them on a schedule.
+ *
+ * @since 3.5.7
+ */
+final class CacheWarmer {
+
+  private static final Log log = LogFactory.getLog(CacheWarmer.class);
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "mybatis-cache-warmer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * 已经安排了定时刷新的 Configuration，同一个 Configuration 多次构建 SqlSessionFactory 时只刷新一次
+   */
+  private static final Map<Configuration, Boolean> scheduled = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private CacheWarmer() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Loads the warm statements of the configuration in parallel and waits until they are in the cache.
+   *
+   * @param configuration
+   *          the configuration
+   */
+  static void warmUp(Configuration configuration) {
+    List<MappedStatement> statements = warmStatements(configuration);
+    if (statements.isEmpty()) {
+      return;
+    }
+    int threads = Math.min(statements.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> loads = new ArrayList<>(statements.size());
+      for (MappedStatement ms : statements) {
+        loads.add(pool.submit(() -> load(configuration, ms)));
+      }
+      for (Future<?> load : loads) {
+        load.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ExecutorException("Interrupted while warming up the caches", e);
+    } catch (ExecutionException e) {
+      throw new ExecutorException("Error warming up the caches. Cause: " + e.getCause(), e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    long interval = configuration.getCacheWarmupRefreshInterval();
+    if (interval > 0 && scheduled.put(configuration, Boolean.TRUE) == null) {
+      new Refresh(configuration).schedule(interval);
+    }
+  }
+
+  /**
+   * 有二级缓存的 warm 语句，同一个语句在 mappedStatements 中以全名和短名各出现一次
+   */
+  private static List<MappedStatement> warmStatements(Configuration configuration) {
+    Environment environment = configuration.getEnvironment();
+    if (environment == null || !configuration.isCacheEnabled()) {
+      return new ArrayList<>();
+    }
+    Map<MappedStatement, Boolean> statements = new IdentityHashMap<>();
+    for (Object value : configuration.getMappedStatements()) {
+      // 有歧义的短名对应的是 Ambiguity
+      if (value instanceof MappedStatement) {
+        MappedStatement ms = (MappedStatement) value;
+        if (ms.isWarm() && ms.getCache() != null) {
+          statements.put(ms, Boolean.TRUE);
+        }
+      }
+    }
+    return new ArrayList<>(statements.keySet());
+  }
+
+  /**
+   * 在独立的事务中执行语句，提交后结果进入二级缓存，失败时只记录警告
+   */
+  private static void load(Configuration configuration, MappedStatement ms) {
+    Environment environment = configuration.getEnvironment();
+    Transaction tx = environment.getTransactionFactory().newTransaction(environment.getDataSource(), null, false);
+    Executor executor = configuration.newExecutor(tx, ExecutorType.SIMPLE);
+    boolean committed = false;
+    try {
+      executor.reload(ms, null);
+      executor.commit(true);
+      committed = true;
+    } catch (Exception e) {
+      log.warn("Could not warm up the cache of statement " + ms.getId() + ". Cause: " + e);
+    } finally {
+      executor.close(!committed);
+    }
+  }
+
+  /**
+   * 定时刷新，只弱引用 Configuration，Configuration 被回收后停止
+   */
+  private static class Refresh implements Runnable {
+
+    private final WeakReference<Configuration> configuration;
+    private ScheduledFuture<?> future;
+
+    Refresh(Configuration configuration) {
+      this.configuration = new WeakReference<>(configuration);
+    }
+
+    synchronized void schedule(long interval) {
+      future = scheduler.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+      Configuration config = configuration.get();
+      if (config == null) {
+        synchronized (this) {
+          future.cancel(false);
+        }
+        return;
+      }
+      for (MappedStatement ms : warmStatements(config)) {
+        load(config, ms);
+      }
+    }
+  }
+
+}
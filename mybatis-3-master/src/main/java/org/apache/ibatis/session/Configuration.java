@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 
 import org.apache.ibatis.binding.MapperRegistry;
@@ -34,10 +35,18 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.MemoryBudget;
+import org.apache.ibatis.cache.TableVersions;
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.CoalescingCacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.LoopbackCacheInvalidationBus;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
@@ -110,6 +119,8 @@ public class Configuration {
   protected boolean useGeneratedKeys;
   protected boolean useColumnLabel = true;
   protected boolean cacheEnabled = true;
+  protected boolean entityCacheEnabled;
+  protected boolean cacheMBeansEnabled;
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
@@ -119,13 +130,49 @@ public class Configuration {
   protected Class<? extends Log> logImpl;
   protected Class<? extends VFS> vfsImpl;
   protected Class<?> defaultSqlProviderType;
+  protected Class<? extends Cache> defaultCacheType = PerpetualCache.class;
   protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+  protected int localCacheSize;
+  protected long localCacheMaxWeight;
+  protected CacheInvalidationScope cacheInvalidationScope = CacheInvalidationScope.NAMESPACE;
+  /**
+   * 所有二级缓存共享的内存预算，为 null 时不限制
+   */
+  protected MemoryBudget memoryBudget;
+  protected long cacheInvalidationCoalesceWindow;
+  protected CacheInvalidationBus cacheInvalidationBus;
+  /**
+   * 定时重新执行 warm 语句的间隔（毫秒），0 时不刷新
+   */
+  protected long cacheWarmupRefreshInterval;
   protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
   protected Set<String> lazyLoadTriggerMethods = new HashSet<>(Arrays.asList("equals", "clone", "hashCode", "toString"));
   protected Integer defaultStatementTimeout;
   protected Integer defaultFetchSize;
   protected ResultSetType defaultResultSetType;
   protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
+  /**
+   * BATCH 执行器是否为每条不同的 SQL 保留一个 Statement，交替执行的语句也能合并到各自的批处理中
+   */
+  protected boolean batchGroupBySql;
+  /**
+   * BATCH 执行器自动执行批处理的阈值：单个语句的行数、全部未执行的行数和估算的字节数，0 时不限制
+   */
+  protected int batchMaxStatementRows;
+  protected int batchMaxRows;
+  protected long batchMaxBytes;
+  /**
+   * 批处理执行并回填主键后是否丢弃 BatchResult 中的参数对象
+   */
+  protected boolean batchDiscardParameterObjects;
+  /**
+   * BATCH 执行器把简单的单行 INSERT 合并为多行 INSERT 时每条语句的最大行数，小于 2 时不合并
+   */
+  protected int batchMultiRowInsertSize;
+  /**
+   * REUSE 执行器最多保留的 Statement 个数，0 时不限制
+   */
+  protected int reuseStatementCacheSize;
   protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
   protected AutoMappingUnknownColumnBehavior autoMappingUnknownColumnBehavior = AutoMappingUnknownColumnBehavior.NONE;
 
@@ -157,6 +204,10 @@ public class Configuration {
           ". please check " + savedValue.getResource() + " and " + targetValue.getResource());
   // StrictMap
   protected final Map<String, Cache> caches = new StrictMap<>("Caches collection");
+  /**
+   * 每个二级缓存的表版本号，key 为缓存的 id
+   */
+  protected final Map<String, TableVersions> tableVersions = new ConcurrentHashMap<>();
   protected final Map<String, ResultMap> resultMaps = new StrictMap<>("Result Maps collection");
   protected final Map<String, ParameterMap> parameterMaps = new StrictMap<>("Parameter Maps collection");
   protected final Map<String, KeyGenerator> keyGenerators = new StrictMap<>("Key Generators collection");
@@ -190,10 +241,13 @@ public class Configuration {
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT", ConcurrentCache.class);
+    typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("LOOPBACK", LoopbackCacheInvalidationBus.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -267,6 +321,29 @@ public class Configuration {
     this.defaultSqlProviderType = defaultSqlProviderType;
   }
 
+  /**
+   * Gets the cache implementation used when a <code>&lt;cache/&gt;</code> element or a
+   * {@link org.apache.ibatis.annotations.CacheNamespace} does not specify one.
+   *
+   * @return the default cache implementation
+   * @since 3.5.7
+   */
+  public Class<? extends Cache> getDefaultCacheType() {
+    return defaultCacheType;
+  }
+
+  /**
+   * Sets the cache implementation used when a <code>&lt;cache/&gt;</code> element or a
+   * {@link org.apache.ibatis.annotations.CacheNamespace} does not specify one.
+   *
+   * @param defaultCacheType
+   *          the default cache implementation, {@link PerpetualCache} if null
+   * @since 3.5.7
+   */
+  public void setDefaultCacheType(Class<? extends Cache> defaultCacheType) {
+    this.defaultCacheType = defaultCacheType == null ? PerpetualCache.class : defaultCacheType;
+  }
+
   public boolean isCallSettersOnNulls() {
     return callSettersOnNulls;
   }
@@ -443,6 +520,163 @@ public class Configuration {
     this.defaultExecutorType = defaultExecutorType;
   }
 
+  /**
+   * Returns whether the batch executor keeps one statement per distinct SQL instead of only reusing the statement of
+   * the previous update.
+   *
+   * @return true if the batches are grouped by SQL
+   * @since 3.5.7
+   */
+  public boolean isBatchGroupBySql() {
+    return batchGroupBySql;
+  }
+
+  /**
+   * Sets whether the batch executor keeps one statement per distinct insert SQL, so that interleaved inserts are each
+   * batched. The batches are executed in the order their SQL was first seen. Updates and deletes are only batched with
+   * the statement immediately preceding them, as they may change the same rows.
+   *
+   * @param batchGroupBySql
+   *          true to group the batches by SQL
+   * @since 3.5.7
+   */
+  public void setBatchGroupBySql(boolean batchGroupBySql) {
+    this.batchGroupBySql = batchGroupBySql;
+  }
+
+  /**
+   * Gets the number of rows of one statement at which the batch executor executes the pending batches.
+   *
+   * @return the number of rows, 0 if unbounded
+   * @since 3.5.7
+   */
+  public int getBatchMaxStatementRows() {
+    return batchMaxStatementRows;
+  }
+
+  /**
+   * Sets the number of rows of one statement at which the batch executor executes the pending batches.
+   *
+   * @param batchMaxStatementRows
+   *          the number of rows, 0 for unbounded
+   * @since 3.5.7
+   */
+  public void setBatchMaxStatementRows(int batchMaxStatementRows) {
+    this.batchMaxStatementRows = batchMaxStatementRows;
+  }
+
+  /**
+   * Gets the number of pending rows, all statements together, at which the batch executor executes the batches.
+   *
+   * @return the number of rows, 0 if unbounded
+   * @since 3.5.7
+   */
+  public int getBatchMaxRows() {
+    return batchMaxRows;
+  }
+
+  /**
+   * Sets the number of pending rows, all statements together, at which the batch executor executes the batches.
+   *
+   * @param batchMaxRows
+   *          the number of rows, 0 for unbounded
+   * @since 3.5.7
+   */
+  public void setBatchMaxRows(int batchMaxRows) {
+    this.batchMaxRows = batchMaxRows;
+  }
+
+  /**
+   * Gets the estimated size of the pending parameters at which the batch executor executes the batches.
+   *
+   * @return the size in bytes, 0 if unbounded
+   * @since 3.5.7
+   */
+  public long getBatchMaxBytes() {
+    return batchMaxBytes;
+  }
+
+  /**
+   * Sets the estimated size of the pending parameters at which the batch executor executes the batches.
+   *
+   * @param batchMaxBytes
+   *          the size in bytes, 0 for unbounded
+   * @since 3.5.7
+   */
+  public void setBatchMaxBytes(long batchMaxBytes) {
+    this.batchMaxBytes = batchMaxBytes;
+  }
+
+  /**
+   * Returns whether the batch results drop their parameter objects once the batch is executed and the generated keys
+   * are assigned.
+   *
+   * @return true if the parameter objects are dropped
+   * @since 3.5.7
+   */
+  public boolean isBatchDiscardParameterObjects() {
+    return batchDiscardParameterObjects;
+  }
+
+  /**
+   * Sets whether the batch results drop their parameter objects once the batch is executed and the generated keys
+   * are assigned, so that the memory used by a large import does not grow with the number of rows. The results of the
+   * batches executed automatically on a threshold are then folded into one result per statement, whose update counts
+   * hold a single element: the number of rows reported as updated.
+   *
+   * @param batchDiscardParameterObjects
+   *          true to drop the parameter objects
+   * @since 3.5.7
+   */
+  public void setBatchDiscardParameterObjects(boolean batchDiscardParameterObjects) {
+    this.batchDiscardParameterObjects = batchDiscardParameterObjects;
+  }
+
+  /**
+   * Gets the maximum number of rows of the multi-row inserts into which the batch executor folds batched single row
+   * inserts.
+   *
+   * @return the number of rows, 0 if inserts are not rewritten
+   * @since 3.5.7
+   */
+  public int getBatchMultiRowInsertSize() {
+    return batchMultiRowInsertSize;
+  }
+
+  /**
+   * Sets the maximum number of rows of the multi-row inserts into which the batch executor folds batched single row
+   * inserts. Each insert holds a power of two rows, so that only a few distinct statements are prepared.
+   *
+   * @param batchMultiRowInsertSize
+   *          the number of rows, 0 to execute the inserts as JDBC batches
+   * @since 3.5.7
+   */
+  public void setBatchMultiRowInsertSize(int batchMultiRowInsertSize) {
+    this.batchMultiRowInsertSize = batchMultiRowInsertSize;
+  }
+
+  /**
+   * Gets the maximum number of statements kept open by the reuse executor.
+   *
+   * @return the maximum number of statements, 0 if not bounded
+   * @since 3.5.7
+   */
+  public int getReuseStatementCacheSize() {
+    return reuseStatementCacheSize;
+  }
+
+  /**
+   * Sets the maximum number of statements kept open by the reuse executor. The least recently used statements are
+   * closed once each statement and its nested queries complete.
+   *
+   * @param reuseStatementCacheSize
+   *          the maximum number of statements, 0 for no bound
+   * @since 3.5.7
+   */
+  public void setReuseStatementCacheSize(int reuseStatementCacheSize) {
+    this.reuseStatementCacheSize = reuseStatementCacheSize;
+  }
+
   public boolean isCacheEnabled() {
     return cacheEnabled;
   }
@@ -451,6 +685,52 @@ public class Configuration {
     this.cacheEnabled = cacheEnabled;
   }
 
+  /**
+   * Gets whether the second-level cache also keeps the mapped objects of query results by id, to serve statements
+   * marked as id lookups.
+   *
+   * @return true if the entity cache is enabled
+   * @since 3.5.7
+   */
+  public boolean isEntityCacheEnabled() {
+    return entityCacheEnabled;
+  }
+
+  /**
+   * Sets whether the second-level cache also keeps the mapped objects of query results by id, to serve statements
+   * marked as id lookups.
+   *
+   * @param entityCacheEnabled
+   *          true to enable the entity cache
+   * @since 3.5.7
+   */
+  public void setEntityCacheEnabled(boolean entityCacheEnabled) {
+    this.entityCacheEnabled = entityCacheEnabled;
+  }
+
+  /**
+   * Gets whether the statistics of the second-level caches are exported as JMX MBeans.
+   *
+   * @return true if the statistics are exported
+   * @since 3.5.7
+   */
+  public boolean isCacheMBeansEnabled() {
+    return cacheMBeansEnabled;
+  }
+
+  /**
+   * Sets whether the statistics of the second-level caches are exported as JMX MBeans, named
+   * {@code org.apache.ibatis:type=CacheStats,environment=<environment id>,name=<cache id>}. Set it before adding
+   * mappers.
+   *
+   * @param cacheMBeansEnabled
+   *          true to export the statistics
+   * @since 3.5.7
+   */
+  public void setCacheMBeansEnabled(boolean cacheMBeansEnabled) {
+    this.cacheMBeansEnabled = cacheMBeansEnabled;
+  }
+
   public Integer getDefaultStatementTimeout() {
     return defaultStatementTimeout;
   }
@@ -517,6 +797,209 @@ public class Configuration {
     this.localCacheScope = localCacheScope;
   }
 
+  /**
+   * Gets the maximum number of entries of the local cache of a session.
+   *
+   * @return the maximum number of entries, 0 if not bounded
+   * @since 3.5.7
+   */
+  public int getLocalCacheSize() {
+    return localCacheSize;
+  }
+
+  /**
+   * Sets the maximum number of entries of the local cache of a session. The least recently used entries are evicted
+   * after each query.
+   *
+   * @param localCacheSize
+   *          the maximum number of entries, 0 for no bound
+   * @since 3.5.7
+   */
+  public void setLocalCacheSize(int localCacheSize) {
+    this.localCacheSize = localCacheSize;
+  }
+
+  /**
+   * Gets the maximum estimated size of the entries of the local cache of a session.
+   *
+   * @return the maximum size in bytes, 0 if not bounded
+   * @since 3.5.7
+   */
+  public long getLocalCacheMaxWeight() {
+    return localCacheMaxWeight;
+  }
+
+  /**
+   * Sets the maximum estimated size of the entries of the local cache of a session. The least recently used entries
+   * are evicted after each query.
+   *
+   * @param localCacheMaxWeight
+   *          the maximum size in bytes, 0 for no bound
+   * @since 3.5.7
+   */
+  public void setLocalCacheMaxWeight(long localCacheMaxWeight) {
+    this.localCacheMaxWeight = localCacheMaxWeight;
+  }
+
+  /**
+   * Gets what an insert, update or delete invalidates in the second-level cache.
+   *
+   * @return the cache invalidation scope
+   * @since 3.5.7
+   */
+  public CacheInvalidationScope getCacheInvalidationScope() {
+    return cacheInvalidationScope;
+  }
+
+  /**
+   * Sets what an insert, update or delete invalidates in the second-level cache. Set it before adding mappers.
+   *
+   * @param cacheInvalidationScope
+   *          the cache invalidation scope
+   * @since 3.5.7
+   */
+  public void setCacheInvalidationScope(CacheInvalidationScope cacheInvalidationScope) {
+    this.cacheInvalidationScope = cacheInvalidationScope;
+  }
+
+  /**
+   * Gets the time during which the invalidations sent to the other nodes are merged into one message.
+   *
+   * @return the time in milliseconds, 0 if not merged
+   * @since 3.5.7
+   */
+  public long getCacheInvalidationCoalesceWindow() {
+    return cacheInvalidationCoalesceWindow;
+  }
+
+  /**
+   * Sets the time during which the invalidations sent to the other nodes are merged into one message. Set it before
+   * the cache invalidation bus.
+   *
+   * @param cacheInvalidationCoalesceWindow
+   *          the time in milliseconds, 0 to send a message per commit
+   * @since 3.5.7
+   */
+  public void setCacheInvalidationCoalesceWindow(long cacheInvalidationCoalesceWindow) {
+    this.cacheInvalidationCoalesceWindow = cacheInvalidationCoalesceWindow;
+  }
+
+  /**
+   * Gets the interval at which the statements marked as warm are reloaded into the second-level cache.
+   *
+   * @return the interval in milliseconds, 0 if they are only loaded when the session factory is built
+   * @since 3.5.7
+   */
+  public long getCacheWarmupRefreshInterval() {
+    return cacheWarmupRefreshInterval;
+  }
+
+  /**
+   * Sets the interval at which the statements marked as warm are reloaded into the second-level cache.
+   *
+   * @param cacheWarmupRefreshInterval
+   *          the interval in milliseconds, 0 to only load them when the session factory is built
+   * @since 3.5.7
+   */
+  public void setCacheWarmupRefreshInterval(long cacheWarmupRefreshInterval) {
+    this.cacheWarmupRefreshInterval = cacheWarmupRefreshInterval;
+  }
+
+  /**
+   * Gets the bus that propagates the invalidations of the second-level caches between nodes.
+   *
+   * @return the bus, or null if the caches are not shared with other nodes
+   * @since 3.5.7
+   */
+  public CacheInvalidationBus getCacheInvalidationBus() {
+    return cacheInvalidationBus;
+  }
+
+  /**
+   * Sets the bus that propagates the invalidations of the second-level caches between nodes. The invalidations made
+   * by the commits of this configuration are published on it, and those received from the other nodes are applied to
+   * the caches of this configuration.
+   *
+   * @param cacheInvalidationBus
+   *          the bus
+   * @since 3.5.7
+   */
+  public void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+    CacheInvalidationBus bus = cacheInvalidationBus;
+    if (bus != null && cacheInvalidationCoalesceWindow > 0) {
+      bus = new CoalescingCacheInvalidationBus(bus, cacheInvalidationCoalesceWindow);
+    }
+    if (bus != null) {
+      bus.subscribe(this::invalidateCaches);
+    }
+    this.cacheInvalidationBus = bus;
+  }
+
+  /**
+   * 应用其他节点发布的缓存失效，没有按表失效时清空整个缓存
+   */
+  private void invalidateCaches(CacheInvalidation invalidation) {
+    for (Map.Entry<String, Set<String>> entry : invalidation.getTablesByCache().entrySet()) {
+      String cacheId = entry.getKey();
+      if (!hasCache(cacheId)) {
+        continue;
+      }
+      TableVersions versions = getTableVersions(cacheId);
+      if (entry.getValue() == null || versions == null) {
+        getCache(cacheId).clear();
+      } else {
+        versions.invalidate(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Gets the table versions of a second-level cache.
+   *
+   * @param cacheId
+   *          the cache id
+   * @return the table versions, or null if the cache invalidation scope is not {@link CacheInvalidationScope#TABLE}
+   * @since 3.5.7
+   */
+  public TableVersions getTableVersions(String cacheId) {
+    if (cacheInvalidationScope != CacheInvalidationScope.TABLE) {
+      return null;
+    }
+    return tableVersions.computeIfAbsent(cacheId, k -> new TableVersions());
+  }
+
+  /**
+   * Gets the memory budget shared by the second-level caches.
+   *
+   * @return the maximum estimated size of all cache entries in bytes, 0 if not bounded
+   * @since 3.5.7
+   */
+  public long getCacheMemoryBudget() {
+    return memoryBudget == null ? 0 : memoryBudget.getMaxWeight();
+  }
+
+  /**
+   * Sets a memory budget shared by the second-level caches, which evicts from the cache that weighs the most when
+   * the estimated size of all their entries exceeds it. Set it before adding mappers.
+   *
+   * @param cacheMemoryBudget
+   *          the maximum estimated size in bytes, 0 for no budget
+   * @since 3.5.7
+   */
+  public void setCacheMemoryBudget(long cacheMemoryBudget) {
+    this.memoryBudget = cacheMemoryBudget > 0 ? new MemoryBudget(cacheMemoryBudget) : null;
+  }
+
+  /**
+   * Gets the memory budget shared by the second-level caches.
+   *
+   * @return the budget, or null if not bounded
+   * @since 3.5.7
+   */
+  public MemoryBudget getMemoryBudget() {
+    return memoryBudget;
+  }
+
   public JdbcType getJdbcTypeForNull() {
     return jdbcTypeForNull;
   }
@@ -681,7 +1164,7 @@ public class Configuration {
     // 装饰器原理
     // <setting name="cacheEnabled" value="true"/>
     if (cacheEnabled) {
-      executor = new CachingExecutor(executor);
+      executor = new CachingExecutor(executor, this);
     }
     executor = (Executor) interceptorChain.pluginAll(executor);
     return executor;
@@ -709,6 +1192,24 @@ public class Configuration {
 
   public void addCache(Cache cache) {
     caches.put(cache.getId(), cache);
+    if (cacheMBeansEnabled && cache.getStats() != null) {
+      cache.getStats().registerMBean(environment == null ? null : environment.getId());
+    }
+  }
+
+  /**
+   * Unregisters the JMX MBeans of the statistics of the second-level caches, for example when the application is
+   * undeployed, so that the platform MBean server does not keep the caches reachable.
+   *
+   * @since 3.5.7
+   */
+  public void unregisterCacheMBeans() {
+    String environmentId = environment == null ? null : environment.getId();
+    for (Cache cache : new HashSet<>(caches.values())) {
+      if (cache.getStats() != null) {
+        cache.getStats().unregisterMBean(environmentId);
+      }
+    }
   }
 
   public Collection<String> getCacheNames() {
@@ -19,6 +19,7 @@ import java.io.Closeable;
 import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BatchResult;
@@ -193,6 +194,101 @@ public interface SqlSession extends Closeable {
    */
   int insert(String statement, Object parameter);
 
+  /**
+   * Executes an insert statement for each of the given parameter objects, flushing the batch statements every 1000
+   * rows. See {@link #insertAll(String, Iterable, int, int)}.
+   * @param statement Unique identifier matching the statement to execute.
+   * @param parameters The parameter objects, one per row.
+   * @return the aggregate counts and timings
+   * @since 3.5.7
+   */
+  default BulkInsertResult insertAll(String statement, Iterable<?> parameters) {
+    return insertAll(statement, parameters, BulkInsertResult.DEFAULT_CHUNK_SIZE, 0);
+  }
+
+  /**
+   * Executes an insert statement for each of the given parameter objects.
+   * <p>
+   * The parameter objects are read one at a time and, with a {@link ExecutorType#BATCH} session, the batch statements
+   * are executed every {@code chunkSize} rows before more objects are read, so that only one chunk is held in memory
+   * and a slow database slows down the producer. Generated keys are assigned to the parameter objects when their
+   * chunk is executed. The statements of the last chunk are executed before returning, but not committed.
+   * </p>
+   * @param statement Unique identifier matching the statement to execute.
+   * @param parameters The parameter objects, one per row.
+   * @param chunkSize The number of rows after which the batch statements are executed, 0 to leave it to the executor.
+   * @param commitInterval The number of rows after which the session is committed, 0 to never commit.
+   * @return the aggregate counts and timings
+   * @since 3.5.7
+   */
+  default BulkInsertResult insertAll(String statement, Iterable<?> parameters, int chunkSize, int commitInterval) {
+    long start = System.nanoTime();
+    long rows = 0;
+    long updateCount = 0;
+    int flushes = 0;
+    int commits = 0;
+    long flushNanos = 0;
+    int unflushed = 0;
+    int uncommitted = 0;
+    for (Object parameter : parameters) {
+      int count = insert(statement, parameter);
+      if (count >= 0) {
+        // BATCH 执行器返回的是 BATCH_UPDATE_RETURN_VALUE，更新数在执行批处理时得到
+        updateCount += count;
+      }
+      rows++;
+      unflushed++;
+      uncommitted++;
+      boolean commitRequired = commitInterval > 0 && uncommitted >= commitInterval;
+      if (commitRequired || chunkSize > 0 && unflushed >= chunkSize) {
+        // 执行完这一批之后才继续读取参数，内存中最多只有一批
+        long flushStart = System.nanoTime();
+        updateCount += BulkInsertResult.updateCount(flushStatements());
+        flushNanos += System.nanoTime() - flushStart;
+        flushes++;
+        unflushed = 0;
+      }
+      if (commitRequired) {
+        commit();
+        commits++;
+        uncommitted = 0;
+      }
+    }
+    if (unflushed > 0) {
+      long flushStart = System.nanoTime();
+      updateCount += BulkInsertResult.updateCount(flushStatements());
+      flushNanos += System.nanoTime() - flushStart;
+      flushes++;
+    }
+    return new BulkInsertResult(rows, updateCount, flushes, commits, System.nanoTime() - start, flushNanos);
+  }
+
+  /**
+   * Executes an insert statement for each element of the given stream, flushing the batch statements every 1000
+   * rows. The stream is not closed. See {@link #insertAll(String, Iterable, int, int)}.
+   * @param statement Unique identifier matching the statement to execute.
+   * @param parameters The parameter objects, one per row.
+   * @return the aggregate counts and timings
+   * @since 3.5.7
+   */
+  default BulkInsertResult insertAll(String statement, Stream<?> parameters) {
+    return insertAll(statement, parameters, BulkInsertResult.DEFAULT_CHUNK_SIZE, 0);
+  }
+
+  /**
+   * Executes an insert statement for each element of the given stream. The stream is not closed.
+   * See {@link #insertAll(String, Iterable, int, int)}.
+   * @param statement Unique identifier matching the statement to execute.
+   * @param parameters The parameter objects, one per row.
+   * @param chunkSize The number of rows after which the batch statements are executed, 0 to leave it to the executor.
+   * @param commitInterval The number of rows after which the session is committed, 0 to never commit.
+   * @return the aggregate counts and timings
+   * @since 3.5.7
+   */
+  default BulkInsertResult insertAll(String statement, Stream<?> parameters, int chunkSize, int commitInterval) {
+    return insertAll(statement, BulkInsertResult.iterable(parameters), chunkSize, commitInterval);
+  }
+
   /**
    * Execute an update statement. The number of rows affected will be returned.
    * @param statement Unique identifier matching the statement to execute.
@@ -99,6 +99,8 @@ public class SqlSessionFactoryBuilder {
   }
 
   public SqlSessionFactory build(Configuration config) {
+    // 返回之前把 warm 语句的结果放入二级缓存
+    CacheWarmer.warmUp(config);
     return new DefaultSqlSessionFactory(config);
   }
 
@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Stream;
 
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.BatchResult;
@@ -239,6 +240,26 @@ public class SqlSessionManager implements SqlSessionFactory, SqlSession {
     return sqlSessionProxy.insert(statement, parameter);
   }
 
+  @Override
+  public BulkInsertResult insertAll(String statement, Iterable<?> parameters) {
+    return sqlSessionProxy.insertAll(statement, parameters);
+  }
+
+  @Override
+  public BulkInsertResult insertAll(String statement, Iterable<?> parameters, int chunkSize, int commitInterval) {
+    return sqlSessionProxy.insertAll(statement, parameters, chunkSize, commitInterval);
+  }
+
+  @Override
+  public BulkInsertResult insertAll(String statement, Stream<?> parameters) {
+    return sqlSessionProxy.insertAll(statement, parameters);
+  }
+
+  @Override
+  public BulkInsertResult insertAll(String statement, Stream<?> parameters, int chunkSize, int commitInterval) {
+    return sqlSessionProxy.insertAll(statement, parameters, chunkSize, commitInterval);
+  }
+
   @Override
   public int update(String statement) {
     return sqlSessionProxy.update(statement);
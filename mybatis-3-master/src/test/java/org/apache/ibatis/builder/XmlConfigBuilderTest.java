@@ -37,6 +37,10 @@ import java.util.Properties;
 import org.apache.ibatis.builder.mapper.CustomMapper;
 import org.apache.ibatis.builder.typehandler.CustomIntegerTypeHandler;
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.CoalescingCacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.LoopbackCacheInvalidationBus;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.domain.blog.Author;
 import org.apache.ibatis.domain.blog.Blog;
@@ -54,6 +58,7 @@ import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.CacheInvalidationScope;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.LocalCacheScope;
@@ -85,6 +90,13 @@ class XmlConfigBuilderTest {
       assertThat(config.isUseColumnLabel()).isTrue();
       assertThat(config.isUseGeneratedKeys()).isFalse();
       assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.SIMPLE);
+      assertThat(config.isBatchGroupBySql()).isFalse();
+      assertThat(config.getBatchMaxStatementRows()).isEqualTo(0);
+      assertThat(config.getBatchMaxRows()).isEqualTo(0);
+      assertThat(config.getBatchMaxBytes()).isEqualTo(0);
+      assertThat(config.isBatchDiscardParameterObjects()).isFalse();
+      assertThat(config.getBatchMultiRowInsertSize()).isEqualTo(0);
+      assertThat(config.getReuseStatementCacheSize()).isEqualTo(0);
       assertNull(config.getDefaultStatementTimeout());
       assertNull(config.getDefaultFetchSize());
       assertNull(config.getDefaultResultSetType());
@@ -102,6 +114,16 @@ class XmlConfigBuilderTest {
       assertThat(config.getTypeHandlerRegistry().getTypeHandler(RoundingMode.class)).isInstanceOf(EnumTypeHandler.class);
       assertThat(config.isShrinkWhitespacesInSql()).isFalse();
       assertThat(config.getDefaultSqlProviderType()).isNull();
+      assertThat(config.getDefaultCacheType()).isEqualTo(PerpetualCache.class);
+      assertThat(config.getCacheInvalidationScope()).isEqualTo(CacheInvalidationScope.NAMESPACE);
+      assertThat(config.isEntityCacheEnabled()).isFalse();
+      assertThat(config.isCacheMBeansEnabled()).isFalse();
+      assertThat(config.getCacheInvalidationCoalesceWindow()).isEqualTo(0);
+      assertThat(config.getCacheWarmupRefreshInterval()).isEqualTo(0);
+      assertThat(config.getCacheInvalidationBus()).isNull();
+      assertThat(config.getCacheMemoryBudget()).isEqualTo(0);
+      assertThat(config.getLocalCacheSize()).isEqualTo(0);
+      assertThat(config.getLocalCacheMaxWeight()).isEqualTo(0);
     }
   }
 
@@ -181,6 +203,13 @@ class XmlConfigBuilderTest {
       assertThat(config.isUseColumnLabel()).isFalse();
       assertThat(config.isUseGeneratedKeys()).isTrue();
       assertThat(config.getDefaultExecutorType()).isEqualTo(ExecutorType.BATCH);
+      assertThat(config.isBatchGroupBySql()).isTrue();
+      assertThat(config.getBatchMaxStatementRows()).isEqualTo(1000);
+      assertThat(config.getBatchMaxRows()).isEqualTo(5000);
+      assertThat(config.getBatchMaxBytes()).isEqualTo(1048576);
+      assertThat(config.isBatchDiscardParameterObjects()).isTrue();
+      assertThat(config.getBatchMultiRowInsertSize()).isEqualTo(64);
+      assertThat(config.getReuseStatementCacheSize()).isEqualTo(100);
       assertThat(config.getDefaultStatementTimeout()).isEqualTo(10);
       assertThat(config.getDefaultFetchSize()).isEqualTo(100);
       assertThat(config.getDefaultResultSetType()).isEqualTo(ResultSetType.SCROLL_INSENSITIVE);
@@ -198,6 +227,17 @@ class XmlConfigBuilderTest {
       assertThat(config.getConfigurationFactory().getName()).isEqualTo(String.class.getName());
       assertThat(config.isShrinkWhitespacesInSql()).isTrue();
       assertThat(config.getDefaultSqlProviderType().getName()).isEqualTo(MySqlProvider.class.getName());
+      assertThat(config.getDefaultCacheType()).isEqualTo(ConcurrentCache.class);
+      assertThat(config.getCacheInvalidationScope()).isEqualTo(CacheInvalidationScope.TABLE);
+      assertThat(config.isEntityCacheEnabled()).isTrue();
+      assertThat(config.isCacheMBeansEnabled()).isTrue();
+      assertThat(config.getCacheInvalidationCoalesceWindow()).isEqualTo(50);
+      assertThat(config.getCacheWarmupRefreshInterval()).isEqualTo(60000);
+      assertThat(((CoalescingCacheInvalidationBus) config.getCacheInvalidationBus()).getDelegate())
+          .isInstanceOf(LoopbackCacheInvalidationBus.class);
+      assertThat(config.getCacheMemoryBudget()).isEqualTo(67108864);
+      assertThat(config.getLocalCacheSize()).isEqualTo(10000);
+      assertThat(config.getLocalCacheMaxWeight()).isEqualTo(16777216);
 
       assertThat(config.getTypeAliasRegistry().getTypeAliases().get("blogauthor")).isEqualTo(Author.class);
       assertThat(config.getTypeAliasRegistry().getTypeAliases().get("blog")).isEqualTo(Blog.class);
@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.ibatis.cache.invalidation.CacheInvalidation;
+import org.apache.ibatis.cache.invalidation.CoalescingCacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.LoopbackCacheInvalidationBus;
+import org.junit.jupiter.api.Test;
+
+class CacheInvalidationBusTest {
+
+  @Test
+  void shouldDeliverToOtherBusesOfChannel() {
+    LoopbackCacheInvalidationBus node1 = new LoopbackCacheInvalidationBus("loopback");
+    LoopbackCacheInvalidationBus node2 = new LoopbackCacheInvalidationBus("loopback");
+    LoopbackCacheInvalidationBus other = new LoopbackCacheInvalidationBus("other");
+    List<CacheInvalidation> received1 = new ArrayList<>();
+    List<CacheInvalidation> received2 = new ArrayList<>();
+    List<CacheInvalidation> receivedOther = new ArrayList<>();
+    node1.subscribe(received1::add);
+    node2.subscribe(received2::add);
+    other.subscribe(receivedOther::add);
+    try {
+      node1.publish(new CacheInvalidation().add("mapper", null));
+      assertTrue(received1.isEmpty());
+      assertEquals(1, received2.size());
+      assertTrue(receivedOther.isEmpty());
+    } finally {
+      node1.close();
+      node2.close();
+      other.close();
+    }
+  }
+
+  @Test
+  void shouldNotKeepDiscardedBusesReachable() throws Exception {
+    LoopbackCacheInvalidationBus node = new LoopbackCacheInvalidationBus("discarded");
+    WeakReference<LoopbackCacheInvalidationBus> discarded = new WeakReference<>(
+        new LoopbackCacheInvalidationBus("discarded"));
+    try {
+      // 没有调用 close，只有频道引用这个总线
+      for (int i = 0; i < 50 && discarded.get() != null; i++) {
+        System.gc();
+        Thread.sleep(20);
+      }
+      assertNull(discarded.get());
+      node.publish(new CacheInvalidation().add("mapper", null));
+    } finally {
+      node.close();
+    }
+  }
+
+  @Test
+  void shouldCoalesceBurstsIntoOneMessage() throws Exception {
+    LoopbackCacheInvalidationBus node1 = new LoopbackCacheInvalidationBus("coalescing");
+    LoopbackCacheInvalidationBus node2 = new LoopbackCacheInvalidationBus("coalescing");
+    List<CacheInvalidation> received = new ArrayList<>();
+    node2.subscribe(received::add);
+    CoalescingCacheInvalidationBus bus = new CoalescingCacheInvalidationBus(node1, 100);
+    try {
+      bus.publish(new CacheInvalidation().add("blog", new HashSet<>(Arrays.asList("blog"))));
+      bus.publish(new CacheInvalidation().add("blog", new HashSet<>(Arrays.asList("post"))));
+      bus.publish(new CacheInvalidation().add("author", new HashSet<>(Arrays.asList("author"))));
+      bus.publish(new CacheInvalidation().add("author", null));
+      assertTrue(received.isEmpty());
+      Thread.sleep(500);
+      assertEquals(1, received.size());
+      CacheInvalidation invalidation = received.get(0);
+      assertEquals(new HashSet<>(Arrays.asList("blog", "post")), invalidation.getTablesByCache().get("blog"));
+      assertTrue(invalidation.getTablesByCache().containsKey("author"));
+      assertNull(invalidation.getTablesByCache().get("author"));
+    } finally {
+      node1.close();
+      node2.close();
+    }
+  }
+
+}
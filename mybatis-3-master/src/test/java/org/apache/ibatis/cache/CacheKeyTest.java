@@ -86,6 +86,35 @@ class CacheKeyTest {
     assertEquals(key1, key2);
   }
 
+  @Test
+  void shouldTestCacheKeysWithPrefixEqualToFlatKeys() {
+    CacheKey prefix = new CacheKey(new Object[] { "statement", "select 1" });
+    CacheKey key1 = new CacheKey(prefix, 2);
+    key1.update(1);
+    key1.update("hello");
+    CacheKey key2 = new CacheKey(new CacheKey(new Object[] { "statement", "select 1" }), 1);
+    key2.update(1);
+    key2.update("hello");
+    CacheKey key3 = new CacheKey(new Object[] { "statement", "select 1", 1, "hello" });
+    assertEquals(key1, key2);
+    assertEquals(key1, key3);
+    assertEquals(key3, key1);
+    assertEquals(key1.hashCode(), key3.hashCode());
+    assertEquals(key1.toString(), key3.toString());
+    assertEquals(4, key1.getUpdateCount());
+    CacheKey key4 = new CacheKey(prefix, 2);
+    key4.update(1);
+    key4.update("world");
+    assertNotEquals(key1, key4);
+  }
+
+  @Test
+  void throwExceptionWhenTryingToUpdatePrefixCacheKey() {
+    CacheKey prefix = new CacheKey(new Object[] { "statement" });
+    new CacheKey(prefix, 0);
+    assertThrows(CacheException.class, () -> prefix.update("sql"));
+  }
+
   @Test
   void throwExceptionWhenTryingToUpdateNullCacheKey() {
     CacheKey cacheKey = CacheKey.NULL_CACHE_KEY;
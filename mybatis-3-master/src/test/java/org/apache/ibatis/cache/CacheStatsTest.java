@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.FifoCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class CacheStatsTest {
+
+  @Test
+  void shouldCountRequestsAndEvictions() {
+    Cache cache = new CacheBuilder("test").size(2).blocking(true).build();
+    for (int i = 0; i < 3; i++) {
+      cache.putObject(i, i);
+    }
+    cache.getObject(2);
+    cache.getObject(0);
+    cache.removeObject(0);
+    cache.clear();
+    CacheStats stats = cache.getStats();
+    assertEquals(1, stats.getHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(0.5, stats.getHitRatio());
+    assertEquals(3, stats.getPuts());
+    assertEquals(1, stats.getEvictions());
+    assertEquals(1, stats.getClears());
+    assertEquals(-1, stats.getWeight());
+    stats.reset();
+    assertEquals(0, stats.getPuts());
+  }
+
+  @Test
+  void shouldCountEvictionsOfDecoratorsAndConcurrentCache() {
+    Cache fifo = new CacheBuilder("fifo").addDecorator(FifoCache.class).size(1).build();
+    fifo.putObject(0, 0);
+    fifo.putObject(1, 1);
+    assertEquals(1, fifo.getStats().getEvictions());
+
+    Cache concurrent = new CacheBuilder("concurrent").implementation(ConcurrentCache.class).size(1).build();
+    concurrent.putObject(0, 0);
+    concurrent.putObject(1, 1);
+    assertEquals(1, concurrent.getStats().getEvictions());
+  }
+
+  @Test
+  void shouldRecordWeightOfWeightedCache() {
+    Properties props = new Properties();
+    props.setProperty("maxWeight", "1000000");
+    Cache cache = new CacheBuilder("test").properties(props).build();
+    cache.putObject(0, "value");
+    assertTrue(cache.getStats().getWeight() > 0);
+  }
+
+  @Test
+  void shouldRecordStatsOfCustomCaches() {
+    Cache cache = new CacheBuilder("custom").implementation(CustomCache.class).build();
+    cache.getObject(0);
+    assertEquals(1, cache.getStats().getMisses());
+  }
+
+  @Test
+  void shouldExportStatsAsMBean() throws Exception {
+    Cache cache = new CacheBuilder("org.example.Mapper").build();
+    cache.putObject(0, 0);
+    cache.getObject(0);
+    ObjectName name = cache.getStats().registerMBean("test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals(1L, server.getAttribute(name, "Hits"));
+      assertEquals(1, server.getAttribute(name, "Size"));
+      // 同名的缓存替换之前的
+      new CacheBuilder("org.example.Mapper").build().getStats().registerMBean("test");
+      assertEquals(0L, server.getAttribute(name, "Hits"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  void shouldUnregisterMBean() {
+    CacheStats stats = new CacheBuilder("org.example.Mapper").build().getStats();
+    ObjectName name = stats.registerMBean("test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertTrue(server.isRegistered(name));
+    stats.unregisterMBean("test");
+    assertFalse(server.isRegistered(name));
+    stats.unregisterMBean("test");
+  }
+
+  public static class CustomCache extends PerpetualCache {
+
+    public CustomCache(String id) {
+      super(id);
+    }
+
+  }
+
+}
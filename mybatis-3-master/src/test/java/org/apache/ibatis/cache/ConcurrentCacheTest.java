@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.impl.ConcurrentCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentCacheTest {
+
+  @Test
+  void shouldKeepRecentlyReadItemsBeyondFiveEntries() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setSize(5);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(0, cache.getObject(0));
+    cache.putObject(5, 5);
+    assertEquals(0, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertEquals(5, cache.getSize());
+  }
+
+  @Test
+  void shouldNotGrowBeyondSizeWhenOverwritingAndRemoving() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setSize(500);
+    for (int i = 0; i < 10000; i++) {
+      cache.putObject(i % 700, i);
+      if (i % 3 == 0) {
+        cache.removeObject((i + 1) % 700);
+      }
+      assertTrue(cache.getSize() <= 500);
+    }
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    Cache cache = new ConcurrentCache("default");
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    assertEquals(0, cache.removeObject(0));
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    Cache cache = new ConcurrentCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldStayWithinSizeUnderConcurrentAccess() throws Exception {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    cache.setSize(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int seed = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 20000; i++) {
+            Integer key = (i * 31 + seed) % 3000;
+            Object value = cache.getObject(key);
+            if (value == null) {
+              cache.putObject(key, key);
+            } else {
+              assertEquals(key, value);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(cache.getSize() <= 1000);
+  }
+
+  @Test
+  void shouldBuildWithoutSynchronizedCache() {
+    Cache cache = new CacheBuilder("default").implementation(ConcurrentCache.class).size(10).readWrite(true).build();
+    assertTrue(cache instanceof LoggingCache);
+    for (int i = 0; i < 20; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(10, cache.getSize());
+  }
+
+  @Test
+  void shouldRejectNonPositiveSize() {
+    ConcurrentCache cache = new ConcurrentCache("default");
+    assertThrows(CacheException.class, () -> cache.setSize(0));
+    assertEquals(1024, cache.getCapacity());
+  }
+
+}
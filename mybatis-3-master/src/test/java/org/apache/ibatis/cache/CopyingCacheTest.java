@@ -0,0 +1,127 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.CopyingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class CopyingCacheTest {
+
+  @Test
+  void shouldCopyObjectGraphOnPutAndGet() {
+    CopyingCache cache = new CopyingCache(new PerpetualCache("default"));
+    TreeNode root = new TreeNode("root");
+    TreeNode child = new TreeNode("child");
+    root.addChild(child);
+    root.getAttributes().put("created", new Date(0));
+    cache.putObject(0, root);
+    root.setName("changed");
+
+    TreeNode copy = (TreeNode) cache.getObject(0);
+    assertNotSame(root, copy);
+    assertEquals("root", copy.getName());
+    assertArrayEquals(new int[] { 1, 2, 3 }, copy.scores);
+    assertNotSame(root.scores, copy.scores);
+    assertEquals(new Date(0), copy.getAttributes().get("created"));
+    assertNotSame(root.getAttributes().get("created"), copy.getAttributes().get("created"));
+    TreeNode childCopy = copy.getChildren().get(0);
+    assertEquals("child", childCopy.getName());
+    // 循环引用指向拷贝后的父节点
+    assertSame(copy, childCopy.parent);
+    assertNotSame(copy, cache.getObject(0));
+  }
+
+  @Test
+  void shouldCopyObjectsThatAreNotSerializable() {
+    CopyingCache cache = new CopyingCache(new PerpetualCache("default"));
+    List<TreeNode> list = new ArrayList<>();
+    list.add(new TreeNode("node"));
+    cache.putObject(0, list);
+    List<?> copy = (List<?>) cache.getObject(0);
+    assertEquals(1, copy.size());
+    assertEquals("node", ((TreeNode) copy.get(0)).getName());
+  }
+
+  @Test
+  void shouldDemonstrateNullsAreCopied() {
+    CopyingCache cache = new CopyingCache(new PerpetualCache("default"));
+    cache.putObject(0, null);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldBeSelectedByCopyStrategyProperty() {
+    Properties props = new Properties();
+    props.setProperty("copyStrategy", "reflection");
+    Cache cache = new CacheBuilder("default").readWrite(true).properties(props).build();
+    TreeNode root = new TreeNode("root");
+    cache.putObject(0, root);
+    Object copy = cache.getObject(0);
+    assertNotSame(root, copy);
+    assertEquals("root", ((TreeNode) copy).getName());
+
+    props.setProperty("copyStrategy", "unknown");
+    assertThrows(CacheException.class, () -> new CacheBuilder("default").readWrite(true).properties(props).build());
+  }
+
+  public static class TreeNode {
+    private String name;
+    private TreeNode parent;
+    private final List<TreeNode> children = new ArrayList<>();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private int[] scores = { 1, 2, 3 };
+
+    public TreeNode() {
+    }
+
+    TreeNode(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public List<TreeNode> getChildren() {
+      return children;
+    }
+
+    public Map<String, Object> getAttributes() {
+      return attributes;
+    }
+
+    void addChild(TreeNode child) {
+      child.parent = this;
+      children.add(child);
+    }
+  }
+
+}
@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.impl.DiskCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskCacheTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void shouldServeEntriesAfterReopening() throws Exception {
+    DiskCache cache = open("1");
+    List<String> value = new ArrayList<>();
+    value.add("a");
+    CacheKey key = new CacheKey(new Object[] { "select", 1 });
+    cache.putObject(key, value);
+    cache.putObject(2, "two");
+    cache.removeObject(2);
+    assertNotSame(value, cache.getObject(key));
+    cache.close();
+
+    DiskCache reopened = open("1");
+    assertEquals(1, reopened.getSize());
+    assertEquals(value, reopened.getObject(new CacheKey(new Object[] { "select", 1 })));
+    assertNull(reopened.getObject(2));
+  }
+
+  @Test
+  void shouldDropEntriesOfAnotherVersion() throws Exception {
+    DiskCache cache = open("1");
+    cache.putObject(1, "one");
+    cache.close();
+    DiskCache reopened = open("2");
+    assertEquals(0, reopened.getSize());
+    assertNull(reopened.getObject(1));
+  }
+
+  @Test
+  void shouldCompactReplacedEntries() throws Exception {
+    DiskCache cache = open("1");
+    char[] chars = new char[10000];
+    for (int i = 0; i < 1000; i++) {
+      chars[0] = (char) i;
+      cache.putObject(i % 10, new String(chars));
+    }
+    assertTrue(Files.size(directory.resolve("test.cache")) < 2 * 1024 * 1024);
+    cache.close();
+    DiskCache reopened = open("1");
+    assertEquals(10, reopened.getSize());
+    chars[0] = (char) 999;
+    assertEquals(new String(chars), reopened.getObject(9));
+  }
+
+  @Test
+  void shouldForgetEntriesAfterClear() throws Exception {
+    DiskCache cache = open("1");
+    cache.putObject(1, "one");
+    cache.clear();
+    cache.putObject(2, "two");
+    cache.close();
+    DiskCache reopened = open("1");
+    assertNull(reopened.getObject(1));
+    assertEquals("two", reopened.getObject(2));
+  }
+
+  @Test
+  void shouldBeConfiguredByProperties() {
+    Properties props = new Properties();
+    props.setProperty("directory", directory.toString());
+    props.setProperty("version", "1");
+    Cache cache = new CacheBuilder("test").implementation(DiskCache.class).properties(props).build();
+    cache.putObject(1, "one");
+    assertTrue(Files.exists(directory.resolve("test.cache")));
+  }
+
+  @Test
+  void shouldFailWhenTheFileIsLockedElsewhere() throws Exception {
+    try (FileChannel channel = FileChannel.open(directory.resolve("test.cache.lock"), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+      CacheException e = assertThrows(CacheException.class, () -> open("1"));
+      assertTrue(e.getMessage().contains("test.cache"));
+    }
+    open("1").close();
+  }
+
+  @Test
+  void shouldTakeOverTheFileOfAPreviousCache() throws Exception {
+    // 重新构建 SqlSessionFactory 时之前的缓存没有被关闭
+    DiskCache previous = open("1");
+    previous.putObject(1, "one");
+    DiskCache cache = open("1");
+    assertEquals("one", cache.getObject(1));
+    assertNull(previous.getObject(1));
+    previous.putObject(2, "two");
+    previous.clear();
+    assertNull(cache.getObject(2));
+    assertEquals(1, cache.getSize());
+    previous.close();
+    cache.putObject(3, "three");
+    cache.close();
+    assertEquals("three", open("1").getObject(3));
+  }
+
+  @Test
+  void shouldRequireADirectory() {
+    assertThrows(CacheException.class, () -> new DiskCache("test").initialize());
+  }
+
+  private DiskCache open(String version) throws Exception {
+    DiskCache cache = new DiskCache("test");
+    cache.setDirectory(directory.toString());
+    cache.setVersion(version);
+    cache.initialize();
+    return cache;
+  }
+
+}
@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  @Test
+  void shouldExpireEachEntryOnItsOwn() throws Exception {
+    ExpiringCache expiringCache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    expiringCache.setTimeToLive(500);
+    Cache cache = new LoggingCache(expiringCache);
+    cache.putObject(0, 0);
+    Thread.sleep(300);
+    cache.putObject(1, 1);
+    Thread.sleep(300);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+  }
+
+  @Test
+  void shouldSpreadExpiryWithJitter() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(50);
+    cache.setTimeToLiveJitter(60000);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    Thread.sleep(200);
+    int alive = 0;
+    for (int i = 0; i < 100; i++) {
+      if (cache.getObject(i) != null) {
+        alive++;
+      }
+    }
+    assertTrue(alive > 0);
+  }
+
+  @Test
+  void shouldReturnStaleValueWhileOneReaderReloads() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(100);
+    cache.setStaleWhileRevalidate(60000);
+    cache.putObject(0, "old");
+    Thread.sleep(200);
+    // 第一个读者重新加载，其他读者得到旧值
+    assertNull(cache.getObject(0));
+    assertEquals("old", cache.getObject(0));
+    assertEquals("old", cache.getObject(0));
+    cache.putObject(0, "new");
+    assertEquals("new", cache.getObject(0));
+  }
+
+  @Test
+  void shouldLetAnotherReaderReloadWhenReloadIsAbandoned() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(100);
+    cache.setStaleWhileRevalidate(60000);
+    cache.putObject(0, "old");
+    Thread.sleep(200);
+    assertNull(cache.getObject(0));
+    // 重新加载的事务提交时没有写入值
+    cache.putObject(0, null);
+    assertNull(cache.getObject(0));
+    assertEquals("old", cache.getObject(0));
+  }
+
+  @Test
+  void shouldKeepStaleValueWhenReloadFails() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(100);
+    cache.setStaleWhileRevalidate(60000);
+    cache.putObject(0, "old");
+    Thread.sleep(200);
+    assertNull(cache.getObject(0));
+    // 重新加载的查询失败或者事务回滚时释放 key
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    assertEquals("old", cache.getObject(0));
+  }
+
+  @Test
+  void shouldRemoveStaleValueWhenRemovedOutsideTheReload() throws Exception {
+    PerpetualCache delegate = new PerpetualCache("DefaultCache");
+    ExpiringCache cache = new ExpiringCache(delegate);
+    cache.setTimeToLive(100);
+    cache.setStaleWhileRevalidate(60000);
+    cache.putObject(0, "old");
+    cache.putObject(1, "old");
+    Thread.sleep(200);
+    // 没有读者在重新加载
+    cache.removeObject(1);
+    assertNull(delegate.getObject(1));
+    // 另一个线程在重新加载时删除
+    assertNull(cache.getObject(0));
+    Thread remover = new Thread(() -> cache.removeObject(0));
+    remover.start();
+    remover.join();
+    assertNull(delegate.getObject(0));
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldExpireStaleValueAfterStaleWhileRevalidate() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("DefaultCache"));
+    cache.setTimeToLive(100);
+    cache.setStaleWhileRevalidate(100);
+    cache.putObject(0, "old");
+    Thread.sleep(300);
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldBuildExpiringCacheFromProperties() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("timeToLive", "100");
+    props.setProperty("staleWhileRevalidate", "60000");
+    Cache cache = new CacheBuilder("test").properties(props).build();
+    cache.putObject(0, "old");
+    assertEquals("old", cache.getObject(0));
+    Thread.sleep(200);
+    assertNull(cache.getObject(0));
+    assertEquals("old", cache.getObject(0));
+  }
+
+  @Test
+  void shouldRejectInvalidTimeToLive() {
+    Properties props = new Properties();
+    props.setProperty("timeToLive", "1h");
+    assertThrows(CacheException.class, () -> new CacheBuilder("test").properties(props).build());
+  }
+
+}
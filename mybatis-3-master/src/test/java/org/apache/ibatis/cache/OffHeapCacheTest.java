@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class OffHeapCacheTest {
+
+  @Test
+  void shouldReturnCopyOfStoredObject() {
+    Cache cache = new OffHeapCache("default");
+    List<String> value = new ArrayList<>();
+    value.add("a");
+    value.add("b");
+    cache.putObject(0, value);
+    Object cached = cache.getObject(0);
+    assertEquals(value, cached);
+    assertNotSame(value, cached);
+    assertNotSame(cached, cache.getObject(0));
+  }
+
+  @Test
+  void shouldSpreadLargeValuesOverBlocks() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setBlockSize(64);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      builder.append(i);
+    }
+    String value = builder.toString();
+    cache.putObject(0, value);
+    assertEquals(value, cache.getObject(0));
+    assertTrue(cache.getUsedBytes() > 64);
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedItemsBeyondCapacity() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setBlockSize(128);
+    cache.setSlabSize(256);
+    cache.setCapacity(640);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(5, cache.getSize());
+    assertEquals(0, cache.getObject(0));
+    cache.putObject(5, 5);
+    assertEquals(0, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertEquals(5, cache.getSize());
+    assertEquals(640, cache.getAllocatedBytes());
+  }
+
+  @Test
+  void shouldNotCacheValuesLargerThanCapacity() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setBlockSize(16);
+    cache.setSlabSize(64);
+    cache.setCapacity(64);
+    cache.putObject(0, new byte[1024]);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    OffHeapCache cache = new OffHeapCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  @Test
+  void shouldRejectNonSerializableObject() {
+    Cache cache = new OffHeapCache("default");
+    assertThrows(CacheException.class, () -> cache.putObject(0, new Object()));
+  }
+
+  @Test
+  void shouldBeConfiguredByCacheBuilder() {
+    Properties props = new Properties();
+    props.setProperty("capacity", "1048576");
+    props.setProperty("blockSize", "512");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).properties(props).build();
+    cache.putObject(0, "value");
+    assertEquals("value", cache.getObject(0));
+  }
+
+  @Test
+  void shouldApplyStandardDecoratorsWhenConfiguredByCacheBuilder() {
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).clearInterval(60000L).blocking(true)
+        .build();
+    assertTrue(cache instanceof BlockingCache);
+    cache.putObject(0, "value");
+    assertEquals("value", cache.getObject(0));
+    assertEquals(1, cache.getStats().getHits());
+  }
+
+}
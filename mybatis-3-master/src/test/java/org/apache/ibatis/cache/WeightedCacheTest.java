@@ -0,0 +1,132 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.FifoCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class WeightedCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedEntriesByWeight() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("DefaultCache"));
+    cache.setWeigher((key, value) -> 100);
+    cache.setMaxWeight(250);
+    cache.putObject(0, 0);
+    cache.putObject(1, 1);
+    cache.getObject(0);
+    cache.putObject(2, 2);
+    assertEquals(0, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertEquals(2, cache.getObject(2));
+    assertEquals(200, cache.getWeight());
+  }
+
+  @Test
+  void shouldEvictFromHeaviestCacheOfBudget() {
+    MemoryBudget budget = new MemoryBudget(1000);
+    WeightedCache small = new WeightedCache(new PerpetualCache("small"));
+    small.setWeigher((key, value) -> 100);
+    small.setBudget(budget);
+    WeightedCache large = new WeightedCache(new PerpetualCache("large"));
+    large.setWeigher((key, value) -> 300);
+    large.setBudget(budget);
+    small.putObject(0, 0);
+    small.putObject(1, 1);
+    for (int i = 0; i < 4; i++) {
+      large.putObject(i, i);
+    }
+    assertEquals(2, small.getSize());
+    assertEquals(2, large.getSize());
+    assertEquals(800, budget.getWeight());
+    large.clear();
+    assertEquals(200, budget.getWeight());
+  }
+
+  @Test
+  void shouldForgetEntriesRemovedBelow() {
+    Properties props = new Properties();
+    props.setProperty("maxWeight", "100000");
+    Cache cache = new CacheBuilder("test").addDecorator(FifoCache.class).size(2).properties(props).build();
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, i);
+    }
+    WeightedCache weightedCache = unwrap(cache);
+    assertEquals(2, cache.getSize());
+    assertEquals(2 * new SampledWeigher().weigh(0, 0), weightedCache.getWeight());
+  }
+
+  @Test
+  void shouldNotEvictByCountWhenBoundedByWeight() {
+    Properties props = new Properties();
+    props.setProperty("maxWeight", "100000");
+    Cache cache = new CacheBuilder("test").addDecorator(LruCache.class).size(2).properties(props).build();
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(10, cache.getSize());
+    assertEquals(10 * new SampledWeigher().weigh(0, 0), unwrap(cache).getWeight());
+  }
+
+  @Test
+  void shouldScaleSampledWeightWithSize() {
+    SampledWeigher weigher = new SampledWeigher();
+    List<String> small = new ArrayList<>();
+    List<String> large = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      if (i < 10) {
+        small.add("value" + i);
+      }
+      large.add("value" + i);
+    }
+    long smallWeight = weigher.weigh("key", small);
+    long largeWeight = weigher.weigh("key", large);
+    assertTrue(largeWeight > 50 * smallWeight);
+  }
+
+  @Test
+  void shouldRejectInvalidWeigher() {
+    Properties props = new Properties();
+    props.setProperty("weigher", "com.example.MissingWeigher");
+    assertThrows(CacheException.class, () -> new CacheBuilder("test").properties(props).build());
+  }
+
+  private static WeightedCache unwrap(Cache cache) {
+    Cache current = cache;
+    while (!(current instanceof WeightedCache)) {
+      try {
+        Field delegate = current.getClass().getDeclaredField("delegate");
+        delegate.setAccessible(true);
+        current = (Cache) delegate.get(current);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return (WeightedCache) current;
+  }
+
+}
@@ -17,7 +17,9 @@ package org.apache.ibatis.executor;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.HashMap;
@@ -416,6 +418,43 @@ class BaseExecutorTest extends BaseDataTest {
     }
   }
 
+  @Test
+  void shouldResolveCircularReferencesWithBoundedLocalCache() throws Exception {
+    config.setLocalCacheSize(1);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement selectBlog = ExecutorTestHelper.prepareComplexSelectBlogMappedStatement(config);
+      MappedStatement selectPosts = ExecutorTestHelper.prepareSelectPostsForBlogMappedStatement(config);
+      config.addMappedStatement(selectBlog);
+      config.addMappedStatement(selectPosts);
+      List<Blog> blogs = executor.query(selectBlog, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.flushStatements();
+      assertEquals(1, blogs.size());
+      assertEquals(2, blogs.get(0).getPosts().size());
+      assertEquals(1, blogs.get(0).getPosts().get(1).getBlog().getPosts().get(1).getBlog().getId());
+      executor.rollback(true);
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedLocalCacheEntries() throws Exception {
+    config.setLocalCacheSize(1);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement selectStatement = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      List<Author> first = executor.query(selectStatement, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertSame(first, executor.query(selectStatement, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+      executor.query(selectStatement, 102, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertNotSame(first, executor.query(selectStatement, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
   @Test
   void shouldMapConstructorResults() throws Exception {
 
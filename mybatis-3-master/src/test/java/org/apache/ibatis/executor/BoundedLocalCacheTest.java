@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class BoundedLocalCacheTest {
+
+  @Test
+  void shouldEvictOnlyWhenTrimmed() {
+    BoundedLocalCache cache = new BoundedLocalCache(2, 0);
+    PerpetualCache outputParameters = new PerpetualCache("LocalOutputParameterCache");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+      outputParameters.putObject(i, i);
+    }
+    assertEquals(5, cache.getSize());
+    cache.getObject(0);
+    cache.trim(outputParameters);
+    assertEquals(2, cache.getSize());
+    assertEquals(0, cache.getObject(0));
+    assertEquals(4, cache.getObject(4));
+    assertNull(cache.getObject(1));
+    assertNull(outputParameters.getObject(1));
+    assertEquals(0, outputParameters.getObject(0));
+  }
+
+  @Test
+  void shouldEvictByEstimatedSize() {
+    BoundedLocalCache cache = new BoundedLocalCache(0, 20000);
+    for (int i = 0; i < 10; i++) {
+      List<String> rows = new ArrayList<>();
+      for (int j = 0; j < 100; j++) {
+        rows.add("row " + i + "-" + j);
+      }
+      cache.putObject(i, rows);
+    }
+    cache.trim(new PerpetualCache("LocalOutputParameterCache"));
+    assertTrue(cache.getSize() > 0);
+    assertTrue(cache.getSize() < 10);
+    assertNotNull(cache.getObject(9));
+    cache.removeObject(9);
+    cache.clear();
+    assertEquals(0, cache.getSize());
+  }
+
+}
@@ -15,11 +15,29 @@
  */
 package org.apache.ibatis.executor;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.domain.blog.Blog;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 class ReuseExecutorTest extends BaseExecutorTest {
 
+  private static DataSource ds;
+
+  @BeforeAll
+  static void setupDataSource() throws Exception {
+    ds = createBlogDataSource();
+  }
+
   @Test
   void dummy() {
   }
@@ -30,6 +48,46 @@ class ReuseExecutorTest extends BaseExecutorTest {
     super.shouldFetchPostWithBlogWithCompositeKey();
   }
 
+  @Test
+  void shouldCloseLeastRecentlyUsedStatements() throws Exception {
+    config.setReuseStatementCacheSize(1);
+    ReuseExecutor executor = new ReuseExecutor(config, new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement selectOne = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      MappedStatement selectAll = ExecutorTestHelper.prepareSelectAllAuthorsAutoMappedStatement(config);
+      executor.query(selectOne, 101, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectOne, 102, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectAll, null, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      executor.query(selectOne, 103, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(1, executor.getStatementCacheHits());
+      assertEquals(3, executor.getStatementCacheMisses());
+      assertEquals(2, executor.getStatementCacheEvictions());
+      assertEquals(1, executor.getStatementCacheSize());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  void shouldKeepStatementsOfNestedQueriesOpen() throws Exception {
+    config.setReuseStatementCacheSize(1);
+    ReuseExecutor executor = new ReuseExecutor(config, new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement selectBlog = ExecutorTestHelper.prepareComplexSelectBlogMappedStatement(config);
+      MappedStatement selectPosts = ExecutorTestHelper.prepareSelectPostsForBlogMappedStatement(config);
+      config.addMappedStatement(selectBlog);
+      config.addMappedStatement(selectPosts);
+      // 查询博客的结果集还开着时执行查询文章的语句
+      List<Blog> blogs = executor.query(selectBlog, 1, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      assertEquals(2, blogs.get(0).getPosts().size());
+      assertEquals(1, executor.getStatementCacheSize());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
   @Override
   protected Executor createExecutor(Transaction transaction) {
     return new ReuseExecutor(config,transaction);
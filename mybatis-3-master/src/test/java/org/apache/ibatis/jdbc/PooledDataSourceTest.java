@@ -17,17 +17,31 @@ package org.apache.ibatis.jdbc;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.PoolState;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -75,6 +89,465 @@ class PooledDataSourceTest extends BaseDataTest {
     }
   }
 
+  @Test
+  void shouldProperlyMaintainPoolOf3ActiveAnd2IdleConnectionsInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentMode(true);
+      ds.setPoolMaximumActiveConnections(3);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolPingConnectionsNotUsedFor(1);
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+      List<Connection> connections = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      assertEquals(3, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(3, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+      assertNotNull(ds.getPoolState().toString());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldReuseLastReturnedConnectionInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentMode(true);
+      Connection c1 = ds.getConnection();
+      Connection real = PooledDataSource.unwrapConnection(c1);
+      c1.close();
+      Connection c2 = ds.getConnection();
+      assertSame(real, PooledDataSource.unwrapConnection(c2));
+      assertNotSame(c1, c2);
+      assertThrows(SQLException.class, c1::createStatement);
+      c2.close();
+      c1.close();
+      assertEquals(1, ds.getPoolState().getBadConnectionCount());
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldNeverExceedMaximumActiveConnectionsInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      ds.setPoolConcurrentMode(true);
+      ds.setPoolMaximumActiveConnections(2);
+      ds.setPoolMaximumIdleConnections(2);
+      AtomicInteger inUse = new AtomicInteger();
+      AtomicInteger maxInUse = new AtomicInteger();
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int j = 0; j < 50; j++) {
+            try (Connection c = ds.getConnection()) {
+              maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+              c.createStatement().close();
+              inUse.decrementAndGet();
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      assertTrue(maxInUse.get() <= 2);
+      assertEquals(400, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertTrue(ds.getPoolState().getIdleConnectionCount() <= 2);
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldClaimOverdueConnectionInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentMode(true);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolMaximumCheckoutTime(10);
+      ds.setPoolTimeToWait(20);
+      Connection leaked = ds.getConnection();
+      Thread.sleep(20);
+      Connection c = ds.getConnection();
+      assertSame(PooledDataSource.unwrapConnection(leaked), PooledDataSource.unwrapConnection(c));
+      assertThrows(SQLException.class, leaked::createStatement);
+      assertEquals(1, ds.getPoolState().getClaimedOverdueConnectionCount());
+      leaked.close();
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      c.close();
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldInvalidateCheckedOutConnectionsOnForceCloseAllInConcurrentMode() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    ds.setPoolConcurrentMode(true);
+    Connection c = ds.getConnection();
+    ds.forceCloseAll();
+    assertThrows(SQLException.class, c::createStatement);
+    c.close();
+    assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+  }
+
+  @Test
+  void shouldDiscardConnectionThatFailsToRollBackInConcurrentMode() throws Exception {
+    AtomicBoolean failRollback = new AtomicBoolean();
+    UnpooledDataSource unpooled = new UnpooledDataSource() {
+      @Override
+      public Connection getConnection() throws SQLException {
+        Connection real = super.getConnection();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+              if ("rollback".equals(method.getName()) && failRollback.get()) {
+                throw new SQLException("Connection reset");
+              }
+              try {
+                return method.invoke(real, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+      }
+    };
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    unpooled.setDriver(props.getProperty("driver"));
+    unpooled.setUrl(props.getProperty("url"));
+    unpooled.setUsername(props.getProperty("username"));
+    unpooled.setPassword(props.getProperty("password"));
+    PooledDataSource ds = new PooledDataSource(unpooled);
+    try {
+      ds.setPoolConcurrentMode(true);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolTimeToWait(20);
+      // returning the connection
+      Connection c = ds.getConnection();
+      c.setAutoCommit(false);
+      failRollback.set(true);
+      assertThrows(SQLException.class, c::close);
+      assertEquals(1, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      // borrowing the connection
+      failRollback.set(false);
+      c = ds.getConnection();
+      c.setAutoCommit(false);
+      Connection real = PooledDataSource.unwrapConnection(c);
+      c.close();
+      failRollback.set(true);
+      c = ds.getConnection();
+      assertNotSame(real, PooledDataSource.unwrapConnection(c));
+      assertEquals(2, ds.getPoolState().getBadConnectionCount());
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      c.close();
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldPrefillMinimumIdleConnectionsWhenConfigured() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    props.setProperty("poolMinimumIdle", "2");
+    PooledDataSourceFactory factory = new PooledDataSourceFactory();
+    factory.setProperties(props);
+    PooledDataSource ds = (PooledDataSource) factory.getDataSource();
+    try {
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 2);
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getRequestCount());
+    } finally {
+      ds.setPoolMinimumIdle(0);
+    }
+  }
+
+  @Test
+  void shouldNotReturnConnectionOlderThanMaximumLifetimeToPool() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumLifetime(50);
+      ds.setPoolHousekeepingPeriod(60000);
+      Connection c = ds.getConnection();
+      Thread.sleep(100);
+      c.close();
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldEvictIdleConnectionsDownToMinimumIdle() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentMode(true);
+      ds.setPoolMinimumIdle(1);
+      ds.setPoolMaximumIdleTime(50);
+      ds.setPoolHousekeepingPeriod(20);
+      List<Connection> connections = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      for (Connection c : connections) {
+        c.close();
+      }
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 1);
+      assertTrue(ds.getPoolState().getEvictedConnectionCount() >= 2);
+    } finally {
+      ds.setPoolMinimumIdle(0);
+      ds.setPoolMaximumIdleTime(0);
+    }
+  }
+
+  @Test
+  void shouldReusePreparedStatementsAcrossCheckouts() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolPreparedStatementCacheSize(2);
+      String sql = "SELECT USER_NAME FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+      PreparedStatement first;
+      try (Connection c = ds.getConnection()) {
+        first = c.prepareStatement(sql);
+        first.setMaxRows(1);
+        first.close();
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::executeQuery);
+      }
+      try (Connection c = ds.getConnection(); PreparedStatement st = c.prepareStatement(sql)) {
+        assertNotSame(first, st);
+        assertEquals(0, st.getMaxRows());
+        try (ResultSet rs = st.executeQuery()) {
+          assertTrue(rs.next());
+        }
+      }
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+      assertEquals(1, ds.getPoolState().getStatementCacheMissCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldNotCachePreparedStatementWithSettingsThatCanNotBeReset() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolPreparedStatementCacheSize(2);
+      String sql = "SELECT USER_NAME FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+      try (Connection c = ds.getConnection(); PreparedStatement st = c.prepareStatement(sql)) {
+        st.setMaxFieldSize(1);
+      }
+      try (Connection c = ds.getConnection(); PreparedStatement st = c.prepareStatement(sql)) {
+        assertEquals(0, st.getMaxFieldSize());
+      }
+      assertEquals(0, ds.getPoolState().getStatementCacheHitCount());
+      assertEquals(2, ds.getPoolState().getStatementCacheMissCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyUsedPreparedStatement() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentMode(true);
+      ds.setPoolPreparedStatementCacheSize(2);
+      String sql = "SELECT USER_NAME FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+      try (Connection c = ds.getConnection()) {
+        c.prepareStatement(sql).close();
+        c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS).close();
+        c.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+      }
+      assertEquals(3, ds.getPoolState().getStatementCacheMissCount());
+      assertEquals(1, ds.getPoolState().getStatementCacheEvictionCount());
+      try (Connection c = ds.getConnection()) {
+        c.prepareStatement(sql).close();
+        c.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY).close();
+      }
+      assertEquals(1, ds.getPoolState().getStatementCacheHitCount());
+      assertEquals(4, ds.getPoolState().getStatementCacheMissCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldSkipRedundantConnectionStateChanges() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolTrackConnectionState(true);
+      try (Connection c = ds.getConnection()) {
+        c.setAutoCommit(false);
+        c.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        assertFalse(c.getAutoCommit());
+      }
+      // getAutoCommit() answered locally for the caller and for the pool when the connection was returned
+      assertEquals(2, ds.getPoolState().getAvoidedStateRoundTripCount());
+      try (Connection c = ds.getConnection()) {
+        c.setAutoCommit(false);
+        c.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        assertEquals(Connection.TRANSACTION_SERIALIZABLE, c.getTransactionIsolation());
+        Connection real = PooledDataSource.unwrapConnection(c);
+        assertFalse(real.getAutoCommit());
+        assertEquals(Connection.TRANSACTION_SERIALIZABLE, real.getTransactionIsolation());
+        c.createStatement().close();
+      }
+      assertEquals(7, ds.getPoolState().getAvoidedStateRoundTripCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldRollBackStatementExecutedAfterCommitWhenTrackingConnectionState() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolTrackConnectionState(true);
+      ds.setPoolPreparedStatementCacheSize(2);
+      ds.setPoolMaximumActiveConnections(1);
+      try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+        st.execute("CREATE TABLE TRACKED_STATE (ID INT)");
+      }
+      try (Connection c = ds.getConnection()) {
+        c.setAutoCommit(false);
+        try (PreparedStatement st = c.prepareStatement("INSERT INTO TRACKED_STATE VALUES (1)")) {
+          c.commit();
+          st.executeUpdate();
+        }
+      }
+      try (Connection c = ds.getConnection(); Statement st = c.createStatement();
+          ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM TRACKED_STATE")) {
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+      }
+    } finally {
+      try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+        c.setAutoCommit(true);
+        st.execute("DROP TABLE TRACKED_STATE");
+      }
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldKeepSeparatePoolForEachCredentials() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolPartitionByCredentials(true);
+      try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+        st.execute("CREATE USER TENANT PASSWORD 'secret' ADMIN");
+      }
+      Connection tenantReal = null;
+      for (int i = 0; i < 3; i++) {
+        try (Connection c = ds.getConnection("TENANT", "secret")) {
+          assertEquals("TENANT", c.getMetaData().getUserName());
+          if (tenantReal == null) {
+            tenantReal = PooledDataSource.unwrapConnection(c);
+          } else {
+            assertSame(tenantReal, PooledDataSource.unwrapConnection(c));
+          }
+        }
+        try (Connection c = ds.getConnection("sa", "")) {
+          assertEquals("SA", c.getMetaData().getUserName());
+        }
+      }
+      assertEquals(1, ds.getPartitionPoolStates().size());
+      PoolState tenantState = ds.getPartitionPoolStates().get(0);
+      assertEquals(3, tenantState.getRequestCount());
+      assertEquals(1, tenantState.getIdleConnectionCount());
+      assertEquals(4, ds.getPoolState().getRequestCount());
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+      assertThrows(SQLException.class, () -> ds.getConnection("TENANT", "wrong"));
+      assertEquals(2, ds.getPartitionPoolStates().size());
+    } finally {
+      ds.forceCloseAll();
+    }
+    assertTrue(ds.getPartitionPoolStates().isEmpty());
+  }
+
+  @Test
+  void shouldAdaptPoolSizeToWaitTime() throws Exception {
+    assertAdaptsPoolSize(false);
+  }
+
+  @Test
+  void shouldAdaptPoolSizeToWaitTimeInConcurrentMode() throws Exception {
+    assertAdaptsPoolSize(true);
+  }
+
+  private void assertAdaptsPoolSize(boolean concurrentMode) throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolConcurrentMode(concurrentMode);
+      ds.setPoolMaximumActiveConnections(2);
+      ds.setPoolAdaptiveSizing(true);
+      ds.setPoolAdaptiveMaximumActiveConnections(3);
+      ds.setPoolHousekeepingPeriod(100);
+      PoolState state = ds.getPoolState();
+      assertEquals(2, state.getCurrentMaximumActiveConnections());
+
+      Connection c1 = ds.getConnection();
+      Connection c2 = ds.getConnection();
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        Future<Connection> waiting = executor.submit(() -> ds.getConnection());
+        Thread.sleep(300);
+        c1.close();
+        waiting.get(10, TimeUnit.SECONDS).close();
+      } finally {
+        executor.shutdownNow();
+      }
+      c2.close();
+      // 等待时间超过目标，连接池扩大到上限
+      waitUntil(() -> state.getAdaptiveGrowCount() > 0);
+      assertTrue(state.getWaitTimePercentile95() > 10 || state.getAdaptiveShrinkCount() > 0);
+
+      // 没有负载时缩小到下限
+      waitUntil(() -> state.getCurrentMaximumActiveConnections() == 1 && state.getCurrentMaximumIdleConnections() == 1);
+      assertTrue(state.getAdaptiveShrinkCount() > 0);
+      waitUntil(() -> state.getIdleConnectionCount() <= 1);
+      try (Connection c = ds.getConnection()) {
+        assertEquals(1, state.getActiveConnectionCount());
+      }
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the pool housekeeper");
+      Thread.sleep(10);
+    }
+  }
+
   @Test
   void shouldNotFailCallingToStringOverAnInvalidConnection() throws Exception {
     PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
@@ -0,0 +1,70 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class TableNameParserTest {
+
+  @Test
+  void shouldFindTablesOfJoinsAndSubqueries() {
+    assertThat(TableNameParser.readTables("select a.id, b.name from author a inner join blog as b on b.author_id = a.id"
+        + " left outer join post p on p.blog_id = b.id where a.id in (select author_id from comment where x = 'from y')"))
+            .containsExactly("author", "blog", "post", "comment");
+    assertThat(TableNameParser.readTables("SELECT * FROM Author, \"Blog\" b, `Post`, [dbo].[Tag] -- from z\n"
+        + " WHERE /* from w */ 1 = 1")).containsExactly("author", "blog", "post", "tag");
+    assertThat(TableNameParser.readTables("select * from (select * from public.author) t")).containsExactly("author");
+  }
+
+  @Test
+  void shouldNotKnowTablesOfQueriesWithoutFrom() {
+    assertThat(TableNameParser.readTables("select 1")).isNull();
+    assertThat(TableNameParser.readTables("{call find_authors(?)}")).isNull();
+  }
+
+  @Test
+  void shouldFindWrittenTables() {
+    assertThat(TableNameParser.writtenTables("insert into author (id, name) values (?, ?)")).containsExactly("author");
+    assertThat(TableNameParser.writtenTables("insert into author select * from new_author")).containsExactly("author");
+    assertThat(TableNameParser.writtenTables("update author set name = ? where id in (select author_id from blog)"))
+        .containsExactly("author");
+    assertThat(TableNameParser.writtenTables("update author a join blog b on b.author_id = a.id set b.title = a.name"))
+        .containsExactly("author", "blog");
+    assertThat(TableNameParser.writtenTables("delete from author where id = ?")).containsExactly("author");
+    assertThat(TableNameParser.writtenTables("delete a, b from author a join blog b on b.author_id = a.id"))
+        .contains("author", "blog");
+    assertThat(TableNameParser.writtenTables("merge into author a using new_author n on a.id = n.id"))
+        .containsExactly("author");
+    assertThat(TableNameParser.writtenTables("delete from blog; delete from author;")).containsExactly("blog", "author");
+  }
+
+  @Test
+  void shouldNotKnowTablesWrittenByOtherStatements() {
+    assertThat(TableNameParser.writtenTables("call delete_author(?)")).isNull();
+    assertThat(TableNameParser.writtenTables("{call delete_author(?)}")).isNull();
+    assertThat(TableNameParser.writtenTables("delete from blog; drop table author")).isNull();
+    assertThat(TableNameParser.writtenTables("select next value for author_seq")).isNull();
+  }
+
+  @Test
+  void shouldNormalizeDeclaredNames() {
+    assertThat(TableNameParser.normalize(" Blog.\"Author\" ")).isEqualTo("author");
+    assertThat(TableNameParser.normalize("author")).isEqualTo("author");
+  }
+
+}
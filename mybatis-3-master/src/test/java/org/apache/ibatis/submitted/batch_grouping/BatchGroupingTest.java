@@ -0,0 +1,216 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchGroupingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_grouping/CreateDB.sql");
+  }
+
+  @Test
+  void shouldBatchInterleavedStatementsBySql() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertOrder(i, "customer" + i);
+        mapper.insertOrderLine(i, 1, "apple");
+        mapper.insertOrderLine(i, 2, "pear");
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      // 订单先于订单行执行，外键约束满足
+      assertEquals(2, results.size());
+      assertEquals("org.apache.ibatis.submitted.batch_grouping.OrderMapper.insertOrder", results.get(0).getMappedStatement().getId());
+      assertEquals(3, results.get(0).getParameterObjects().size());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      assertEquals(6, results.get(1).getParameterObjects().size());
+      assertEquals(6, results.get(1).getUpdateCounts().length);
+      assertEquals(6, mapper.countOrderLines());
+    }
+  }
+
+  @Test
+  void shouldStartNewBatchesWhenCommandTypeChanges() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      mapper.insertOrder(1, "customer1");
+      mapper.insertOrderLine(1, 1, "apple");
+      mapper.deleteOrderLines(1);
+      mapper.deleteOrder(1);
+      mapper.insertOrder(1, "customer1");
+      mapper.insertOrderLine(1, 1, "pear");
+      List<BatchResult> results = sqlSession.flushStatements();
+      // 删除之后的插入不能合并到之前的插入中
+      assertEquals(6, results.size());
+      assertEquals(1, mapper.countOrderLines());
+    }
+  }
+
+  @Test
+  void shouldNotReorderInterleavedUpdates() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      mapper.insertOrder(1, "customer1");
+      mapper.updateCustomer(1, "a");
+      mapper.updateCustomerInUpperCase(1, "b");
+      mapper.updateCustomer(1, "c");
+      List<BatchResult> results = sqlSession.flushStatements();
+      // 第二次 updateCustomer 不能合并到第一次中，否则会被 updateCustomerInUpperCase 覆盖
+      assertEquals(4, results.size());
+      assertEquals("c", mapper.customerOf(1));
+    }
+  }
+
+  @Test
+  void shouldExecuteBatchesWhenThresholdIsReached() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setBatchMaxStatementRows(2);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertOrder(i, "customer" + i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      // 两次自动执行的结果和最后一次一起返回
+      assertEquals(3, results.size());
+      assertEquals(2, results.get(0).getUpdateCounts().length);
+      assertEquals(2, results.get(1).getUpdateCounts().length);
+      assertEquals(1, results.get(2).getUpdateCounts().length);
+      assertTrue(sqlSession.flushStatements().isEmpty());
+    }
+  }
+
+  @Test
+  void shouldFoldAutomaticallyExecutedBatchesWhenDiscardingParameterObjects() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setBatchMaxStatementRows(2);
+    configuration.setBatchDiscardParameterObjects(true);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertOrder(i, "customer" + i);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      // 两次自动执行的结果合并为一个，只保留更新数之和
+      assertEquals(2, results.size());
+      assertArrayEquals(new int[] { 4 }, results.get(0).getUpdateCounts());
+      assertTrue(results.get(0).getParameterObjects().isEmpty());
+      assertEquals(1, results.get(1).getUpdateCounts().length);
+      assertTrue(results.get(1).getParameterObjects().isEmpty());
+    }
+  }
+
+  @Test
+  void shouldExecuteBatchesWhenPendingSizeIsReached() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    configuration.setBatchMaxRows(3);
+    configuration.setBatchMaxBytes(Long.MAX_VALUE);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      mapper.insertOrder(1, "customer1");
+      mapper.insertOrderLine(1, 1, "apple");
+      mapper.insertOrderLine(1, 2, "pear");
+      mapper.insertOrder(2, "customer2");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+      assertEquals(2, results.get(1).getParameterObjects().size());
+      assertEquals(1, results.get(2).getParameterObjects().size());
+    }
+    configuration.setBatchMaxRows(0);
+    configuration.setBatchMaxBytes(1);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      mapper.insertOrder(3, "customer3");
+      mapper.insertOrder(4, "customer4");
+      assertEquals(2, sqlSession.flushStatements().size());
+    }
+  }
+
+  @Test
+  void shouldRewriteInsertsIntoMultiRowInserts() {
+    sqlSessionFactory.getConfiguration().setBatchMultiRowInsertSize(4);
+    PrepareCounter counter = new PrepareCounter();
+    sqlSessionFactory.getConfiguration().addInterceptor(counter);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      OrderMapper mapper = sqlSession.getMapper(OrderMapper.class);
+      List<Customer> customers = new ArrayList<>();
+      for (int i = 1; i <= 7; i++) {
+        Customer customer = new Customer("customer" + i);
+        customers.add(customer);
+        mapper.insertCustomer(customer);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      // 按 4 + 2 + 1 行执行，仍然按行返回更新数并回填主键
+      assertEquals(1, results.size());
+      assertArrayEquals(new int[] { 1, 1, 1, 1, 1, 1, 1 }, results.get(0).getUpdateCounts());
+      for (int i = 0; i < customers.size(); i++) {
+        assertEquals(i + 1, customers.get(i).getId());
+      }
+      assertEquals(Arrays.asList("customer1", "customer2", "customer3", "customer4", "customer5", "customer6",
+          "customer7"), mapper.customerNames());
+    }
+    // 每种行数各准备一次，另外一次是 customerNames
+    assertEquals(4, counter.prepares.get());
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }))
+  public static class PrepareCounter implements Interceptor {
+
+    private final AtomicInteger prepares = new AtomicInteger();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      prepares.incrementAndGet();
+      return invocation.proceed();
+    }
+
+  }
+
+}
@@ -0,0 +1,102 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.BulkInsertResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BulkInsertTest {
+
+  private static final String INSERT_CUSTOMER = "org.apache.ibatis.submitted.batch_grouping.OrderMapper.insertCustomer";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_grouping/CreateDB.sql");
+  }
+
+  @Test
+  void shouldInsertStreamInChunks() {
+    List<Customer> customers = IntStream.rangeClosed(1, 7).mapToObj(i -> new Customer("customer" + i))
+        .collect(Collectors.toList());
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      BulkInsertResult result = sqlSession.insertAll(INSERT_CUSTOMER, customers.stream(), 3, 0);
+      assertEquals(7, result.getRows());
+      assertEquals(7, result.getUpdateCount());
+      assertEquals(3, result.getFlushes());
+      assertEquals(0, result.getCommits());
+      for (int i = 0; i < customers.size(); i++) {
+        assertEquals(i + 1, customers.get(i).getId());
+      }
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(7, sqlSession.getMapper(OrderMapper.class).customerNames().size());
+    }
+  }
+
+  @Test
+  void shouldCommitEveryInterval() {
+    List<Customer> customers = IntStream.rangeClosed(1, 6).mapToObj(i -> new Customer("customer" + i))
+        .collect(Collectors.toList());
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      BulkInsertResult result = sqlSession.insertAll(INSERT_CUSTOMER, customers, 0, 4);
+      assertEquals(6, result.getRows());
+      assertEquals(6, result.getUpdateCount());
+      assertEquals(1, result.getCommits());
+      // 最后两行没有提交
+      sqlSession.rollback();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(4, sqlSession.getMapper(OrderMapper.class).customerNames().size());
+    }
+  }
+
+  @Test
+  void shouldInsertInOneSessionThroughSqlSessionManager() {
+    List<Customer> customers = IntStream.rangeClosed(1, 5).mapToObj(i -> new Customer("customer" + i))
+        .collect(Collectors.toList());
+    SqlSessionManager manager = SqlSessionManager.newInstance(sqlSessionFactory);
+    // 没有 startManagedSession，整个调用在同一个会话中执行并提交
+    BulkInsertResult result = manager.insertAll(INSERT_CUSTOMER, customers, 2, 0);
+    assertEquals(5, result.getRows());
+    assertEquals(3, result.getFlushes());
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(5, sqlSession.getMapper(OrderMapper.class).customerNames().size());
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+public interface OrderMapper {
+
+  @Insert("insert into orders (id, customer) values (#{id}, #{customer})")
+  int insertOrder(@Param("id") int id, @Param("customer") String customer);
+
+  @Insert("insert into order_line (order_id, line_no, product) values (#{orderId}, #{lineNo}, #{product})")
+  int insertOrderLine(@Param("orderId") int orderId, @Param("lineNo") int lineNo, @Param("product") String product);
+
+  @Delete("delete from order_line where order_id = #{orderId}")
+  int deleteOrderLines(int orderId);
+
+  @Delete("delete from orders where id = #{id}")
+  int deleteOrder(int id);
+
+  @Update("update orders set customer = #{customer} where id = #{id}")
+  int updateCustomer(@Param("id") int id, @Param("customer") String customer);
+
+  @Update("update orders set customer = upper(#{customer}) where id = #{id}")
+  int updateCustomerInUpperCase(@Param("id") int id, @Param("customer") String customer);
+
+  @Select("select customer from orders where id = #{id}")
+  String customerOf(int id);
+
+  @Select("select count(*) from order_line")
+  int countOrderLines();
+
+  @Insert("insert into customer (name) values (#{name})")
+  @Options(useGeneratedKeys = true, keyProperty = "id")
+  int insertCustomer(Customer customer);
+
+  @Select("select name from customer order by id")
+  List<String> customerNames();
+
+}
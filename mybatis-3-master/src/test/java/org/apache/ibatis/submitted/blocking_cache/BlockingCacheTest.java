@@ -16,10 +16,18 @@
 package org.apache.ibatis.submitted.blocking_cache;
 
 import java.io.Reader;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
@@ -76,6 +84,84 @@ class BlockingCacheTest {
     }
   }
 
+  @Test
+  void shouldPublishBeforeCommitWhenEnabled() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    CountDownLatch firstQueried = new CountDownLatch(1);
+    CountDownLatch secondQueried = new CountDownLatch(1);
+    try {
+      Future<Boolean> first = executor.submit(() -> {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+          sqlSession.getMapper(EarlyPublishPersonMapper.class).findAll();
+          firstQueried.countDown();
+          // 第一个会话的事务在第二个会话查询期间一直没有结束
+          return secondQueried.await(5, TimeUnit.SECONDS);
+        }
+      });
+      Assertions.assertTrue(firstQueried.await(5, TimeUnit.SECONDS));
+      // 第二个会话只等待查询完成，不等待第一个事务结束
+      Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+          Assertions.assertEquals(2, sqlSession.getMapper(EarlyPublishPersonMapper.class).findAll().size());
+        }
+      });
+      secondQueried.countDown();
+      Assertions.assertTrue(first.get(10, TimeUnit.SECONDS));
+      // 只访问了一次数据库
+      Cache cache = sqlSessionFactory.getConfiguration().getCache(EarlyPublishPersonMapper.class.getName());
+      Assertions.assertEquals(1, cache.getStats().getLoadCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldWaitForABoundedTimeByDefault() {
+    Assertions.assertEquals(BlockingCache.DEFAULT_TIMEOUT, new BlockingCache(new PerpetualCache("test")).getTimeout());
+  }
+
+  @Test
+  void shouldReleaseWaitersWhenQueryFails() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PersonMapper mapper = sqlSession.getMapper(PersonMapper.class);
+      Assertions.assertThrows(PersistenceException.class, mapper::findAllFromMissingTable);
+      // 事务还没有结束，其他会话也不会被阻塞
+      Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+        try (SqlSession otherSession = sqlSessionFactory.openSession()) {
+          PersonMapper otherMapper = otherSession.getMapper(PersonMapper.class);
+          Assertions.assertThrows(PersistenceException.class, otherMapper::findAllFromMissingTable);
+        }
+      });
+    }
+  }
+
+  @Test
+  void shouldReleaseWaitersWhenTransactionHasClearedCache() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      EarlyPublishPersonMapper mapper = sqlSession.getMapper(EarlyPublishPersonMapper.class);
+      mapper.findAndFlush(1);
+      // 结果要到提交时才能写入缓存，但等待的线程马上被唤醒
+      Assertions.assertEquals(2, mapper.findAll().size());
+      Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+        try (SqlSession otherSession = sqlSessionFactory.openSession()) {
+          Assertions.assertEquals(2, otherSession.getMapper(EarlyPublishPersonMapper.class).findAll().size());
+        }
+      });
+      sqlSession.commit();
+    }
+  }
+
+  @Test
+  void shouldLoadAfterTimeout() {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("test"));
+    cache.setTimeout(100);
+    Assertions.assertNull(cache.getObject("key"));
+    // 加载者一直没有写入，等待超时后自己加载
+    Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> Assertions.assertNull(cache.getObject("key")));
+    cache.putObject("key", "value");
+    Assertions.assertEquals("value", cache.getObject("key"));
+  }
+
   @Test
   void ensureLockIsAcquiredBeforePut() {
     try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
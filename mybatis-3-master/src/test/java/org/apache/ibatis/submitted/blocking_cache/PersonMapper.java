@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2020 the original author or authors.
+ *    Copyright 2009-2026 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ import java.util.List;
 
 import org.apache.ibatis.annotations.CacheNamespace;
 import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Select;
 
 @CacheNamespace(blocking = true)
@@ -27,6 +28,13 @@ public interface PersonMapper {
   @Select("select id, firstname, lastname from person")
   List<Person> findAll();
 
+  @Select("select id, firstname, lastname from person where id = #{id}")
+  @Options(flushCache = Options.FlushCachePolicy.TRUE)
+  Person findAndFlush(int id);
+
+  @Select("select id, firstname, lastname from missing_table")
+  List<Person> findAllFromMissingTable();
+
   @Delete("delete from person where id = #{id}")
   int delete(int id);
 }
@@ -28,6 +28,8 @@ import org.apache.ibatis.annotations.Property;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.invalidation.LoopbackCacheInvalidationBus;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
@@ -63,6 +65,54 @@ class CacheTest {
    * Assert:
    *   Step 4 returns 1 row. (This case fails when caching is enabled.)
    */
+  @Test
+  void shouldInvalidateCachesOfOtherNodes() throws Exception {
+    SqlSessionFactory otherNode;
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache/mybatis-config.xml")) {
+      otherNode = new SqlSessionFactoryBuilder().build(reader);
+    }
+    LoopbackCacheInvalidationBus bus = new LoopbackCacheInvalidationBus("CacheTest");
+    LoopbackCacheInvalidationBus otherBus = new LoopbackCacheInvalidationBus("CacheTest");
+    sqlSessionFactory.getConfiguration().setCacheInvalidationBus(bus);
+    otherNode.getConfiguration().setCacheInvalidationBus(otherBus);
+    try {
+      try (SqlSession sqlSession = otherNode.openSession()) {
+        Assertions.assertEquals(2, sqlSession.getMapper(PersonMapper.class).findAll().size());
+      }
+      try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+        sqlSession.getMapper(PersonMapper.class).delete(1);
+        sqlSession.commit();
+      }
+      try (SqlSession sqlSession = otherNode.openSession()) {
+        Assertions.assertEquals(1, sqlSession.getMapper(PersonMapper.class).findAll().size());
+      }
+    } finally {
+      bus.close();
+      otherBus.close();
+    }
+  }
+
+  @Test
+  void shouldRecordStatisticsOfCache() {
+    CacheStats stats = sqlSessionFactory.getConfiguration().getCache(PersonMapper.class.getName()).getStats();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(false)) {
+      sqlSession.getMapper(PersonMapper.class).findAll();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(false)) {
+      PersonMapper pm = sqlSession.getMapper(PersonMapper.class);
+      pm.findAll();
+      pm.delete(1);
+      sqlSession.commit();
+    }
+    Assertions.assertEquals(1, stats.getHits());
+    Assertions.assertEquals(1, stats.getMisses());
+    Assertions.assertEquals(1, stats.getPuts());
+    Assertions.assertEquals(1, stats.getLoadCount());
+    Assertions.assertTrue(stats.getTotalLoadNanos() > 0);
+    Assertions.assertEquals(1, stats.getClears());
+    Assertions.assertEquals(0, stats.getSize());
+  }
+
   @Test
   void testplan1() {
     try (SqlSession sqlSession1 = sqlSessionFactory.openSession(false)) {
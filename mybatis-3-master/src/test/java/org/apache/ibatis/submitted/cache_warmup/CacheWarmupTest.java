@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_warmup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheWarmupTest {
+
+  private static final String CURRENCY_MAPPER = "org.apache.ibatis.submitted.cache_warmup.CurrencyMapper";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    // warm 语句在构建时执行，表要先建好
+    DataSource dataSource = new UnpooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:cache_warmup", "sa", null);
+    BaseDataTest.runScript(dataSource, "org/apache/ibatis/submitted/cache_warmup/CreateDB.sql");
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_warmup/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+  }
+
+  @Test
+  void shouldLoadWarmStatementsBeforeFactoryIsReturned() throws Exception {
+    Cache lookupCache = sqlSessionFactory.getConfiguration().getCache(LookupMapper.class.getName());
+    Cache currencyCache = sqlSessionFactory.getConfiguration().getCache(CURRENCY_MAPPER);
+    // 失败的 warm 语句只记录警告
+    assertEquals(1, lookupCache.getSize());
+    assertEquals(1, currencyCache.getSize());
+    // 绕过 MyBatis 修改，缓存不会知道
+    executeDirectly("update country set name = 'Spain' where id = 1");
+    executeDirectly("update currency set name = 'Dollar' where code = 'EUR'");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      LookupMapper mapper = sqlSession.getMapper(LookupMapper.class);
+      assertEquals(Arrays.asList("France", "Japan"), mapper.countryNames());
+      assertEquals(Arrays.asList("Euro", "Yen"), sqlSession.selectList(CURRENCY_MAPPER + ".currencyNames"));
+    }
+    assertEquals(0, lookupCache.getStats().getMisses());
+    assertEquals(0, currencyCache.getStats().getMisses());
+  }
+
+  @Test
+  void shouldWarmUpThroughThePluginsOfTheConfiguration() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    ReloadCounter counter = new ReloadCounter();
+    configuration.addInterceptor(counter);
+    new SqlSessionFactoryBuilder().build(configuration);
+    assertEquals(3, counter.reloads.get());
+  }
+
+  private void executeDirectly(String sql) throws Exception {
+    try (Connection conn = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource().getConnection();
+        Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  @Intercepts(@Signature(type = Executor.class, method = "reload", args = { MappedStatement.class, Object.class }))
+  public static class ReloadCounter implements Interceptor {
+
+    private final AtomicInteger reloads = new AtomicInteger();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      reloads.incrementAndGet();
+      return invocation.proceed();
+    }
+
+  }
+
+}
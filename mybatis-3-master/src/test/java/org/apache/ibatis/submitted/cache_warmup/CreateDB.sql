@@ -0,0 +1,33 @@
+--
+--    Copyright 2009-2026 the original author or authors.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--       http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+drop table country if exists;
+drop table currency if exists;
+
+create table country(
+    id int,
+    name varchar(20)
+);
+
+create table currency(
+    code varchar(3),
+    name varchar(20)
+);
+
+insert into country(id, name) values (1, 'France');
+insert into country(id, name) values (2, 'Japan');
+insert into currency(code, name) values ('EUR', 'Euro');
+insert into currency(code, name) values ('JPY', 'Yen');
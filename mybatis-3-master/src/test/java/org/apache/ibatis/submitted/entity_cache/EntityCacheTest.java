@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.entity_cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EntityCacheTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/entity_cache/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/entity_cache/CreateDB.sql");
+  }
+
+  @Test
+  void shouldServeIdLookupFromEntitiesOfAnotherQuery() throws Exception {
+    List<Author> authors;
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      authors = sqlSession.getMapper(Mapper.class).selectAuthors();
+    }
+    // 绕过 MyBatis 修改，按 id 查询仍然从缓存返回
+    executeDirectly("update author set name = 'Jack' where id = 2");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Author author = sqlSession.getMapper(Mapper.class).selectAuthor(2);
+      assertEquals("John", author.getName());
+      assertSame(authors.get(1), author);
+    }
+  }
+
+  @Test
+  void shouldNotServeIdLookupFromQueryOfOtherColumns() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectAuthorIds();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("John", sqlSession.getMapper(Mapper.class).selectAuthor(2).getName());
+    }
+  }
+
+  @Test
+  void shouldServeNestedSelectFromEntityCache() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectAuthors();
+    }
+    executeDirectly("update author set name = 'Jack' where id = 2");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Blog blog = sqlSession.getMapper(Mapper.class).selectBlog(1);
+      assertEquals("Caching", blog.getTitle());
+      assertEquals("John", blog.getAuthor().getName());
+    }
+  }
+
+  @Test
+  void shouldInvalidateEntitiesOnWrite() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).selectAuthors();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).renameAuthor(2, "Jack");
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("Jack", sqlSession.getMapper(Mapper.class).selectAuthor(2).getName());
+    }
+  }
+
+  private void executeDirectly(String sql) throws Exception {
+    try (Connection connection = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource().getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.executeUpdate(sql);
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.table_cache_invalidation;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.CacheNamespace;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+@CacheNamespace(blocking = true)
+public interface PetMapper {
+
+  @Select("select name from person order by id")
+  List<String> personNames();
+
+  @Select("select name from pet order by id")
+  List<String> petNames();
+
+  @Select("select p.name from pet t join person p on p.id = t.owner_id order by t.id")
+  List<String> ownerNames();
+
+  @Select("select name from person_view order by id")
+  @Options(tables = "person")
+  List<String> personNamesFromView();
+
+  @Update("update person set name = #{name} where id = #{id}")
+  int renamePerson(@Param("id") int id, @Param("name") String name);
+
+  @Update("update pet set name = #{name} where id = #{id}")
+  int renamePet(@Param("id") int id, @Param("name") String name);
+
+}
@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2026 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.table_cache_invalidation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TableCacheInvalidationTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/table_cache_invalidation/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/table_cache_invalidation/CreateDB.sql");
+  }
+
+  @Test
+  void shouldKeepEntriesOfTablesNotWritten() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      assertEquals(Arrays.asList("Jane", "John"), mapper.personNames());
+      assertEquals(Arrays.asList("Rex", "Tom"), mapper.petNames());
+    }
+    // 绕过 MyBatis 修改，缓存不会知道
+    executeDirectly("update person set name = 'Joan' where id = 1");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      mapper.renamePet(1, "Max");
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      assertEquals(Arrays.asList("Jane", "John"), mapper.personNames());
+      assertEquals(Arrays.asList("Max", "Tom"), mapper.petNames());
+    }
+  }
+
+  @Test
+  void shouldInvalidateEntriesThatReadWrittenTable() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      assertEquals(Arrays.asList("John", "Jane"), mapper.ownerNames());
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      mapper.renamePerson(2, "Jack");
+      // 本事务写过的表，未提交前也不返回缓存的结果
+      assertEquals(Arrays.asList("Jack", "Jane"), mapper.ownerNames());
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      PetMapper mapper = sqlSession.getMapper(PetMapper.class);
+      assertEquals(Arrays.asList("Jack", "Jane"), mapper.ownerNames());
+    }
+  }
+
+  @Test
+  void shouldKeepEntriesWhenWriteIsRolledBack() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(PetMapper.class).personNames();
+    }
+    executeDirectly("update person set name = 'Joan' where id = 1");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(PetMapper.class).renamePerson(2, "Jack");
+      sqlSession.rollback();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(Arrays.asList("Jane", "John"), sqlSession.getMapper(PetMapper.class).personNames());
+    }
+  }
+
+  @Test
+  void shouldUseDeclaredTables() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(Arrays.asList("Jane", "John"), sqlSession.getMapper(PetMapper.class).personNamesFromView());
+    }
+    executeDirectly("update person set name = 'Joan' where id = 1");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(PetMapper.class).renamePet(1, "Max");
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(Arrays.asList("Jane", "John"), sqlSession.getMapper(PetMapper.class).personNamesFromView());
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(PetMapper.class).renamePerson(2, "Jack");
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(Arrays.asList("Joan", "Jack"), sqlSession.getMapper(PetMapper.class).personNamesFromView());
+    }
+  }
+
+  @Test
+  void shouldNotCacheResultReadBeforeWriteCommittedByAnotherSession() {
+    try (SqlSession reader = sqlSessionFactory.openSession()) {
+      assertEquals(Arrays.asList("Jane", "John"), reader.getMapper(PetMapper.class).personNames());
+      try (SqlSession writer = sqlSessionFactory.openSession()) {
+        writer.getMapper(PetMapper.class).renamePerson(2, "Jack");
+        writer.commit();
+      }
+      // 查询早于另一个事务的写入，提交后它的结果已经过期
+      reader.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals(Arrays.asList("Jane", "Jack"), sqlSession.getMapper(PetMapper.class).personNames());
+    }
+  }
+
+  private void executeDirectly(String sql) throws Exception {
+    try (Connection connection = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource().getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.executeUpdate(sql);
+    }
+  }
+
+}